@@ -1,10 +1,16 @@
 package photo.app;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.TreeMap;
 
 /**
  * This class will handle the album itself, which consists of the album name and 
@@ -22,20 +28,26 @@ public class Album implements Serializable{
 	private static final long serialVersionUID = -7545450350976397396L;
 
 	/**
-	 * This list will contain all of the photos in the album
+	 * This list will contain all of the photos in the album, in the order they were added.
+	 * After a photo is removed, it is rebuilt from photosByPath the next time it is needed.
 	 */
 	private List<Photo> photosOfAlbum;
 	
 	/**
-	 * Name of the album
+	 * Finds each photo of the album by its path, in the order the photos were added.
+	 * All paths should be unique within an album.
 	 */
-	private String albumName;
+	private transient LinkedHashMap<String, Photo> photosByPath;
 	
 	/**
-	 * Keeps tracks of all of the image paths, or image directories, for all photos within the album.
-	 * All paths should be unique within an album.
+	 * True if a photo was removed since photosOfAlbum was last rebuilt
+	 */
+	private transient boolean photoListStale;
+	
+	/**
+	 * Name of the album
 	 */
-	private List<String> allPhotoPathsForAlbum;
+	private String albumName;
 	
 	/**
 	 * Contains the date of the oldest photo
@@ -47,6 +59,12 @@ public class Album implements Serializable{
 	 */
 	private LocalDate earliestDate;
 	
+	/**
+	 * Counts how many photos of the album were taken on each day, with the days sorted.
+	 * Days are stored as epoch days so the oldest and earliest dates can be found without looking at every photo.
+	 */
+	private transient TreeMap<Long, Integer> photoDays;
+	
 	/**
 	 * Constructor to create a new album
 	 * 
@@ -56,7 +74,9 @@ public class Album implements Serializable{
 	{
 		this.albumName = albumName;
 		photosOfAlbum = new ArrayList<Photo>();
-		allPhotoPathsForAlbum = new ArrayList<String>();
+		photosByPath = new LinkedHashMap<String, Photo>();
+		photoListStale = false;
+		photoDays = new TreeMap<Long, Integer>();
 		oldestDate = null;
 		earliestDate = null;
 	}
@@ -67,59 +87,50 @@ public class Album implements Serializable{
 	 * @return photo at the given index
 	 */
 	public Photo getPhoto(int index){
-		return this.photosOfAlbum.get(index);
+		return photoList().get(index);
 	}
 	
 	/**
-	 * Whenever a photo is added or removed from an album, this method will be called to keep track of the
-	 * oldest date of the photo in the album.
+	 * Returns the photo with the given path
+	 * 
+	 * @param photoPath	Path of the photo
+	 * @return	The photo, or null if the album does not have it
+	 */
+	public Photo getPhoto(String photoPath)
+	{
+		return photosByPath.get(photoPath);
+	}
+	
+	/**
+	 * Whenever photos are added or removed from an album, this method will be called to keep track of the
+	 * oldest date of the photo in the album. It only looks at the sorted days, not at every photo.
 	 */
 	public void updateOldestDate()
 	{
 		// OldestDate is set to 0 if the album is currently empty
-		if (photosOfAlbum.size() == 0)
+		if (photoDays.isEmpty())
 		{
 			oldestDate = null;
 			return;
 		}
 		
-		oldestDate = photosOfAlbum.get(0).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-		
-		for (int i = 0; i < photosOfAlbum.size(); i++)
-		{
-			LocalDate currentDate = photosOfAlbum.get(i).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-			
-			if (currentDate.isBefore(oldestDate))
-			{
-				oldestDate = currentDate;
-			}
-		}
+		oldestDate = LocalDate.ofEpochDay(photoDays.firstKey());
 	}
 	
 	/**
-	 * Whenever a photo is added or removed from an album, this method will be called to keep track of the
-	 * earliest date of the photo in the album.
+	 * Whenever photos are added or removed from an album, this method will be called to keep track of the
+	 * earliest date of the photo in the album. It only looks at the sorted days, not at every photo.
 	 */
 	public void updateEarliestDate()
 	{
 		// EarliestDate is set to 0 if the album is currently empty
-		if (photosOfAlbum.size() == 0)
+		if (photoDays.isEmpty())
 		{
 			earliestDate = null;
 			return;
 		}
 		
-		earliestDate = photosOfAlbum.get(0).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-		
-		for (int i = 0; i < photosOfAlbum.size(); i++)
-		{
-			LocalDate currentDate = photosOfAlbum.get(i).getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-			
-			if (currentDate.isAfter(earliestDate))
-			{
-				earliestDate = currentDate;
-			}
-		}
+		earliestDate = LocalDate.ofEpochDay(photoDays.lastKey());
 	}
 	
 	/**
@@ -149,20 +160,52 @@ public class Album implements Serializable{
 	 */
 	public int getAlbumSize()
 	{
-		return photosOfAlbum.size();
+		return photosByPath.size();
 	}
 	
 	/**
-	 * Adds a photo to the album
+	 * Adds a photo to the album.
+	 * All paths need to be unique within an album, so nothing is added if the path is already present.
 	 * 
 	 * @param photoToAdd	The picture that will be added to the album
 	 */
 	public void addPhoto(Photo photoToAdd)
 	{
-		photosOfAlbum.add(photoToAdd);
-		addPhotoPath(photoToAdd.getPhotoPath());
+		addPhotos(Collections.singletonList(photoToAdd));
+	}
+	
+	/**
+	 * Adds many photos to the album at once, such as when a folder is imported.
+	 * Photos whose path is already present are skipped, and the date range is only updated once at the end.
+	 * 
+	 * @param photosToAdd	The pictures that will be added to the album
+	 * @return	The pictures that were added, in order
+	 */
+	public List<Photo> addPhotos(Collection<Photo> photosToAdd)
+	{
+		List<Photo> addedPhotos = new ArrayList<Photo>();
+		
+		for (Photo photoToAdd: photosToAdd)
+		{
+			if (photosByPath.putIfAbsent(photoToAdd.getPhotoPath(), photoToAdd) != null)
+			{
+				continue;
+			}
+			
+			photoToAdd.addedToAlbum();
+			addPhotoDay(photoToAdd);
+			addedPhotos.add(photoToAdd);
+		}
+		
+		if (!photoListStale)
+		{
+			photosOfAlbum.addAll(addedPhotos);
+		}
+		
 		updateOldestDate();
 		updateEarliestDate();
+		
+		return addedPhotos;
 	}
 	
 	/**
@@ -172,27 +215,90 @@ public class Album implements Serializable{
 	 */
 	public void removePhoto(String photoPathToRemove)
 	{
-		for (int i = 0; i < photosOfAlbum.size(); i++)
+		Photo photoToRemove = photosByPath.remove(photoPathToRemove);
+		
+		if (photoToRemove == null)
 		{
-			if (photosOfAlbum.get(i).getPhotoPath().equals(photoPathToRemove))
-			{
-				photosOfAlbum.remove(i);
-				removePhotoPath(photoPathToRemove);
-				break;
-			}
+			return;
 		}
+		
+		photoToRemove.removedFromAlbum();
+		
+		// Removing the last photo is cheap, otherwise the list is rebuilt once when it is next needed
+		int lastIndex = photosOfAlbum.size() - 1;
+		if (!photoListStale && photosOfAlbum.get(lastIndex) == photoToRemove)
+		{
+			photosOfAlbum.remove(lastIndex);
+		}
+		else
+		{
+			photoListStale = true;
+		}
+		
+		removePhotoDay(photoToRemove);
 		updateOldestDate();
 		updateEarliestDate();
 	}
 	
 	/**
-	 * Returns the pictures of the album
+	 * Counts the day the photo was taken in photoDays
+	 * 
+	 * @param photo	The photo that was added
+	 */
+	private void addPhotoDay(Photo photo)
+	{
+		photoDays.merge((long) photo.getEpochDay(), 1, Integer::sum);
+	}
+	
+	/**
+	 * Stops counting the day the photo was taken in photoDays.
+	 * The day is dropped once no photo of the album was taken on it.
+	 * 
+	 * @param photo	The photo that was removed
+	 */
+	private void removePhotoDay(Photo photo)
+	{
+		photoDays.computeIfPresent((long) photo.getEpochDay(), (day, count) -> count == 1 ? null : count - 1);
+	}
+	
+	/**
+	 * Returns the pictures of the album. The list cannot be changed directly,
+	 * addPhoto and removePhoto should be used instead.
 	 * 
 	 * @return	Pictures of the album
 	 */
 	public List<Photo> getPhotos()
 	{
-		return this.photosOfAlbum;
+		return Collections.unmodifiableList(photoList());
+	}
+	
+	/**
+	 * Replaces the photo at the given position with another photo that has the same path.
+	 * This is used by User to point the album at its one copy of the photo.
+	 * 
+	 * @param index	Position of the photo
+	 * @param photo	The photo to put in its place
+	 */
+	void replacePhoto(int index, Photo photo)
+	{
+		photoList().set(index, photo);
+		photosByPath.put(photo.getPhotoPath(), photo);
+	}
+	
+	/**
+	 * Returns the list of photos in order, rebuilding it first if a photo was removed
+	 * 
+	 * @return	Pictures of the album
+	 */
+	private List<Photo> photoList()
+	{
+		if (photoListStale)
+		{
+			photosOfAlbum = new ArrayList<Photo>(photosByPath.values());
+			photoListStale = false;
+		}
+		
+		return photosOfAlbum;
 	}
 	
 	/**
@@ -212,51 +318,57 @@ public class Album implements Serializable{
 	}
 	
 	/**
-	 * Adds the path for the photo to the list of paths.
+	 * Checks to see if a photo path is present in the album.
 	 * All paths need to be unique within an album.
 	 * 
-	 * @param photoPath	Name of the photo path that is going to be added
+	 * @param photoPath	New potential photo path
+	 * @return	True if the path is used by another photo, false otherwise
 	 */
-	public void addPhotoPath(String photoPath)
+	public boolean isPhotoPathPresent(String photoPath)
 	{
-		allPhotoPathsForAlbum.add(photoPath);
+		return photosByPath.containsKey(photoPath);
 	}
 	
 	/**
-	 * Checks to see if a photo path is present in the list of paths.
-	 * All paths need to be unique within an album.
+	 * Writes the album to the save data, making sure the list of photos is up to date first
 	 * 
-	 * @param photoPath	New potential photo path
-	 * @return	True if the path is used by another photo, false otherwise
+	 * @param out	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
 	 */
-	public boolean isPhotoPathPresent(String photoPath)
+	private void writeObject(ObjectOutputStream out) throws IOException
 	{
-		for (String path: allPhotoPathsForAlbum)
-		{
-			if (path.equals(photoPath))
-			{
-				return true;
-			}
-		}
-		
-		return false;
+		photoList();
+		out.defaultWriteObject();
 	}
 	
 	/**
-	 * Removes a photo's path from the list of paths if a photo is removed from an album.
+	 * Reads the album from the save data and builds the index of paths and the count of days from the list of photos
 	 * 
-	 * @param photoPath	Name of the photo path that is going to be removed
+	 * @param in	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
 	 */
-	public void removePhotoPath(String photoPath)
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
 	{
-		for (int i = 0; i < allPhotoPathsForAlbum.size(); i++)
+		in.defaultReadObject();
+		
+		photosByPath = new LinkedHashMap<String, Photo>();
+		for (Photo photo: photosOfAlbum)
 		{
-			if (allPhotoPathsForAlbum.get(i).equals(photoPath))
-			{
-				allPhotoPathsForAlbum.remove(i);
-				break;
-			}
+			photosByPath.putIfAbsent(photo.getPhotoPath(), photo);
 		}
+		
+		// Any photo that was in the list twice is dropped
+		photosOfAlbum = new ArrayList<Photo>(photosByPath.values());
+		photoListStale = false;
+		
+		photoDays = new TreeMap<Long, Integer>();
+		for (Photo photo: photosOfAlbum)
+		{
+			addPhotoDay(photo);
+		}
+		updateOldestDate();
+		updateEarliestDate();
 	}
 }
 
@@ -0,0 +1,615 @@
+package photo.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class finds the photos whose captions have a word, a phrase, or a word starting with some letters,
+ * without looking at every caption.
+ * Each caption is split into words, which are made lower case and cut down to a simple stem,
+ * so "Beaches" and "beach" are the same word. For each word, the index keeps a set of the ids of the photos
+ * that have it, which stays small for the many words that only a few captions use.
+ * The words of each caption are kept in order as well, so phrases can be checked and results can be ranked.
+ * Words are also kept as they were written, before being cut down to a stem, so a search for the letters
+ * a word starts with finds "running" from "runni" even though it is kept as "run".
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class CaptionIndex {
+
+	/**
+	 * Ids of the photos whose captions have each word
+	 */
+	private HashMap<String, WordPhotos> photosByWord;
+
+	/**
+	 * The same lists as photosByWord, sorted by word so words starting with some letters are next to each other.
+	 * This only changes when a word is used for the first time or no longer used.
+	 */
+	private TreeMap<String, WordPhotos> wordsInOrder;
+
+	/**
+	 * Ids of the photos whose captions have each word as it was written, in lower case and sorted by word.
+	 * These are only used to find words starting with some letters.
+	 */
+	private TreeMap<String, WordPhotos> writtenWordsInOrder;
+
+	/**
+	 * The words of each photo's caption in order, found by photo id. Photos without a caption have no words.
+	 */
+	private List<String[]> wordsByPhoto;
+
+	/**
+	 * The words of each photo's caption as they were written, found by photo id
+	 */
+	private List<String[]> writtenWordsByPhoto;
+
+	/**
+	 * Number of photos with at least one word in their caption
+	 */
+	private int captionedPhotos;
+
+	/**
+	 * Constructor for CaptionIndex
+	 */
+	public CaptionIndex()
+	{
+		photosByWord = new HashMap<String, WordPhotos>();
+		wordsInOrder = new TreeMap<String, WordPhotos>();
+		writtenWordsInOrder = new TreeMap<String, WordPhotos>();
+		wordsByPhoto = new ArrayList<String[]>();
+		writtenWordsByPhoto = new ArrayList<String[]>();
+		captionedPhotos = 0;
+	}
+
+	/**
+	 * Adds a photo's caption to the index, replacing the caption it had before
+	 *
+	 * @param photoId	Id of the photo
+	 * @param caption	The photo's caption, which may be null
+	 */
+	public void addPhoto(int photoId, String caption)
+	{
+		removePhoto(photoId);
+
+		List<String> writtenWords = splitWords(caption);
+
+		if (writtenWords.isEmpty())
+		{
+			return;
+		}
+
+		String[] captionWords = new String[writtenWords.size()];
+		String[] writtenCaptionWords = new String[writtenWords.size()];
+
+		for (int i = 0; i < captionWords.length; i++)
+		{
+			String word = stem(writtenWords.get(i));
+			WordPhotos photoIds = photosByWord.get(word);
+
+			if (photoIds == null)
+			{
+				photoIds = new WordPhotos(word);
+				photosByWord.put(photoIds.word, photoIds);
+				wordsInOrder.put(photoIds.word, photoIds);
+			}
+
+			photoIds.add(photoId);
+
+			// The caption keeps the index's copy of each word, so a word used by many captions is only stored once
+			captionWords[i] = photoIds.word;
+
+			WordPhotos writtenPhotoIds = writtenWordsInOrder.get(writtenWords.get(i));
+
+			if (writtenPhotoIds == null)
+			{
+				writtenPhotoIds = new WordPhotos(writtenWords.get(i));
+				writtenWordsInOrder.put(writtenPhotoIds.word, writtenPhotoIds);
+			}
+
+			writtenPhotoIds.add(photoId);
+			writtenCaptionWords[i] = writtenPhotoIds.word;
+		}
+
+		while (wordsByPhoto.size() <= photoId)
+		{
+			wordsByPhoto.add(null);
+			writtenWordsByPhoto.add(null);
+		}
+
+		wordsByPhoto.set(photoId, captionWords);
+		writtenWordsByPhoto.set(photoId, writtenCaptionWords);
+		captionedPhotos++;
+	}
+
+	/**
+	 * Removes a photo's caption from the index
+	 *
+	 * @param photoId	Id of the photo
+	 */
+	public void removePhoto(int photoId)
+	{
+		String[] words = wordsOf(photoId);
+
+		if (words == null)
+		{
+			return;
+		}
+
+		String[] writtenWords = writtenWordsByPhoto.get(photoId);
+		wordsByPhoto.set(photoId, null);
+		writtenWordsByPhoto.set(photoId, null);
+		captionedPhotos--;
+
+		for (String word: words)
+		{
+			WordPhotos photoIds = photosByWord.get(word);
+
+			if (photoIds != null)
+			{
+				photoIds.remove(photoId);
+
+				// Words nobody uses anymore are dropped so the index does not grow forever
+				if (photoIds.size() == 0)
+				{
+					photosByWord.remove(word);
+					wordsInOrder.remove(word);
+				}
+			}
+		}
+
+		for (String writtenWord: writtenWords)
+		{
+			WordPhotos photoIds = writtenWordsInOrder.get(writtenWord);
+
+			if (photoIds != null)
+			{
+				photoIds.remove(photoId);
+
+				if (photoIds.size() == 0)
+				{
+					writtenWordsInOrder.remove(writtenWord);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of the photos whose captions have the word
+	 *
+	 * @param word	The word, in any case and form
+	 * @return	Ids of the photos that have the word
+	 */
+	public BitSet photosWithWord(String word)
+	{
+		BitSet photoIds = new BitSet();
+		WordPhotos wordPhotoIds = photosByWord.get(stem(word.toLowerCase(Locale.ROOT)));
+
+		if (wordPhotoIds != null)
+		{
+			wordPhotoIds.addTo(photoIds);
+		}
+
+		return photoIds;
+	}
+
+	/**
+	 * Returns the ids of the photos whose captions have a word starting with the given letters.
+	 * The letters are matched against the words as they were written and against their stems,
+	 * so "runni" finds "running" and "happy" finds "happies".
+	 *
+	 * @param prefix	The letters the word starts with
+	 * @return	Ids of the photos that have such a word
+	 */
+	public BitSet photosWithPrefix(String prefix)
+	{
+		BitSet photoIds = new BitSet();
+
+		for (WordPhotos wordPhotoIds: wordsStartingWith(writtenWordsInOrder, prefix).values())
+		{
+			wordPhotoIds.addTo(photoIds);
+		}
+
+		for (WordPhotos wordPhotoIds: wordsStartingWith(wordsInOrder, prefix).values())
+		{
+			wordPhotoIds.addTo(photoIds);
+		}
+
+		return photoIds;
+	}
+
+	/**
+	 * Returns the ids of the photos whose captions have the words of the phrase next to each other, in order.
+	 * The photos that have every word are found with the index first, and only those captions are checked.
+	 *
+	 * @param phrase	The phrase
+	 * @return	Ids of the photos that have the phrase
+	 */
+	public BitSet photosWithPhrase(String phrase)
+	{
+		List<String> phraseWords = tokenize(phrase);
+
+		if (phraseWords.isEmpty())
+		{
+			return new BitSet();
+		}
+
+		// Start from the rarest word, so the fewest photos are looked at
+		WordPhotos rarest = null;
+
+		for (String word: phraseWords)
+		{
+			WordPhotos wordPhotoIds = photosByWord.get(word);
+
+			if (wordPhotoIds == null)
+			{
+				return new BitSet();
+			}
+
+			if (rarest == null || wordPhotoIds.size() < rarest.size())
+			{
+				rarest = wordPhotoIds;
+			}
+		}
+
+		BitSet photoIds = new BitSet();
+		rarest.addTo(photoIds);
+
+		for (String word: phraseWords)
+		{
+			WordPhotos wordPhotoIds = photosByWord.get(word);
+
+			if (wordPhotoIds != rarest)
+			{
+				for (int id = photoIds.nextSetBit(0); id >= 0; id = photoIds.nextSetBit(id + 1))
+				{
+					if (!wordPhotoIds.contains(id))
+					{
+						photoIds.clear(id);
+					}
+				}
+			}
+		}
+
+		if (phraseWords.size() > 1)
+		{
+			String[] phraseArray = phraseWords.toArray(new String[0]);
+
+			for (int id = photoIds.nextSetBit(0); id >= 0; id = photoIds.nextSetBit(id + 1))
+			{
+				if (!containsPhrase(wordsOf(id), phraseArray))
+				{
+					photoIds.clear(id);
+				}
+			}
+		}
+
+		return photoIds;
+	}
+
+	/**
+	 * Returns about how many photos have the phrase, without checking the captions.
+	 * This is the number of photos with the rarest word of the phrase.
+	 *
+	 * @param phrase	The phrase, which may be a single word
+	 * @return	About how many photos have the phrase
+	 */
+	public int countPhotosWithPhrase(String phrase)
+	{
+		List<String> phraseWords = tokenize(phrase);
+
+		if (phraseWords.isEmpty())
+		{
+			return 0;
+		}
+
+		int fewest = Integer.MAX_VALUE;
+
+		for (String word: phraseWords)
+		{
+			WordPhotos photoIds = photosByWord.get(word);
+			fewest = Math.min(fewest, photoIds == null ? 0 : photoIds.size());
+		}
+
+		return fewest;
+	}
+
+	/**
+	 * Returns about how many photos have a word starting with the given letters
+	 *
+	 * @param prefix	The letters the word starts with
+	 * @return	About how many photos have such a word, which may count a photo more than once
+	 */
+	public int countPhotosWithPrefix(String prefix)
+	{
+		long total = 0;
+
+		for (WordPhotos photoIds: wordsStartingWith(writtenWordsInOrder, prefix).values())
+		{
+			total += photoIds.size();
+		}
+
+		return (int) Math.min(total, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Orders photos so the captions that best match the words come first.
+	 * A word counts for more when it shows up more in the caption and when fewer captions have it,
+	 * and long captions count for less than short ones. Photos that score the same stay in id order.
+	 *
+	 * @param photoIds	Ids of the photos being ordered
+	 * @param words	The words searched for, already split by tokenize
+	 * @return	The ids, best match first
+	 */
+	public int[] rank(BitSet photoIds, List<String> words)
+	{
+		double[] wordWeights = new double[words.size()];
+
+		for (int i = 0; i < words.size(); i++)
+		{
+			WordPhotos wordPhotoIds = photosByWord.get(words.get(i));
+			int photosWithWord = wordPhotoIds == null ? 0 : wordPhotoIds.size();
+			wordWeights[i] = Math.log(1.0 + (double) captionedPhotos / (1 + photosWithWord));
+		}
+
+		// Each photo is packed into one long with the best score giving the smallest number, then the id,
+		// so sorting the longs puts the best matches first without making an object for every photo.
+		// Scores are never negative, so the bits of the float go up as the score goes up.
+		long[] packed = new long[photoIds.cardinality()];
+		int count = 0;
+
+		for (int id = photoIds.nextSetBit(0); id >= 0; id = photoIds.nextSetBit(id + 1))
+		{
+			int scoreBits = Float.floatToIntBits((float) score(wordsOf(id), words, wordWeights));
+			packed[count++] = ((long) (Integer.MAX_VALUE - scoreBits) << 32) | id;
+		}
+
+		Arrays.sort(packed);
+
+		int[] ranked = new int[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			ranked[i] = (int) packed[i];
+		}
+
+		return ranked;
+	}
+
+	/**
+	 * Splits text into words the same way captions are split: lower case, letters and digits only, cut down to a stem
+	 *
+	 * @param text	The text, which may be null
+	 * @return	The words of the text in order
+	 */
+	public static List<String> tokenize(String text)
+	{
+		List<String> words = splitWords(text);
+
+		for (int i = 0; i < words.size(); i++)
+		{
+			words.set(i, stem(words.get(i)));
+		}
+
+		return words;
+	}
+
+	/**
+	 * Splits text into lower case words of letters and digits only, as they were written
+	 *
+	 * @param text	The text, which may be null
+	 * @return	The words of the text in order
+	 */
+	private static List<String> splitWords(String text)
+	{
+		List<String> words = new ArrayList<String>();
+
+		if (text == null)
+		{
+			return words;
+		}
+
+		String lowerCaseText = text.toLowerCase(Locale.ROOT);
+		int start = -1;
+
+		for (int i = 0; i <= lowerCaseText.length(); i++)
+		{
+			boolean partOfWord = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+
+			if (partOfWord && start < 0)
+			{
+				start = i;
+			}
+			else if (!partOfWord && start >= 0)
+			{
+				words.add(lowerCaseText.substring(start, i));
+				start = -1;
+			}
+		}
+
+		return words;
+	}
+
+	/**
+	 * Cuts a lower case word down to a simple stem by removing common endings,
+	 * so "beaches", "beach", "running" and "run" are found by each other
+	 *
+	 * @param word	The word in lower case
+	 * @return	The stem of the word
+	 */
+	static String stem(String word)
+	{
+		if (word.length() <= 3)
+		{
+			return word;
+		}
+
+		if (word.endsWith("ies") && word.length() > 4)
+		{
+			word = word.substring(0, word.length() - 3) + "y";
+		}
+		else if (word.endsWith("sses") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("xes"))
+		{
+			word = word.substring(0, word.length() - 2);
+		}
+		else if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is"))
+		{
+			word = word.substring(0, word.length() - 1);
+		}
+
+		if (word.endsWith("ing") && word.length() >= 6)
+		{
+			word = undouble(word.substring(0, word.length() - 3));
+		}
+		else if (word.endsWith("ed") && word.length() >= 5)
+		{
+			word = undouble(word.substring(0, word.length() - 2));
+		}
+
+		return word;
+	}
+
+	/**
+	 * Removes the last letter of a stem if it is doubled, like "runn" from "running"
+	 *
+	 * @param stem	The stem
+	 * @return	The stem without a doubled last letter
+	 */
+	private static String undouble(String stem)
+	{
+		int length = stem.length();
+
+		if (length >= 2 && stem.charAt(length - 1) == stem.charAt(length - 2) && "lsz".indexOf(stem.charAt(length - 1)) < 0)
+		{
+			return stem.substring(0, length - 1);
+		}
+
+		return stem;
+	}
+
+	/**
+	 * Returns the words that start with the given letters, along with the photos that have them
+	 *
+	 * @param words	The sorted words to look in
+	 * @param prefix	The letters the words start with
+	 * @return	The matching part of the words
+	 */
+	private static Map<String, WordPhotos> wordsStartingWith(TreeMap<String, WordPhotos> words, String prefix)
+	{
+		String lowerCasePrefix = prefix.toLowerCase(Locale.ROOT);
+
+		if (lowerCasePrefix.isEmpty())
+		{
+			return words;
+		}
+
+		return words.subMap(lowerCasePrefix, true, lowerCasePrefix + Character.MAX_VALUE, false);
+	}
+
+	/**
+	 * Returns the words of a photo's caption
+	 *
+	 * @param photoId	Id of the photo
+	 * @return	The words in order, or null if the photo has no caption in the index
+	 */
+	private String[] wordsOf(int photoId)
+	{
+		return photoId < wordsByPhoto.size() ? wordsByPhoto.get(photoId) : null;
+	}
+
+	/**
+	 * Checks to see if a caption has the words of a phrase next to each other, in order
+	 *
+	 * @param captionWords	Words of the caption
+	 * @param phraseWords	Words of the phrase
+	 * @return	True if the caption has the phrase, false otherwise
+	 */
+	private static boolean containsPhrase(String[] captionWords, String[] phraseWords)
+	{
+		if (captionWords == null)
+		{
+			return false;
+		}
+
+		for (int start = 0; start + phraseWords.length <= captionWords.length; start++)
+		{
+			int matched = 0;
+
+			while (matched < phraseWords.length && captionWords[start + matched].equals(phraseWords[matched]))
+			{
+				matched++;
+			}
+
+			if (matched == phraseWords.length)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Scores how well a caption matches the words searched for
+	 *
+	 * @param captionWords	Words of the caption
+	 * @param words	The words searched for
+	 * @param wordWeights	How much each word searched for counts
+	 * @return	The score, higher for a better match
+	 */
+	private static double score(String[] captionWords, List<String> words, double[] wordWeights)
+	{
+		if (captionWords == null)
+		{
+			return 0;
+		}
+
+		double score = 0;
+
+		for (int i = 0; i < words.size(); i++)
+		{
+			int timesUsed = 0;
+
+			for (String captionWord: captionWords)
+			{
+				if (captionWord.equals(words.get(i)))
+				{
+					timesUsed++;
+				}
+			}
+
+			score += timesUsed * wordWeights[i];
+		}
+
+		return score / Math.sqrt(captionWords.length);
+	}
+
+	/**
+	 * The ids of the photos that have a word, along with the index's copy of the word
+	 */
+	private static class WordPhotos extends PhotoIdSet
+	{
+		/**
+		 * The word the photos have
+		 */
+		private final String word;
+
+		/**
+		 * Constructor for WordPhotos
+		 *
+		 * @param word	The word the photos have
+		 */
+		WordPhotos(String word)
+		{
+			this.word = word;
+		}
+	}
+}
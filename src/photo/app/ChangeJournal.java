@@ -0,0 +1,581 @@
+package photo.app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * This class keeps a user's save data as a snapshot plus an append-only journal of changes.
+ * Saving only appends the changes made since the last save, and reading replays the journal
+ * on top of the snapshot. Once the journal grows past a threshold, it is folded back into
+ * the snapshot on a background thread.
+ *
+ * The journal is split into numbered generations. The snapshot remembers the first generation
+ * that is not part of it, so journals that were already compacted are never replayed twice.
+ *
+ * Each change is written as its length, its bytes and a checksum. If the program stops while a change
+ * is being written, reading stops at that change, and the journal is cut back to the last whole change
+ * before anything more is appended to it.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class ChangeJournal {
+
+	/**
+	 * Size in bytes the journal can grow to before it is compacted into the snapshot
+	 */
+	public static final long compactionThreshold = 1024 * 1024;
+
+	/**
+	 * Single background thread shared by all journals to compact them
+	 */
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "journal-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Directory that holds the snapshot and the journal
+	 */
+	private final File directory;
+
+	/**
+	 * File that holds the snapshot
+	 */
+	private final File snapshotFile;
+
+	/**
+	 * Guards the journal files so the snapshot is never read while it is being swapped
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Generation of the journal that changes are currently appended to, or -1 if not known yet
+	 */
+	private long generation;
+
+	/**
+	 * True while a compaction is running in the background
+	 */
+	private boolean compacting;
+
+	/**
+	 * The error of the last compaction that failed, or null if the last one worked or none has run
+	 */
+	private IOException compactionFailure;
+
+	/**
+	 * True if the last compaction failed, so the next save tries again
+	 */
+	private boolean retryCompaction;
+
+	/**
+	 * Counts how many times the snapshot was replaced directly, so a compaction that started
+	 * before the replacement does not overwrite the newer snapshot
+	 */
+	private int snapshotVersion;
+
+	/**
+	 * Constructor for ChangeJournal
+	 *
+	 * @param directory	Directory that holds the snapshot and the journal
+	 * @param snapshotName	Name of the snapshot file
+	 */
+	public ChangeJournal(String directory, String snapshotName)
+	{
+		this.directory = new File(directory);
+		this.snapshotFile = new File(directory, snapshotName);
+		generation = -1;
+		compacting = false;
+		retryCompaction = false;
+		snapshotVersion = 0;
+	}
+
+	/**
+	 * Checks to see if a snapshot has been saved yet
+	 *
+	 * @return	True if the snapshot file exists, false otherwise
+	 */
+	public boolean snapshotExists()
+	{
+		return snapshotFile.exists();
+	}
+
+	/**
+	 * Reads the snapshot and replays every journal that is not yet part of it.
+	 * A change that was only partly written is cut off the end of the last journal.
+	 *
+	 * @return	The data with all saved changes applied
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	public User load() throws IOException, ClassNotFoundException
+	{
+		synchronized (lock)
+		{
+			User user = readSnapshot();
+			long lastGeneration = Math.max(user.getJournalGeneration(),
+					replayJournals(user, user.getJournalGeneration(), Long.MAX_VALUE));
+
+			if (generation < lastGeneration)
+			{
+				generation = lastGeneration;
+			}
+
+			return user;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with the given data. Every journal written so far becomes part of the snapshot.
+	 *
+	 * @param user	The data to save
+	 * @throws IOException	Any exceptions encountered
+	 */
+	public void writeSnapshot(User user) throws IOException
+	{
+		synchronized (lock)
+		{
+			long nextGeneration = currentGeneration() + 1;
+			user.setJournalGeneration(nextGeneration);
+			replaceSnapshot(user);
+			deleteJournalsBefore(nextGeneration);
+			generation = nextGeneration;
+			snapshotVersion++;
+		}
+	}
+
+	/**
+	 * Appends the changes to the end of the journal. If the journal has grown past the threshold,
+	 * a new generation is started and the old ones are compacted in the background.
+	 *
+	 * @param changes	The changes made since the last save
+	 * @throws IOException	Any exceptions encountered while appending
+	 */
+	public void append(List<JournalEntry> changes) throws IOException
+	{
+		if (changes.isEmpty())
+		{
+			return;
+		}
+
+		synchronized (lock)
+		{
+			File journalFile = journalFile(currentGeneration());
+
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+			try
+			{
+				for (JournalEntry change: changes)
+				{
+					writeRecord(out, change);
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+
+			if ((journalFile.length() > compactionThreshold || retryCompaction) && !compacting)
+			{
+				compacting = true;
+				retryCompaction = false;
+				final long compactUpTo = ++generation;
+				final int startVersion = snapshotVersion;
+				compactor.execute(() -> compact(compactUpTo, startVersion));
+			}
+		}
+	}
+
+	/**
+	 * Returns the error of the last compaction if it failed. The changes are still saved in the journals,
+	 * which only keep growing until a compaction works, and the next append tries again.
+	 *
+	 * @return	The error, or null if the last compaction worked or none has run
+	 */
+	public IOException getCompactionFailure()
+	{
+		synchronized (lock)
+		{
+			return compactionFailure;
+		}
+	}
+
+	/**
+	 * Folds every journal before the given generation into the snapshot.
+	 * This works only from the files on disk, so the data the user is editing is never touched.
+	 *
+	 * @param compactUpTo	First generation that is not folded into the snapshot
+	 * @param startVersion	Version of the snapshot when the compaction was started
+	 */
+	private void compact(long compactUpTo, int startVersion)
+	{
+		try
+		{
+			// Journals before compactUpTo are no longer appended to, so they can be read without the lock
+			User user = readSnapshot();
+			replayJournals(user, user.getJournalGeneration(), compactUpTo);
+			user.setJournalGeneration(compactUpTo);
+
+			synchronized (lock)
+			{
+				if (snapshotVersion == startVersion)
+				{
+					replaceSnapshot(user);
+					deleteJournalsBefore(compactUpTo);
+				}
+
+				compactionFailure = null;
+			}
+		}
+		catch (IOException | ClassNotFoundException e)
+		{
+			// The journals are left in place, and the next save tries again
+			synchronized (lock)
+			{
+				compactionFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+				retryCompaction = true;
+			}
+		}
+		finally
+		{
+			synchronized (lock)
+			{
+				compacting = false;
+			}
+		}
+	}
+
+	/**
+	 * Deletes the snapshot and every journal, such as when the user is deleted
+	 */
+	public void delete()
+	{
+		synchronized (lock)
+		{
+			snapshotFile.delete();
+
+			File[] journalFiles = directory.listFiles((dir, name) -> name.startsWith(snapshotFile.getName() + ".journal."));
+			if (journalFiles != null)
+			{
+				for (File journalFile: journalFiles)
+				{
+					journalFile.delete();
+				}
+			}
+
+			snapshotVersion++;
+		}
+	}
+
+	/**
+	 * Returns the generation changes are appended to, looking at the files on disk the first time.
+	 * A change that was only partly written is cut off the end of that generation's journal.
+	 *
+	 * @return	The current generation
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private long currentGeneration() throws IOException
+	{
+		if (generation >= 0)
+		{
+			return generation;
+		}
+
+		long latest = 0;
+
+		if (snapshotFile.exists())
+		{
+			try
+			{
+				latest = readSnapshot().getJournalGeneration();
+			}
+			catch (ClassNotFoundException e)
+			{
+				throw new IOException(e);
+			}
+		}
+
+		while (journalFile(latest + 1).exists())
+		{
+			latest++;
+		}
+
+		cutOffPartialChange(journalFile(latest), readJournal(journalFile(latest), null));
+
+		generation = latest;
+		return generation;
+	}
+
+	/**
+	 * Replays the journals in the given range of generations, in order
+	 *
+	 * When every generation is replayed, a change that was only partly written is cut off the end of the last journal,
+	 * so the changes appended after it can be read.
+	 *
+	 * @param user	The data the changes are applied to
+	 * @param from	First generation to replay
+	 * @param until	Generation to stop at, not replayed
+	 * @return	The last generation that had a journal file, or from - 1 if there were none
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private long replayJournals(User user, long from, long until) throws IOException
+	{
+		long current = from;
+
+		while (current < until && journalFile(current).exists())
+		{
+			long completeLength = readJournal(journalFile(current), user);
+
+			// Journals that are compacted are no longer appended to, so only the last one is cut
+			if (until == Long.MAX_VALUE && !journalFile(current + 1).exists())
+			{
+				cutOffPartialChange(journalFile(current), completeLength);
+			}
+
+			current++;
+		}
+
+		return current - 1;
+	}
+
+	/**
+	 * Reads the changes of a journal, stopping at the first change that was not completely written.
+	 * A change that was completely written but cannot be understood stops the reading with an error instead,
+	 * so the changes after it are never cut off.
+	 *
+	 * @param journalFile	The journal
+	 * @param user	The data the changes are applied to, or null to only check the changes
+	 * @return	Number of bytes of the journal taken by whole changes
+	 * @throws IOException	Any exceptions encountered, or if a completely written change cannot be understood
+	 */
+	private static long readJournal(File journalFile, User user) throws IOException
+	{
+		long fileLength = journalFile.length();
+		long completeLength = 0;
+
+		if (fileLength == 0)
+		{
+			return 0;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+		try
+		{
+			byte[] record;
+
+			while ((record = readRecord(in, fileLength - completeLength)) != null)
+			{
+				JournalEntry change;
+
+				try
+				{
+					change = JournalEntry.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+				}
+				catch (IOException | IllegalArgumentException e)
+				{
+					// The change was written completely, such as by a newer version of the program, so it must not be cut off
+					throw new IOException("A change in " + journalFile.getName() + " cannot be read", e);
+				}
+
+				if (user != null)
+				{
+					try
+					{
+						change.apply(user);
+					}
+					catch (RuntimeException e)
+					{
+						// One change that no longer fits the data is skipped, so the rest of the user's data can still be read
+					}
+				}
+
+				completeLength += Integer.BYTES + record.length + Integer.BYTES;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return completeLength;
+	}
+
+	/**
+	 * Cuts off what follows the whole changes at the end of a journal, so new changes are not appended after a partial one
+	 *
+	 * @param journalFile	The journal
+	 * @param completeLength	Number of bytes of the journal taken by whole changes
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private static void cutOffPartialChange(File journalFile, long completeLength) throws IOException
+	{
+		if (journalFile.length() <= completeLength)
+		{
+			return;
+		}
+
+		FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE);
+		try
+		{
+			channel.truncate(completeLength);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes a change to the journal as its length, its bytes and their checksum
+	 *
+	 * @param out	Stream of the journal file
+	 * @param change	The change
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private static void writeRecord(DataOutputStream out, JournalEntry change) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		change.writeTo(new DataOutputStream(bytes));
+		byte[] record = bytes.toByteArray();
+
+		out.writeInt(record.length);
+		out.write(record);
+		out.writeInt(checksum(record));
+	}
+
+	/**
+	 * Reads the bytes of the next change from the journal and checks them against their checksum
+	 *
+	 * @param in	Stream of the journal file
+	 * @param remaining	Number of bytes left in the journal file
+	 * @return	The bytes of the change, or null at the end of the journal or at a change that was not completely written
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private static byte[] readRecord(DataInputStream in, long remaining) throws IOException
+	{
+		try
+		{
+			int length = in.readInt();
+
+			if (length < 0 || length > remaining - 2 * Integer.BYTES)
+			{
+				return null;
+			}
+
+			byte[] record = new byte[length];
+			in.readFully(record);
+
+			return in.readInt() == checksum(record) ? record : null;
+		}
+		catch (EOFException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the checksum of the bytes of a change
+	 *
+	 * @param record	The bytes of the change
+	 * @return	The CRC-32 of the bytes
+	 */
+	private static int checksum(byte[] record)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Reads the snapshot from disk
+	 *
+	 * @return	The data in the snapshot
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	private User readSnapshot() throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)));
+		try
+		{
+			return (User) ois.readObject();
+		}
+		finally
+		{
+			ois.close();
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file and then moves it over the old one,
+	 * so a reader never sees a half written snapshot
+	 *
+	 * @param user	The data to save
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private void replaceSnapshot(User user) throws IOException
+	{
+		directory.mkdirs();
+		File tempFile = new File(directory, snapshotFile.getName() + ".tmp");
+
+		ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try
+		{
+			oos.writeObject(user);
+		}
+		finally
+		{
+			oos.close();
+		}
+
+		Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the journals that are already part of the snapshot
+	 *
+	 * @param firstKept	First generation that is kept
+	 */
+	private void deleteJournalsBefore(long firstKept)
+	{
+		for (long i = firstKept - 1; i >= 0 && journalFile(i).exists(); i--)
+		{
+			journalFile(i).delete();
+		}
+	}
+
+	/**
+	 * Returns the file of the journal for the given generation
+	 *
+	 * @param journalGeneration	The generation
+	 * @return	The journal file
+	 */
+	private File journalFile(long journalGeneration)
+	{
+		return new File(directory, snapshotFile.getName() + ".journal." + journalGeneration);
+	}
+}
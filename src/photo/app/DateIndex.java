@@ -0,0 +1,240 @@
+package photo.app;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class finds the photos taken between two dates without looking at every photo.
+ * The photos are kept sorted by the day they were taken, so a date range is found with two binary searches.
+ * Days are stored as epoch days, the number of days since 1970-01-01.
+ *
+ * The sorted arrays are only rebuilt when a search is done after photos were added or removed,
+ * so adding many photos at once does not sort them again for every photo.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class DateIndex {
+
+	/**
+	 * The day each photo was taken, found by photo id
+	 */
+	private int[] dayByPhotoId;
+
+	/**
+	 * Ids of the photos that are in the index
+	 */
+	private BitSet indexedPhotos;
+
+	/**
+	 * Days of the indexed photos, sorted
+	 */
+	private int[] sortedDays;
+
+	/**
+	 * Ids of the indexed photos, in the same order as sortedDays
+	 */
+	private int[] sortedPhotoIds;
+
+	/**
+	 * True if photos were added or removed since the sorted arrays were built
+	 */
+	private boolean stale;
+
+	/**
+	 * Constructor for DateIndex
+	 */
+	public DateIndex()
+	{
+		dayByPhotoId = new int[16];
+		indexedPhotos = new BitSet();
+		sortedDays = new int[0];
+		sortedPhotoIds = new int[0];
+		stale = false;
+	}
+
+	/**
+	 * Adds a photo to the index
+	 *
+	 * @param photoId	Id of the photo
+	 * @param epochDay	Day the photo was taken
+	 */
+	public void addPhoto(int photoId, int epochDay)
+	{
+		if (photoId >= dayByPhotoId.length)
+		{
+			dayByPhotoId = Arrays.copyOf(dayByPhotoId, Math.max(photoId + 1, dayByPhotoId.length * 2));
+		}
+
+		dayByPhotoId[photoId] = epochDay;
+		indexedPhotos.set(photoId);
+		stale = true;
+	}
+
+	/**
+	 * Removes a photo from the index
+	 *
+	 * @param photoId	Id of the photo
+	 */
+	public void removePhoto(int photoId)
+	{
+		indexedPhotos.clear(photoId);
+		stale = true;
+	}
+
+	/**
+	 * Returns the ids of the photos taken between the two days, including both days.
+	 * The photos are in the order they were taken.
+	 *
+	 * @param fromDay	First day of the range
+	 * @param toDay	Last day of the range
+	 * @return	Ids of the photos in the range
+	 */
+	public int[] photosInRange(int fromDay, int toDay)
+	{
+		sortIfStale();
+
+		int start = firstIndexOnOrAfter(fromDay);
+		int end = toDay == Integer.MAX_VALUE ? sortedDays.length : firstIndexOnOrAfter(toDay + 1);
+
+		if (start >= end)
+		{
+			return new int[0];
+		}
+
+		return Arrays.copyOfRange(sortedPhotoIds, start, end);
+	}
+
+	/**
+	 * Returns the number of photos taken between the two days, including both days, without copying them
+	 *
+	 * @param fromDay	First day of the range
+	 * @param toDay	Last day of the range
+	 * @return	Number of photos in the range
+	 */
+	public int countPhotosInRange(int fromDay, int toDay)
+	{
+		sortIfStale();
+
+		int start = firstIndexOnOrAfter(fromDay);
+		int end = toDay == Integer.MAX_VALUE ? sortedDays.length : firstIndexOnOrAfter(toDay + 1);
+
+		return Math.max(0, end - start);
+	}
+
+	/**
+	 * Returns the ids of every photo in the index, which are the photos that are in at least one album
+	 *
+	 * @return	Ids of all the indexed photos
+	 */
+	public BitSet allPhotos()
+	{
+		return (BitSet) indexedPhotos.clone();
+	}
+
+	/**
+	 * Returns the number of photos in the index
+	 *
+	 * @return	Number of indexed photos
+	 */
+	public int countPhotos()
+	{
+		return indexedPhotos.cardinality();
+	}
+
+	/**
+	 * Returns the ids of the photos taken between the two days, including both days, as a set
+	 * so it can be combined with the sets from the tag index
+	 *
+	 * @param fromDay	First day of the range
+	 * @param toDay	Last day of the range
+	 * @return	Ids of the photos in the range
+	 */
+	public BitSet photoSetInRange(int fromDay, int toDay)
+	{
+		BitSet photoIds = new BitSet();
+
+		for (int photoId: photosInRange(fromDay, toDay))
+		{
+			photoIds.set(photoId);
+		}
+
+		return photoIds;
+	}
+
+	/**
+	 * Turns a date into the epoch day used by the index. Dates too far away to fit in an int
+	 * are moved to the nearest day that fits.
+	 *
+	 * @param date	The date
+	 * @return	The epoch day of the date
+	 */
+	public static int toDay(LocalDate date)
+	{
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+	}
+
+	/**
+	 * Finds the position of the first photo taken on or after the given day
+	 *
+	 * @param day	The day
+	 * @return	Position in the sorted arrays, or the number of photos if there is none
+	 */
+	private int firstIndexOnOrAfter(int day)
+	{
+		int low = 0;
+		int high = sortedDays.length;
+
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+
+			if (sortedDays[middle] < day)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Rebuilds the sorted arrays if photos were added or removed.
+	 * Each photo is packed into one long with the day first, so sorting the longs sorts the photos by day
+	 * and then by id without making an object for every photo.
+	 */
+	private void sortIfStale()
+	{
+		if (!stale)
+		{
+			return;
+		}
+
+		long[] packed = new long[indexedPhotos.cardinality()];
+		int count = 0;
+
+		for (int photoId = indexedPhotos.nextSetBit(0); photoId >= 0; photoId = indexedPhotos.nextSetBit(photoId + 1))
+		{
+			packed[count++] = ((long) dayByPhotoId[photoId] << 32) | photoId;
+		}
+
+		Arrays.sort(packed);
+
+		sortedDays = new int[count];
+		sortedPhotoIds = new int[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			sortedDays[i] = (int) (packed[i] >> 32);
+			sortedPhotoIds[i] = (int) packed[i];
+		}
+
+		stale = false;
+	}
+}
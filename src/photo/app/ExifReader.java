@@ -0,0 +1,556 @@
+package photo.app;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * This class reads when a photo was taken, along with its orientation, size and location, from the EXIF header
+ * of a JPEG file. Only the headers at the start of the file are read, a few bytes at a time for most of them,
+ * and the reading stops before the pixels, so a photo is never decoded to find its metadata.
+ *
+ * The EXIF header is in the APP1 segment. It holds a small TIFF file whose tables, called IFDs, list each value
+ * by a number. The first table has the orientation and points to the EXIF table, which has the date taken and the size,
+ * and to the GPS table, which has the location.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class ExifReader {
+
+	/**
+	 * Marker at the start of every JPEG file
+	 */
+	private static final int startOfImage = 0xFFD8;
+
+	/**
+	 * Marker of the APP1 segment, which holds the EXIF header
+	 */
+	private static final int app1 = 0xFFE1;
+
+	/**
+	 * Marker of the segment right before the pixels
+	 */
+	private static final int startOfScan = 0xFFDA;
+
+	/**
+	 * Marker at the end of every JPEG file
+	 */
+	private static final int endOfImage = 0xFFD9;
+
+	/**
+	 * Number of the orientation in the first table
+	 */
+	private static final int orientationTag = 0x0112;
+
+	/**
+	 * Number of the date the file was last changed in the first table, used if the date taken is missing
+	 */
+	private static final int dateTimeTag = 0x0132;
+
+	/**
+	 * Number of the pointer to the EXIF table in the first table
+	 */
+	private static final int exifTableTag = 0x8769;
+
+	/**
+	 * Number of the pointer to the GPS table in the first table
+	 */
+	private static final int gpsTableTag = 0x8825;
+
+	/**
+	 * Number of the date taken in the EXIF table
+	 */
+	private static final int dateTakenTag = 0x9003;
+
+	/**
+	 * Number of the width in the EXIF table
+	 */
+	private static final int widthTag = 0xA002;
+
+	/**
+	 * Number of the height in the EXIF table
+	 */
+	private static final int heightTag = 0xA003;
+
+	/**
+	 * Numbers of the north or south letter, the latitude, the east or west letter and the longitude in the GPS table
+	 */
+	private static final int latitudeRefTag = 1, latitudeTag = 2, longitudeRefTag = 3, longitudeTag = 4;
+
+	/**
+	 * Types of the values in a table
+	 */
+	private static final int asciiType = 2, shortType = 3, longType = 4, rationalType = 5;
+
+	/**
+	 * Format EXIF dates are written in
+	 */
+	private static final DateTimeFormatter exifDateFormat = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+	/**
+	 * The TIFF file inside the APP1 segment, or null if none has been found
+	 */
+	private ByteBuffer tiff;
+
+	/**
+	 * The date the photo was taken, or null if it has not been found
+	 */
+	private LocalDateTime dateTaken;
+
+	/**
+	 * The date the file was last changed according to its header, or null if it has not been found
+	 */
+	private LocalDateTime dateChanged;
+
+	/**
+	 * The orientation, or 0 if it has not been found
+	 */
+	private int orientation;
+
+	/**
+	 * The width and height from the start of the frame, or 0 if they have not been found
+	 */
+	private int frameWidth, frameHeight;
+
+	/**
+	 * The width and height from the EXIF table, or 0 if they have not been found
+	 */
+	private int exifWidth, exifHeight;
+
+	/**
+	 * The latitude and longitude, or NaN if they have not been found
+	 */
+	private double latitude, longitude;
+
+	/**
+	 * Constructor for ExifReader
+	 */
+	private ExifReader()
+	{
+		latitude = Double.NaN;
+		longitude = Double.NaN;
+	}
+
+	/**
+	 * Reads the metadata of a photo file
+	 *
+	 * @param photoPath	Path of the photo
+	 * @return	The metadata, or null if the file is not a JPEG or cannot be read
+	 */
+	public static PhotoMetadata read(String photoPath)
+	{
+		try
+		{
+			return read(Paths.get(photoPath));
+		}
+		catch (InvalidPathException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the metadata of a photo file
+	 *
+	 * @param photoFile	The photo file
+	 * @return	The metadata, or null if the file is not a JPEG or cannot be read
+	 */
+	public static PhotoMetadata read(Path photoFile)
+	{
+		ExifReader reader = new ExifReader();
+
+		try (FileChannel channel = FileChannel.open(photoFile, StandardOpenOption.READ))
+		{
+			if (!reader.readSegments(channel))
+			{
+				return null;
+			}
+		}
+		catch (IOException | SecurityException e)
+		{
+			return null;
+		}
+
+		return reader.toMetadata();
+	}
+
+	/**
+	 * Walks the segments at the start of a JPEG file, reading the APP1 segment and the size of the frame
+	 *
+	 * @param channel	The open file
+	 * @return	True if the file is a JPEG, false otherwise
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private boolean readSegments(FileChannel channel) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(4);
+
+		if (!readFully(channel, header, 0) || (header.getShort(0) & 0xFFFF) != startOfImage)
+		{
+			return false;
+		}
+
+		long position = 2;
+
+		while (readFully(channel, header, position))
+		{
+			int marker = header.getShort(0) & 0xFFFF;
+			int length = header.getShort(2) & 0xFFFF;
+
+			// A damaged file, or the pixels have been reached
+			if ((marker & 0xFF00) != 0xFF00 || length < 2 || marker == startOfScan || marker == endOfImage)
+			{
+				break;
+			}
+
+			if (marker == app1 && tiff == null)
+			{
+				ByteBuffer segment = ByteBuffer.allocate(length - 2);
+
+				if (readFully(channel, segment, position + 4))
+				{
+					readApp1(segment);
+				}
+			}
+			else if (isStartOfFrame(marker))
+			{
+				ByteBuffer frame = ByteBuffer.allocate(5);
+
+				if (readFully(channel, frame, position + 4))
+				{
+					frameHeight = frame.getShort(1) & 0xFFFF;
+					frameWidth = frame.getShort(3) & 0xFFFF;
+				}
+
+				// The APP segments come before the frame, so there is nothing left to find
+				break;
+			}
+
+			position += 2 + length;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads the tables of the EXIF header. A damaged header is treated as if it were not there.
+	 *
+	 * @param segment	The APP1 segment, without its marker and length
+	 */
+	private void readApp1(ByteBuffer segment)
+	{
+		byte[] exifName = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+		if (segment.remaining() < exifName.length + 8)
+		{
+			return;
+		}
+
+		for (int i = 0; i < exifName.length; i++)
+		{
+			if (segment.get(i) != exifName[i])
+			{
+				return;
+			}
+		}
+
+		segment.position(exifName.length);
+		tiff = segment.slice();
+
+		// The TIFF file says whether its numbers are written with the biggest byte first or last
+		if (tiff.get(0) == 'I' && tiff.get(1) == 'I')
+		{
+			tiff.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		else if (tiff.get(0) != 'M' || tiff.get(1) != 'M')
+		{
+			return;
+		}
+
+		try
+		{
+			if ((tiff.getShort(2) & 0xFFFF) == 42)
+			{
+				readFirstTable(tiff.getInt(4));
+			}
+		}
+		catch (IndexOutOfBoundsException | BufferUnderflowException e)
+		{
+			// Whatever was read before the damaged part is kept
+		}
+	}
+
+	/**
+	 * Reads the first table, which has the orientation and points to the other tables
+	 *
+	 * @param offset	Where the table starts in the TIFF file
+	 */
+	private void readFirstTable(int offset)
+	{
+		int entries = tiff.getShort(offset) & 0xFFFF;
+
+		for (int i = 0; i < entries; i++)
+		{
+			int entry = offset + 2 + i * 12;
+
+			switch (tiff.getShort(entry) & 0xFFFF)
+			{
+				case orientationTag:
+					int value = intValue(entry);
+					orientation = value >= 1 && value <= 8 ? value : 0;
+					break;
+				case dateTimeTag:
+					dateChanged = dateValue(entry);
+					break;
+				case exifTableTag:
+					readExifTable(intValue(entry));
+					break;
+				case gpsTableTag:
+					readGpsTable(intValue(entry));
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the EXIF table, which has the date taken and the size
+	 *
+	 * @param offset	Where the table starts in the TIFF file
+	 */
+	private void readExifTable(int offset)
+	{
+		int entries = tiff.getShort(offset) & 0xFFFF;
+
+		for (int i = 0; i < entries; i++)
+		{
+			int entry = offset + 2 + i * 12;
+
+			switch (tiff.getShort(entry) & 0xFFFF)
+			{
+				case dateTakenTag:
+					dateTaken = dateValue(entry);
+					break;
+				case widthTag:
+					exifWidth = intValue(entry);
+					break;
+				case heightTag:
+					exifHeight = intValue(entry);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Reads the GPS table, which has the location
+	 *
+	 * @param offset	Where the table starts in the TIFF file
+	 */
+	private void readGpsTable(int offset)
+	{
+		int entries = tiff.getShort(offset) & 0xFFFF;
+		String latitudeRef = "N", longitudeRef = "E";
+		double readLatitude = Double.NaN, readLongitude = Double.NaN;
+
+		for (int i = 0; i < entries; i++)
+		{
+			int entry = offset + 2 + i * 12;
+
+			switch (tiff.getShort(entry) & 0xFFFF)
+			{
+				case latitudeRefTag:
+					latitudeRef = stringValue(entry);
+					break;
+				case latitudeTag:
+					readLatitude = degreesValue(entry);
+					break;
+				case longitudeRefTag:
+					longitudeRef = stringValue(entry);
+					break;
+				case longitudeTag:
+					readLongitude = degreesValue(entry);
+					break;
+				default:
+					break;
+			}
+		}
+
+		latitude = latitudeRef.equalsIgnoreCase("S") ? -readLatitude : readLatitude;
+		longitude = longitudeRef.equalsIgnoreCase("W") ? -readLongitude : readLongitude;
+	}
+
+	/**
+	 * Returns a whole number value of a table entry
+	 *
+	 * @param entry	Where the entry starts in the TIFF file
+	 * @return	The value, or 0 if the entry is not a whole number
+	 */
+	private int intValue(int entry)
+	{
+		switch (tiff.getShort(entry + 2) & 0xFFFF)
+		{
+			case shortType:
+				return tiff.getShort(entry + 8) & 0xFFFF;
+			case longType:
+				return Math.max(tiff.getInt(entry + 8), 0);
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * Returns a text value of a table entry. Text of up to 4 letters is kept in the entry itself.
+	 *
+	 * @param entry	Where the entry starts in the TIFF file
+	 * @return	The text, or an empty string if the entry is not text
+	 */
+	private String stringValue(int entry)
+	{
+		if ((tiff.getShort(entry + 2) & 0xFFFF) != asciiType)
+		{
+			return "";
+		}
+
+		int count = tiff.getInt(entry + 4);
+		int start = count <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+
+		// Compared this way so a damaged count cannot overflow past the check and ask for a huge array
+		if (count < 0 || start < 0 || count > tiff.limit() - start)
+		{
+			return "";
+		}
+
+		byte[] letters = new byte[count];
+
+		for (int i = 0; i < count; i++)
+		{
+			letters[i] = tiff.get(start + i);
+		}
+
+		String text = new String(letters, StandardCharsets.US_ASCII);
+		int end = text.indexOf('\0');
+
+		return end >= 0 ? text.substring(0, end) : text;
+	}
+
+	/**
+	 * Returns a date value of a table entry
+	 *
+	 * @param entry	Where the entry starts in the TIFF file
+	 * @return	The date, or null if the entry is not a real date. Cameras without a clock write zeros.
+	 */
+	private LocalDateTime dateValue(int entry)
+	{
+		try
+		{
+			return LocalDateTime.parse(stringValue(entry).trim(), exifDateFormat);
+		}
+		catch (DateTimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a location value of a table entry, which is written as degrees, minutes and seconds
+	 *
+	 * @param entry	Where the entry starts in the TIFF file
+	 * @return	The location in degrees, or NaN if the entry is not a location
+	 */
+	private double degreesValue(int entry)
+	{
+		if ((tiff.getShort(entry + 2) & 0xFFFF) != rationalType || tiff.getInt(entry + 4) != 3)
+		{
+			return Double.NaN;
+		}
+
+		int start = tiff.getInt(entry + 8);
+		double degrees = 0;
+		double unit = 1;
+
+		for (int i = 0; i < 3; i++)
+		{
+			long numerator = tiff.getInt(start + i * 8) & 0xFFFFFFFFL;
+			long denominator = tiff.getInt(start + i * 8 + 4) & 0xFFFFFFFFL;
+
+			if (denominator == 0)
+			{
+				return Double.NaN;
+			}
+
+			degrees += (double) numerator / denominator / unit;
+			unit *= 60;
+		}
+
+		return degrees;
+	}
+
+	/**
+	 * Makes the metadata from what was found
+	 *
+	 * @return	The metadata
+	 */
+	private PhotoMetadata toMetadata()
+	{
+		// The frame says the real size, while the EXIF table may still have the size from before the photo was edited
+		int width = frameWidth > 0 ? frameWidth : exifWidth;
+		int height = frameHeight > 0 ? frameHeight : exifHeight;
+
+		return new PhotoMetadata(dateTaken != null ? dateTaken : dateChanged, orientation, width, height, latitude, longitude);
+	}
+
+	/**
+	 * Checks to see if a marker starts a frame, which has the size of the photo
+	 *
+	 * @param marker	The marker
+	 * @return	True if the marker starts a frame, false otherwise
+	 */
+	private static boolean isStartOfFrame(int marker)
+	{
+		// Markers C4, C8 and CC are in the same range but are not frames
+		return marker >= 0xFFC0 && marker <= 0xFFCF && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC;
+	}
+
+	/**
+	 * Reads bytes from the file until the buffer is full
+	 *
+	 * @param channel	The open file
+	 * @param buffer	The buffer, which is cleared first
+	 * @param position	Where to start reading in the file
+	 * @return	True if the buffer was filled, false if the file ended first
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		buffer.clear();
+
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position + buffer.position());
+
+			if (read < 0)
+			{
+				return false;
+			}
+		}
+
+		buffer.flip();
+
+		return true;
+	}
+}
@@ -0,0 +1,375 @@
+package photo.app;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class represents a single change made to a user's data, such as a tag being added
+ * or an album being renamed. Changes are appended to the journal instead of rewriting the
+ * whole save file, and are replayed on top of the last snapshot when the data is read.
+ * Every change is idempotent so replaying it more than once leaves the data the same.
+ * Replaying never reads the photo files. What was read from a photo's file when it was added,
+ * such as when it was taken, is written with the change instead.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class JournalEntry {
+
+	/**
+	 * The kinds of changes that can be recorded. The comment next to each one lists the
+	 * arguments the change expects, in order. The first argument is always the name of the user.
+	 */
+	public enum Type
+	{
+		ADD_ALBUM,			// user, album
+		RENAME_ALBUM,		// user, old album name, new album name
+		DELETE_ALBUM,		// user, album
+		ADD_PHOTO,			// user, album, path
+		ADD_PHOTOS,			// user, album, path, path, ...
+		REMOVE_PHOTO,		// user, album, path
+		COPY_PHOTO,			// user, path, target album
+		MOVE_PHOTO,			// user, source album, path, target album
+		ADD_TAG,			// user, album, path, tag type, tag value
+		REMOVE_TAG,			// user, album, path, tag type, tag value
+		CHANGE_CAPTION,		// user, album, path, caption
+		ADD_TAG_TYPE,		// user, tag type
+		REMOVE_TAG_TYPE,	// user, tag type
+		ADD_PHOTOS_WITH_INFO	// user, album, path, file information, path, file information, ...
+	}
+
+	/**
+	 * The kind of change
+	 */
+	private Type type;
+
+	/**
+	 * The arguments of the change, such as the user name and album name
+	 */
+	private String[] args;
+
+	/**
+	 * Constructor for JournalEntry
+	 *
+	 * @param type	The kind of change
+	 * @param args	The arguments of the change
+	 */
+	public JournalEntry(Type type, String... args)
+	{
+		this.type = type;
+		this.args = args;
+	}
+
+	/**
+	 * Makes the change of photos being added to an album, along with what was read from each photo's file
+	 *
+	 * @param userName	Name of the user
+	 * @param albumName	Name of the album
+	 * @param photos	The photos that were added
+	 * @return	The change
+	 */
+	public static JournalEntry addPhotos(String userName, String albumName, Collection<Photo> photos)
+	{
+		List<String> args = new ArrayList<String>();
+		args.add(userName);
+		args.add(albumName);
+
+		for (Photo photo: photos)
+		{
+			args.add(photo.getPhotoPath());
+			args.add(fileInformation(photo));
+		}
+
+		return new JournalEntry(Type.ADD_PHOTOS_WITH_INFO, args.toArray(new String[0]));
+	}
+
+	/**
+	 * Returns the name of the user the change was made to
+	 *
+	 * @return	The user name
+	 */
+	public String getUserName()
+	{
+		return args[0];
+	}
+
+	/**
+	 * Returns the kind of change
+	 *
+	 * @return	The kind of change
+	 */
+	public Type getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Writes the change. The journal adds its length and checksum around it.
+	 *
+	 * @param out	Stream the change is written to
+	 * @throws IOException	Any exceptions encountered
+	 */
+	public void writeTo(DataOutputStream out) throws IOException
+	{
+		out.writeUTF(type.name());
+		out.writeInt(args.length);
+
+		for (String arg: args)
+		{
+			out.writeUTF(arg);
+		}
+	}
+
+	/**
+	 * Reads a change written by writeTo
+	 *
+	 * @param in	Stream the change is read from
+	 * @return	The change that was read
+	 * @throws IOException	If the change is incomplete
+	 * @throws IllegalArgumentException	If the kind of change is not known
+	 */
+	public static JournalEntry readFrom(DataInputStream in) throws IOException
+	{
+		Type type = Type.valueOf(in.readUTF());
+		String[] args = new String[in.readInt()];
+
+		for (int i = 0; i < args.length; i++)
+		{
+			args[i] = in.readUTF();
+		}
+
+		return new JournalEntry(type, args);
+	}
+
+	/**
+	 * Replays the change on top of the given user's data.
+	 * Changes that refer to albums or photos that no longer exist are skipped.
+	 *
+	 * @param user	The user the change is applied to
+	 */
+	public void apply(User user)
+	{
+		switch (type)
+		{
+			case ADD_ALBUM:
+				if (!user.doesAlbumNameExist(args[1]))
+				{
+					user.addAlbum(new Album(args[1]));
+				}
+				break;
+
+			case RENAME_ALBUM:
+				if (user.doesAlbumNameExist(args[1]))
+				{
+					user.getAlbum(args[1]).changeAlbumName(args[2]);
+				}
+				break;
+
+			case DELETE_ALBUM:
+				user.removeAlbum(args[1]);
+				break;
+
+			case ADD_PHOTO:
+			{
+				Album album = user.getAlbum(args[1]);
+				if (album != null && !album.isPhotoPathPresent(args[2]))
+				{
+					album.addPhoto(user.getOrCreatePhoto(args[2]));
+				}
+				break;
+			}
+
+			case ADD_PHOTOS:
+			{
+				Album album = user.getAlbum(args[1]);
+				if (album != null)
+				{
+					user.addPhotosToAlbum(album, Arrays.asList(args).subList(2, args.length));
+				}
+				break;
+			}
+
+			case ADD_PHOTOS_WITH_INFO:
+			{
+				Album album = user.getAlbum(args[1]);
+				if (album != null)
+				{
+					List<Photo> photos = new ArrayList<Photo>();
+					for (int i = 2; i + 1 < args.length; i += 2)
+					{
+						photos.add(readPhoto(args[i], args[i + 1]));
+					}
+					user.addImportedPhotosToAlbum(album, photos);
+				}
+				break;
+			}
+
+			case REMOVE_PHOTO:
+			{
+				Album album = user.getAlbum(args[1]);
+				if (album != null)
+				{
+					album.removePhoto(args[2]);
+				}
+				break;
+			}
+
+			case COPY_PHOTO:
+			{
+				Photo photo = user.findPhoto(args[1]);
+				Album target = user.getAlbum(args[2]);
+				if (photo != null && target != null && !target.isPhotoPathPresent(args[1]))
+				{
+					target.addPhoto(photo);
+				}
+				break;
+			}
+
+			case MOVE_PHOTO:
+			{
+				Album source = user.getAlbum(args[1]);
+				Album target = user.getAlbum(args[3]);
+				Photo photo = findPhotoInAlbum(source, args[2]);
+				if (photo != null && target != null && !target.isPhotoPathPresent(args[2]))
+				{
+					target.addPhoto(photo);
+					source.removePhoto(args[2]);
+				}
+				break;
+			}
+
+			case ADD_TAG:
+			{
+				Photo photo = findPhotoInAlbum(user.getAlbum(args[1]), args[2]);
+				if (photo != null && !photo.checkIfTagExists(args[3], args[4]))
+				{
+					photo.addTag(args[3], args[4]);
+				}
+				break;
+			}
+
+			case REMOVE_TAG:
+			{
+				Photo photo = findPhotoInAlbum(user.getAlbum(args[1]), args[2]);
+				if (photo != null && photo.checkIfTagExists(args[3], args[4]))
+				{
+					photo.removeTag(args[3], args[4]);
+				}
+				break;
+			}
+
+			case CHANGE_CAPTION:
+			{
+				Photo photo = findPhotoInAlbum(user.getAlbum(args[1]), args[2]);
+				if (photo != null)
+				{
+					photo.changePhotoCaption(args[3]);
+				}
+				break;
+			}
+
+			case ADD_TAG_TYPE:
+				if (!user.isTagTypeInList(args[1]))
+				{
+					user.addNewTagTypeIfNotInList(args[1]);
+				}
+				break;
+
+			case REMOVE_TAG_TYPE:
+				user.removeTagTypeFromList(args[1]);
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * Writes what was read from a photo's file as text: the time it was taken, and the metadata from its header if it had any
+	 *
+	 * @param photo	The photo
+	 * @return	The file information, with the values separated by semicolons
+	 */
+	private static String fileInformation(Photo photo)
+	{
+		StringBuilder information = new StringBuilder(Long.toString(photo.getTimeTaken()));
+		PhotoMetadata metadata = photo.getMetadata();
+
+		if (metadata != null)
+		{
+			information.append(';').append(metadata.getDateTaken() == null ? "" : metadata.getDateTaken().toString())
+					.append(';').append(metadata.getOrientation())
+					.append(';').append(metadata.getWidth())
+					.append(';').append(metadata.getHeight())
+					.append(';').append(metadata.getLatitude())
+					.append(';').append(metadata.getLongitude());
+		}
+
+		return information.toString();
+	}
+
+	/**
+	 * Makes a photo from its path and the file information written by fileInformation, without reading the file.
+	 * If the information cannot be understood, the file is read instead.
+	 *
+	 * @param photoPath	Path of the photo
+	 * @param information	The file information
+	 * @return	A photo that is not in any album yet
+	 */
+	private static Photo readPhoto(String photoPath, String information)
+	{
+		String[] values = information.split(";", -1);
+		PhotoMetadata metadata = null;
+
+		try
+		{
+			if (values.length == 7)
+			{
+				metadata = new PhotoMetadata(values[1].isEmpty() ? null : LocalDateTime.parse(values[1]),
+						Integer.parseInt(values[2]), Integer.parseInt(values[3]), Integer.parseInt(values[4]),
+						Double.parseDouble(values[5]), Double.parseDouble(values[6]));
+			}
+
+			return new Photo(photoPath, Long.parseLong(values[0]), metadata);
+		}
+		catch (NumberFormatException | DateTimeParseException e)
+		{
+			return new Photo(photoPath);
+		}
+	}
+
+	/**
+	 * Finds the photo with the given path in the given album
+	 *
+	 * @param album	The album to look in, may be null
+	 * @param photoPath	Path of the photo
+	 * @return	The photo, or null if the album or the photo does not exist
+	 */
+	private static Photo findPhotoInAlbum(Album album, String photoPath)
+	{
+		if (album == null)
+		{
+			return null;
+		}
+
+		return album.getPhoto(photoPath);
+	}
+
+	/**
+	 * Returns the change as a string
+	 *
+	 * @return	A string
+	 */
+	public String toString()
+	{
+		return type + " " + String.join(", ", args);
+	}
+}
@@ -1,11 +1,18 @@
 package photo.app;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -22,31 +29,104 @@ public class Photo implements Serializable{
 	 */
 	private static final long serialVersionUID = -1541823478468036214L;
 	
+	/**
+	 * The time zone photo dates are turned into days in. It is read once when the program starts.
+	 */
+	private static final ZoneId zone = ZoneId.systemDefault();
+	
+	/**
+	 * Format for how the date of a photo is shown
+	 */
+	private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+	
 	/**
 	 * Caption for the photo
 	 */
 	private String photoCaption;
 	
 	/**
-	 * List of tags for the photo
+	 * List of tags for the photo, as it is written in the save data.
+	 * While the program runs, the tags are kept in tagIds instead and this is null.
 	 */
 	private List<Tag> photoTags;
 	
+	/**
+	 * Ids of the photo's tags in tagPool, sorted so a tag can be found with a binary search.
+	 * This is null until the tags read from the save data are turned into ids.
+	 */
+	private transient int[] tagIds;
+	
+	/**
+	 * Ids of the photo's tags in the order they were added, which is the order getTagList shows them in.
+	 * This is null whenever tagIds is.
+	 */
+	private transient int[] addedTagIds;
+	
+	/**
+	 * The pool the tag ids belong to. Once the photo has an owner, this is the owner's pool.
+	 */
+	private transient TagPool tagPool;
+	
+	/**
+	 * The photo's tags made from tagIds for getTagList, or null if they have to be made again
+	 */
+	private transient List<Tag> tagList;
+	
 	/**
 	 * The file path for the photo
 	 */
 	private String photoPath;
 	
 	/**
-	 * The date when the Photo was taken
+	 * The date when the Photo was taken, as it is written in the save data.
+	 * While the program runs, the date is kept in timeTaken and epochDay instead and this is null.
 	 */
 	private Date datePhotoTaken;
 	
+	/**
+	 * The time when the photo was taken, in milliseconds since 1970-01-01
+	 */
+	private transient long timeTaken;
+	
+	/**
+	 * The day the photo was taken as an epoch day, worked out once in the program's time zone
+	 */
+	private transient int epochDay;
+	
+	/**
+	 * The date of the photo formatted to be shown, or null if it has not been shown yet
+	 */
+	private transient String dateText;
+	
+	/**
+	 * Information read from the photo file's header when the photo was made, such as when it was taken.
+	 * It is saved with the photo so the file is never read again for it.
+	 * This is null if the file is not a JPEG or the photo was saved before metadata was read.
+	 */
+	private PhotoMetadata metadata;
+	
 	/**
 	 * Keeps track of how many location tags a user has. It should be either 0 or 1.
 	 */
 	private int locationTagsAmount;
 	
+	/**
+	 * Keeps track of how many of the user's albums have this photo.
+	 * Once it drops to 0, the photo can be replaced by a new one with the same path.
+	 */
+	private int albumCount;
+	
+	/**
+	 * The user who owns this photo, told whenever the photo's tags change so the user's indexes stay up to date.
+	 * It is set again by the user after the save data is read.
+	 */
+	private transient User owner;
+	
+	/**
+	 * Number that identifies this photo in the owner's indexes
+	 */
+	private transient int photoId;
+	
 	/**
 	 * Constructor for Photo
 	 * 
@@ -57,10 +137,43 @@ public class Photo implements Serializable{
 	{
 		this.photoPath = photoPath;
 		photoCaption = "";
-		photoTags = new ArrayList<Tag>();
+		photoTags = null;
+		tagIds = new int[0];
+		addedTagIds = new int[0];
+		locationTagsAmount = 0;
+		albumCount = 0;
+		metadata = ExifReader.read(photoPath);
+		
+		// The date the camera wrote is kept when the file is copied, unlike the date the file was last changed
+		if (metadata != null && metadata.getDateTaken() != null)
+		{
+			setTimeTaken(metadata.getDateTaken().atZone(zone).toInstant().toEpochMilli());
+		}
+		else
+		{
+			setTimeTaken(new File(photoPath).lastModified());
+		}
+	}
+	
+	/**
+	 * Constructor for a photo whose file was already read, such as when the journal is replayed.
+	 * The file is not read again.
+	 * 
+	 * @param photoPath	The path of the photo
+	 * @param timeTaken	The time the photo was taken, in milliseconds since 1970-01-01
+	 * @param metadata	Information read from the file's header, or null if there was none
+	 */
+	Photo(String photoPath, long timeTaken, PhotoMetadata metadata)
+	{
+		this.photoPath = photoPath;
+		photoCaption = "";
+		photoTags = null;
+		tagIds = new int[0];
+		addedTagIds = new int[0];
 		locationTagsAmount = 0;
-		File photo = new File(photoPath);
-		datePhotoTaken = new Date(photo.lastModified());
+		albumCount = 0;
+		this.metadata = metadata;
+		setTimeTaken(timeTaken);
 	}
 	
 	/**
@@ -73,6 +186,90 @@ public class Photo implements Serializable{
 		return this.photoPath;
 	}
 	
+	/**
+	 * Called by Album whenever this photo is added to an album
+	 */
+	void addedToAlbum()
+	{
+		albumCount++;
+		
+		// The photo is in the owner's indexes only while it is in at least one album
+		if (albumCount == 1 && owner != null)
+		{
+			owner.photoAddedToAlbums(this);
+		}
+	}
+	
+	/**
+	 * Called by Album whenever this photo is removed from an album
+	 */
+	void removedFromAlbum()
+	{
+		albumCount--;
+		
+		if (albumCount == 0 && owner != null)
+		{
+			owner.photoRemovedFromAlbums(this);
+		}
+	}
+	
+	/**
+	 * Sets the user who owns this photo and the number that identifies it in the user's indexes
+	 * 
+	 * @param owner	The user who owns the photo
+	 * @param photoId	Number that identifies the photo
+	 */
+	void setOwner(User owner, int photoId)
+	{
+		TagPool ownerPool = owner.getTagPool();
+		
+		// Tags added before the photo had an owner are moved into the owner's pool
+		if (tagPool != null && tagPool != ownerPool && tagIds != null)
+		{
+			int[] oldTagIds = addedTagIds;
+			TagPool oldPool = tagPool;
+			tagIds = new int[0];
+			addedTagIds = new int[0];
+			
+			for (int tagId: oldTagIds)
+			{
+				insertTagId(ownerPool.intern(oldPool.getTag(tagId)));
+			}
+		}
+		
+		tagPool = ownerPool;
+		this.owner = owner;
+		this.photoId = photoId;
+	}
+	
+	/**
+	 * Returns the number that identifies this photo in the owner's indexes
+	 * 
+	 * @return	The id of the photo
+	 */
+	int getPhotoId()
+	{
+		return photoId;
+	}
+	
+	/**
+	 * Forgets how many albums have this photo, so it can be counted again
+	 */
+	void resetAlbumCount()
+	{
+		albumCount = 0;
+	}
+	
+	/**
+	 * Checks to see if any album still has this photo
+	 * 
+	 * @return	True if at least one album has the photo, false otherwise
+	 */
+	public boolean isInAnAlbum()
+	{
+		return albumCount > 0;
+	}
+	
 	/**
 	 * Allows the user to change the caption of the photo
 	 * 
@@ -81,6 +278,11 @@ public class Photo implements Serializable{
 	public void changePhotoCaption(String newCaption)
 	{
 		photoCaption = newCaption;
+		
+		if (owner != null && isInAnAlbum())
+		{
+			owner.captionChanged(this);
+		}
 	}
 	
 	/**
@@ -94,13 +296,58 @@ public class Photo implements Serializable{
 	}
 	
 	/**
-	 * Returns the date of the photo as a Date
+	 * Returns the date of the photo as a Date. A new Date is made each time, so changing it does not change the photo.
 	 * 
 	 * @return	Returns the date of the photo as a Date
 	 */
 	public Date getDate()
 	{
-		return this.datePhotoTaken;
+		return new Date(timeTaken);
+	}
+	
+	/**
+	 * Returns the time the photo was taken
+	 * 
+	 * @return	The time in milliseconds since 1970-01-01
+	 */
+	long getTimeTaken()
+	{
+		return timeTaken;
+	}
+	
+	/**
+	 * Returns the day the photo was taken as an epoch day, the number of days since 1970-01-01
+	 * 
+	 * @return	The day the photo was taken
+	 */
+	public int getEpochDay()
+	{
+		return epochDay;
+	}
+	
+	/**
+	 * Returns the information read from the photo file's header
+	 * 
+	 * @return	The metadata, or null if the file is not a JPEG or the photo was saved before metadata was read
+	 */
+	public PhotoMetadata getMetadata()
+	{
+		return metadata;
+	}
+	
+	/**
+	 * Returns the date of the photo formatted as year-month-day to be shown to the user
+	 * 
+	 * @return	The date of the photo as a string
+	 */
+	public String getDateText()
+	{
+		if (dateText == null)
+		{
+			dateText = dateFormat.format(LocalDate.ofEpochDay(epochDay));
+		}
+		
+		return dateText;
 	}
 	
 	/**
@@ -113,9 +360,7 @@ public class Photo implements Serializable{
 	 */
 	public boolean isPhotoWithinDateRange(LocalDate olderDate, LocalDate earlierDate)
 	{
-		LocalDate currentDate = datePhotoTaken.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-		
-		if (currentDate.isBefore(olderDate) || currentDate.isAfter(earlierDate))
+		if (epochDay < olderDate.toEpochDay() || epochDay > earlierDate.toEpochDay())
 		{
 			return false;
 		}
@@ -133,9 +378,13 @@ public class Photo implements Serializable{
 	 */
 	public void addTag(String tagType, String tagValue)
 	{
-		Tag tagToAdd = new Tag(tagType, tagValue);
+		// Photos owned by a user share one copy of each tag
+		int tagId = tagPool().intern(tagType, tagValue);
 		
-		this.photoTags.add(tagToAdd);
+		if (insertTagId(tagId) && owner != null && isInAnAlbum())
+		{
+			owner.tagAdded(this, tagType, tagValue);
+		}
 		
 		// There should only be one location tag per photo
 		if (tagType.equalsIgnoreCase("location"))
@@ -154,14 +403,11 @@ public class Photo implements Serializable{
 	 */
 	public void removeTag(String tagType, String tagValue)
 	{
-		for (int i = 0; i < photoTags.size(); i++)
+		int tagId = tagPool().find(tagType, tagValue);
+		
+		if (tagId >= 0 && removeTagId(tagId) && owner != null && isInAnAlbum())
 		{
-			if (photoTags.get(i).getTagType().equalsIgnoreCase(tagType) && 
-				photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue))
-			{
-				photoTags.remove(i);
-				break;
-			}
+			owner.tagRemoved(this, tagType, tagValue);
 		}
 		
 		// If a location tag is removed from a photo, another location tag can take its place
@@ -188,13 +434,38 @@ public class Photo implements Serializable{
 	}
 	
 	/**
-	 * Return the list of tags of the photo
+	 * Return the list of tags of the photo in the order they were added. The list is made from the tag ids
+	 * the first time it is asked for after the tags change, and it cannot be changed.
 	 * 
 	 * @return	Return the list of tags of the photo
 	 */
 	public List<Tag> getTagList()
 	{
-		return this.photoTags;
+		if (tagList == null)
+		{
+			tagIds();
+			List<Tag> tags = new ArrayList<Tag>(addedTagIds.length);
+			
+			for (int tagId: addedTagIds)
+			{
+				tags.add(tagPool().getTag(tagId));
+			}
+			
+			tagList = Collections.unmodifiableList(tags);
+		}
+		
+		return tagList;
+	}
+	
+	/**
+	 * Checks to see if the photo has the tag with the given id in its pool
+	 * 
+	 * @param tagId	Id of the tag
+	 * @return	True if the photo has the tag, false otherwise
+	 */
+	boolean hasTagId(int tagId)
+	{
+		return Arrays.binarySearch(tagIds(), tagId) >= 0;
 	}
 	
 	/**
@@ -207,16 +478,9 @@ public class Photo implements Serializable{
 	 */
 	public boolean checkIfTagExists(String newTagType, String newTagValue)
 	{
-		for (int i = 0; i < photoTags.size(); i++)
-		{
-			if (photoTags.get(i).getTagType().equalsIgnoreCase(newTagType) && 
-					photoTags.get(i).getTagValue().equalsIgnoreCase(newTagValue))
-			{
-				return true;
-			}
-		}
+		int tagId = tagPool().find(newTagType, newTagValue);
 		
-		return false;
+		return tagId >= 0 && hasTagId(tagId);
 	}
 	
 	/**
@@ -229,16 +493,7 @@ public class Photo implements Serializable{
 	 */
 	public boolean searchTagsOnePair(String tagType, String tagValue)
 	{
-		for (int i = 0; i < photoTags.size(); i++)
-		{
-			if (photoTags.get(i).getTagType().equalsIgnoreCase(tagType) && 
-					photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue))
-			{
-				return true;
-			}
-		}
-		
-		return false;
+		return checkIfTagExists(tagType, tagValue);
 	}
 	
 	/**
@@ -253,28 +508,7 @@ public class Photo implements Serializable{
 	 */
 	public boolean searchTagsTwoPairsAnd(String tagType1, String tagValue1, String tagType2, String tagValue2)
 	{
-		int matches = 0;
-		
-		for (int i = 0; i < photoTags.size(); i++)
-		{
-			if (photoTags.get(i).getTagType().equalsIgnoreCase(tagType1) && 
-					photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue1))
-			{
-				matches++;
-			}
-			else if (photoTags.get(i).getTagType().equalsIgnoreCase(tagType2) && 
-					photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue2))
-			{
-				matches++;
-			}
-		}
-		
-		if (matches == 2)
-		{
-			return true;
-		}
-		
-		return false;
+		return checkIfTagExists(tagType1, tagValue1) && checkIfTagExists(tagType2, tagValue2);
 	}
 	
 	/**
@@ -290,17 +524,159 @@ public class Photo implements Serializable{
 	 */
 	public boolean searchTagsTwoPairsOr(String tagType1, String tagValue1, String tagType2, String tagValue2)
 	{
-		for (int i = 0; i < photoTags.size(); i++)
+		return checkIfTagExists(tagType1, tagValue1) || checkIfTagExists(tagType2, tagValue2);
+	}
+	
+	/**
+	 * Returns the ids of the photo's tags, first turning the tags read from the save data into ids if needed
+	 * 
+	 * @return	The sorted tag ids
+	 */
+	private int[] tagIds()
+	{
+		if (tagIds == null)
 		{
-			if (photoTags.get(i).getTagType().equalsIgnoreCase(tagType1) && 
-					photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue1) ||
-					photoTags.get(i).getTagType().equalsIgnoreCase(tagType2) &&
-					photoTags.get(i).getTagValue().equalsIgnoreCase(tagValue2))
+			tagIds = new int[0];
+			addedTagIds = new int[0];
+			
+			if (photoTags != null)
 			{
-				return true;
+				for (Tag tag: photoTags)
+				{
+					insertTagId(tagPool().intern(tag));
+				}
 			}
+			
+			photoTags = null;
 		}
 		
-		return false;
+		return tagIds;
+	}
+	
+	/**
+	 * Returns the pool the tag ids belong to. A photo without an owner gets a pool of its own until it has one.
+	 * 
+	 * @return	The tag pool
+	 */
+	private TagPool tagPool()
+	{
+		if (tagPool == null)
+		{
+			tagPool = owner != null ? owner.getTagPool() : new TagPool();
+		}
+		
+		return tagPool;
+	}
+	
+	/**
+	 * Adds a tag id to the sorted ids and to the end of the ids in the order they were added.
+	 * The arrays are made one longer, since photos only have a few tags.
+	 * 
+	 * @param tagId	Id of the tag
+	 * @return	True if the id was added, false if the photo already had the tag
+	 */
+	private boolean insertTagId(int tagId)
+	{
+		int[] ids = tagIds();
+		int position = Arrays.binarySearch(ids, tagId);
+		
+		if (position >= 0)
+		{
+			return false;
+		}
+		
+		position = -position - 1;
+		int[] newIds = new int[ids.length + 1];
+		System.arraycopy(ids, 0, newIds, 0, position);
+		newIds[position] = tagId;
+		System.arraycopy(ids, position, newIds, position + 1, ids.length - position);
+		
+		tagIds = newIds;
+		addedTagIds = Arrays.copyOf(addedTagIds, addedTagIds.length + 1);
+		addedTagIds[addedTagIds.length - 1] = tagId;
+		tagList = null;
+		
+		return true;
+	}
+	
+	/**
+	 * Removes a tag id from the sorted ids and from the ids in the order they were added
+	 * 
+	 * @param tagId	Id of the tag
+	 * @return	True if the id was removed, false if the photo did not have the tag
+	 */
+	private boolean removeTagId(int tagId)
+	{
+		int[] ids = tagIds();
+		int position = Arrays.binarySearch(ids, tagId);
+		
+		if (position < 0)
+		{
+			return false;
+		}
+		
+		int[] newIds = new int[ids.length - 1];
+		System.arraycopy(ids, 0, newIds, 0, position);
+		System.arraycopy(ids, position + 1, newIds, position, newIds.length - position);
+		
+		int addedPosition = 0;
+		
+		while (addedTagIds[addedPosition] != tagId)
+		{
+			addedPosition++;
+		}
+		
+		int[] newAddedIds = new int[addedTagIds.length - 1];
+		System.arraycopy(addedTagIds, 0, newAddedIds, 0, addedPosition);
+		System.arraycopy(addedTagIds, addedPosition + 1, newAddedIds, addedPosition, newAddedIds.length - addedPosition);
+		
+		tagIds = newIds;
+		addedTagIds = newAddedIds;
+		tagList = null;
+		
+		return true;
+	}
+	
+	/**
+	 * Sets the time the photo was taken and works out the day it was taken on
+	 * 
+	 * @param time	The time in milliseconds since 1970-01-01
+	 */
+	private void setTimeTaken(long time)
+	{
+		timeTaken = time;
+		epochDay = (int) Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+		dateText = null;
+	}
+	
+	/**
+	 * Writes the photo to the save data. The tags are written as a list of Tag objects so the save data does not
+	 * depend on the tag ids, which can be different every time the program runs, and the date is written as a Date
+	 * like it always has been.
+	 * 
+	 * @param out	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		photoTags = new ArrayList<Tag>(getTagList());
+		datePhotoTaken = new Date(timeTaken);
+		out.defaultWriteObject();
+		photoTags = null;
+		datePhotoTaken = null;
+	}
+	
+	/**
+	 * Reads the photo from the save data and works out its day from the date that was saved
+	 * 
+	 * @param in	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	Any exceptions encountered
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		setTimeTaken(datePhotoTaken.getTime());
+		datePhotoTaken = null;
 	}
 }
@@ -0,0 +1,201 @@
+package photo.app;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class is a set of photo ids used by the search indexes.
+ * While few photos are in the set, the ids are kept in a sorted array, which takes 4 bytes for each photo in the set.
+ * Once enough photos are in the set that a bit for every photo would take less memory, the ids are moved to a BitSet.
+ * An index with thousands of rarely used tags or words stays small this way, and common ones stay fast to combine.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoIdSet {
+
+	/**
+	 * Fewest photos a set has before it may be moved to a BitSet
+	 */
+	private static final int smallestBitSet = 64;
+
+	/**
+	 * The ids, sorted, with room for more at the end. This is null once the ids are in the BitSet.
+	 */
+	private int[] ids;
+
+	/**
+	 * Number of ids in the set
+	 */
+	private int size;
+
+	/**
+	 * The ids once enough photos are in the set, or null while they are in the array
+	 */
+	private BitSet bits;
+
+	/**
+	 * Constructor for PhotoIdSet
+	 */
+	public PhotoIdSet()
+	{
+		ids = new int[4];
+		size = 0;
+		bits = null;
+	}
+
+	/**
+	 * Adds an id to the set
+	 *
+	 * @param photoId	Id of the photo
+	 * @return	True if the id was added, false if it was already in the set
+	 */
+	public boolean add(int photoId)
+	{
+		if (bits != null)
+		{
+			if (bits.get(photoId))
+			{
+				return false;
+			}
+
+			bits.set(photoId);
+			size++;
+			return true;
+		}
+
+		// Photos are usually added in the order of their ids, which only adds to the end
+		int position = size == 0 || ids[size - 1] < photoId ? size : Arrays.binarySearch(ids, 0, size, photoId);
+
+		if (position >= 0 && position < size)
+		{
+			return false;
+		}
+
+		if (position < 0)
+		{
+			position = -position - 1;
+		}
+
+		if (size == ids.length)
+		{
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+
+		System.arraycopy(ids, position, ids, position + 1, size - position);
+		ids[position] = photoId;
+		size++;
+
+		// A bit for every photo up to the highest id takes less memory than 32 bits for each photo in the set
+		if (size >= smallestBitSet && (long) size * 32 >= ids[size - 1] + 1L)
+		{
+			bits = new BitSet(ids[size - 1] + 1);
+
+			for (int i = 0; i < size; i++)
+			{
+				bits.set(ids[i]);
+			}
+
+			ids = null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes an id from the set
+	 *
+	 * @param photoId	Id of the photo
+	 * @return	True if the id was removed, false if it was not in the set
+	 */
+	public boolean remove(int photoId)
+	{
+		if (bits != null)
+		{
+			if (!bits.get(photoId))
+			{
+				return false;
+			}
+
+			bits.clear(photoId);
+			size--;
+			return true;
+		}
+
+		int position = Arrays.binarySearch(ids, 0, size, photoId);
+
+		if (position < 0)
+		{
+			return false;
+		}
+
+		System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+		size--;
+
+		return true;
+	}
+
+	/**
+	 * Checks to see if an id is in the set
+	 *
+	 * @param photoId	Id of the photo
+	 * @return	True if the id is in the set, false otherwise
+	 */
+	public boolean contains(int photoId)
+	{
+		if (bits != null)
+		{
+			return bits.get(photoId);
+		}
+
+		return Arrays.binarySearch(ids, 0, size, photoId) >= 0;
+	}
+
+	/**
+	 * Returns the number of ids in the set
+	 *
+	 * @return	Number of ids
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Adds every id in this set to a BitSet
+	 *
+	 * @param photoIds	The BitSet
+	 */
+	public void addTo(BitSet photoIds)
+	{
+		if (bits != null)
+		{
+			photoIds.or(bits);
+			return;
+		}
+
+		for (int i = 0; i < size; i++)
+		{
+			photoIds.set(ids[i]);
+		}
+	}
+
+	/**
+	 * Returns the ids as a new BitSet, which can be combined with other sets without changing this one
+	 *
+	 * @return	The ids
+	 */
+	public BitSet toBitSet()
+	{
+		if (bits != null)
+		{
+			return (BitSet) bits.clone();
+		}
+
+		BitSet photoIds = new BitSet(size == 0 ? 0 : ids[size - 1] + 1);
+		addTo(photoIds);
+
+		return photoIds;
+	}
+}
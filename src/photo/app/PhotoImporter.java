@@ -0,0 +1,365 @@
+package photo.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class imports every photo in a folder and all of its subfolders.
+ * The folders are walked in parallel, and each photo's file information and EXIF header are read on its own thread.
+ * The photos that are read are put in a bounded queue, which the window takes them from in batches
+ * and adds them to the album. If the window falls behind, the threads wait until there is room in the queue.
+ * Only a fixed number of photos are read at once, whether or not virtual threads are used, and the folders
+ * wait to hand out more photos until one of them is done, so the photos in memory are bounded for any size of folder.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoImporter {
+
+	/**
+	 * File extensions of the photos that can be imported, the same ones the file chooser in the album window accepts
+	 */
+	public static final String[] photoExtensions = {".jpg", ".png", ".bmp", ".gif"};
+
+	/**
+	 * How many photos can wait in the queue before the threads reading them have to wait
+	 */
+	public static final int queueCapacity = 4096;
+
+	/**
+	 * Number of threads used to read photos when virtual threads are not available
+	 */
+	private static final int readerThreads = 16;
+
+	/**
+	 * Most photos that can be read at once, counting the ones waiting for room in the queue
+	 */
+	private static final int maxPhotosBeingRead = 64;
+
+	/**
+	 * The folder being imported
+	 */
+	private final Path rootFolder;
+
+	/**
+	 * Photos that have been read and are waiting to be added to the album
+	 */
+	private final BlockingQueue<Photo> readPhotos;
+
+	/**
+	 * Walks the folders in parallel
+	 */
+	private final ForkJoinPool walkerPool;
+
+	/**
+	 * Reads the file information of each photo. This uses a virtual thread per photo when the Java version has them.
+	 */
+	private final ExecutorService readerPool;
+
+	/**
+	 * One permit for each photo that can be read at once. The folders take one before handing a photo to the readers.
+	 */
+	private final Semaphore readPermits;
+
+	/**
+	 * Number of photo files found so far
+	 */
+	private final AtomicInteger photosFound;
+
+	/**
+	 * Number of photos that were found but are not in the queue yet
+	 */
+	private final AtomicInteger photosPending;
+
+	/**
+	 * True once every folder has been walked
+	 */
+	private volatile boolean walkFinished;
+
+	/**
+	 * True if the import was cancelled
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructor for PhotoImporter
+	 *
+	 * @param rootFolder	The folder to import, along with all of its subfolders
+	 */
+	public PhotoImporter(File rootFolder)
+	{
+		this.rootFolder = rootFolder.toPath();
+		readPhotos = new ArrayBlockingQueue<Photo>(queueCapacity);
+		walkerPool = new ForkJoinPool();
+		readerPool = newReaderPool();
+		readPermits = new Semaphore(maxPhotosBeingRead);
+		photosFound = new AtomicInteger();
+		photosPending = new AtomicInteger();
+		walkFinished = false;
+		cancelled = false;
+	}
+
+	/**
+	 * Starts walking the folders in the background. This returns right away.
+	 */
+	public void start()
+	{
+		Thread walker = new Thread(() -> {
+			try
+			{
+				walkerPool.invoke(new FolderWalk(rootFolder));
+			}
+			catch (CancellationException e)
+			{
+				// The import was cancelled while the folders were being walked
+			}
+			finally
+			{
+				walkFinished = true;
+				walkerPool.shutdown();
+				readerPool.shutdown();
+			}
+		}, "photo-import");
+		walker.setDaemon(true);
+		walker.start();
+	}
+
+	/**
+	 * Takes up to the given number of photos out of the queue without waiting
+	 *
+	 * @param maxPhotos	Most photos to take
+	 * @return	The photos that were waiting, which may be none
+	 */
+	public List<Photo> nextBatch(int maxPhotos)
+	{
+		List<Photo> batch = new ArrayList<Photo>();
+		readPhotos.drainTo(batch, maxPhotos);
+
+		return batch;
+	}
+
+	/**
+	 * Checks to see if every photo has been found, read and taken out of the queue
+	 *
+	 * @return	True if the import is finished, false otherwise
+	 */
+	public boolean isFinished()
+	{
+		return walkFinished && photosPending.get() == 0 && readPhotos.isEmpty();
+	}
+
+	/**
+	 * Stops the import. Photos that were already taken out of the queue are not affected.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		walkerPool.shutdownNow();
+		readerPool.shutdownNow();
+		readPhotos.clear();
+	}
+
+	/**
+	 * Checks to see if the import was cancelled
+	 *
+	 * @return	True if the import was cancelled, false otherwise
+	 */
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of photo files found so far
+	 *
+	 * @return	Number of photos found
+	 */
+	public int getPhotosFound()
+	{
+		return photosFound.get();
+	}
+
+	/**
+	 * Checks to see if a file has one of the extensions of a photo
+	 *
+	 * @param fileName	Name of the file being checked
+	 * @return	True if the file is a photo, false otherwise
+	 */
+	public static boolean isPhotoFile(String fileName)
+	{
+		String lowerCaseName = fileName.toLowerCase();
+
+		for (String extension: photoExtensions)
+		{
+			if (lowerCaseName.endsWith(extension))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Makes the threads that read each photo. Virtual threads are used if this Java version has them,
+	 * which is checked when the program runs so it still works on older versions.
+	 *
+	 * @return	The pool of threads that read photos
+	 */
+	private static ExecutorService newReaderPool()
+	{
+		try
+		{
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return Executors.newFixedThreadPool(readerThreads, runnable -> {
+				Thread thread = new Thread(runnable, "photo-import-reader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Reads a photo's file information and puts it in the queue, waiting if the queue is full.
+	 * The photo's read permit is given back once it is in the queue.
+	 *
+	 * @param photoFile	The photo file
+	 */
+	private void readPhoto(Path photoFile)
+	{
+		try
+		{
+			Photo photo = new Photo(photoFile.toString());
+
+			while (!cancelled && !readPhotos.offer(photo, 100, TimeUnit.MILLISECONDS))
+			{
+				// The queue is full, so wait for the window to take some photos out
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// The import was cancelled
+		}
+		finally
+		{
+			photosPending.decrementAndGet();
+			readPermits.release();
+		}
+	}
+
+	/**
+	 * Walks one folder. Each subfolder is walked by its own task so folders are walked in parallel,
+	 * and each photo is handed to the reader threads.
+	 */
+	private class FolderWalk extends RecursiveAction
+	{
+		/**
+		 * The serial ID
+		 */
+		private static final long serialVersionUID = 5016402317720412337L;
+
+		/**
+		 * The folder being walked
+		 */
+		private final Path folder;
+
+		/**
+		 * Constructor for FolderWalk
+		 *
+		 * @param folder	The folder being walked
+		 */
+		FolderWalk(Path folder)
+		{
+			this.folder = folder;
+		}
+
+		/**
+		 * Lists the folder, starting a task for every subfolder and reading every photo
+		 */
+		@Override
+		protected void compute()
+		{
+			List<FolderWalk> subfolders = new ArrayList<FolderWalk>();
+
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder))
+			{
+				for (Path entry: entries)
+				{
+					if (cancelled)
+					{
+						return;
+					}
+
+					// Links to folders are not followed so a link back to a parent folder cannot loop forever
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+					{
+						subfolders.add(new FolderWalk(entry));
+					}
+					else if (isPhotoFile(entry.getFileName().toString()))
+					{
+						photosFound.incrementAndGet();
+						photosPending.incrementAndGet();
+
+						try
+						{
+							// Wait until a photo that is being read is done, so no more than the limit are in memory
+							while (!readPermits.tryAcquire(100, TimeUnit.MILLISECONDS))
+							{
+								if (cancelled)
+								{
+									photosPending.decrementAndGet();
+									return;
+								}
+							}
+						}
+						catch (InterruptedException e)
+						{
+							// The import was cancelled
+							photosPending.decrementAndGet();
+							return;
+						}
+
+						try
+						{
+							readerPool.execute(() -> readPhoto(entry));
+						}
+						catch (RejectedExecutionException e)
+						{
+							// The reader threads were shut down because the import was cancelled
+							photosPending.decrementAndGet();
+							readPermits.release();
+							return;
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// A folder that cannot be read is skipped
+			}
+
+			invokeAll(subfolders);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package photo.app;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * This class holds the information read from a photo file's header by ExifReader, such as when the photo was taken.
+ * It is saved with the photo, so the file never has to be read again to find it.
+ * Anything the file did not have is left empty.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoMetadata implements Serializable {
+
+	/**
+	 * The serial ID
+	 */
+	private static final long serialVersionUID = 3817604251790386420L;
+
+	/**
+	 * The date and time the camera took the photo, or null if the file does not say
+	 */
+	private final LocalDateTime dateTaken;
+
+	/**
+	 * How the photo has to be turned to be shown upright, from 1 to 8 as written by the camera, or 0 if the file does not say
+	 */
+	private final int orientation;
+
+	/**
+	 * Width of the photo in pixels, or 0 if the file does not say
+	 */
+	private final int width;
+
+	/**
+	 * Height of the photo in pixels, or 0 if the file does not say
+	 */
+	private final int height;
+
+	/**
+	 * Latitude where the photo was taken in degrees, north being positive, or NaN if the file does not say
+	 */
+	private final double latitude;
+
+	/**
+	 * Longitude where the photo was taken in degrees, east being positive, or NaN if the file does not say
+	 */
+	private final double longitude;
+
+	/**
+	 * Constructor for PhotoMetadata
+	 *
+	 * @param dateTaken	The date and time the photo was taken, or null
+	 * @param orientation	The orientation from 1 to 8, or 0
+	 * @param width	Width in pixels, or 0
+	 * @param height	Height in pixels, or 0
+	 * @param latitude	Latitude in degrees, or NaN
+	 * @param longitude	Longitude in degrees, or NaN
+	 */
+	PhotoMetadata(LocalDateTime dateTaken, int orientation, int width, int height, double latitude, double longitude)
+	{
+		this.dateTaken = dateTaken;
+		this.orientation = orientation;
+		this.width = width;
+		this.height = height;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	/**
+	 * Returns the date and time the camera took the photo
+	 *
+	 * @return	The date and time, or null if the file does not say
+	 */
+	public LocalDateTime getDateTaken()
+	{
+		return dateTaken;
+	}
+
+	/**
+	 * Returns how the photo has to be turned to be shown upright
+	 *
+	 * @return	The orientation from 1 to 8, or 0 if the file does not say
+	 */
+	public int getOrientation()
+	{
+		return orientation;
+	}
+
+	/**
+	 * Returns the width of the photo
+	 *
+	 * @return	Width in pixels, or 0 if the file does not say
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the height of the photo
+	 *
+	 * @return	Height in pixels, or 0 if the file does not say
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Checks to see if the file says where the photo was taken
+	 *
+	 * @return	True if the latitude and longitude are known, false otherwise
+	 */
+	public boolean hasLocation()
+	{
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+	}
+
+	/**
+	 * Returns the latitude where the photo was taken
+	 *
+	 * @return	Latitude in degrees, north being positive, or NaN if the file does not say
+	 */
+	public double getLatitude()
+	{
+		return latitude;
+	}
+
+	/**
+	 * Returns the longitude where the photo was taken
+	 *
+	 * @return	Longitude in degrees, east being positive, or NaN if the file does not say
+	 */
+	public double getLongitude()
+	{
+		return longitude;
+	}
+}
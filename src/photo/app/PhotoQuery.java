@@ -0,0 +1,899 @@
+package photo.app;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class is a search written as a query, for example
+ * person:alice AND (location:paris OR location:rome) AND date:2020-01-01..2020-12-31 AND NOT caption:blurry
+ *
+ * A term is either tagType:tagValue, date:from..to, or caption:word. A word without a colon is also searched for
+ * in the captions. A caption term can be a word, a phrase in quotes, or the start of a word followed by *.
+ * Either side of a date range may be left out, and a single date finds the photos taken that day.
+ * Values with spaces are put in quotes, like location:"new york". A ~ after a tag value, like location:pari~,
+ * also finds values with a typo or two, and location:pari~1 allows at most one. No more than two typos can be allowed.
+ * Terms are combined with AND, OR, NOT and brackets, and two terms next to each other are combined with AND.
+ *
+ * The query is parsed once into a plan. Running the plan combines the sets of photo ids from the tag, date and
+ * caption indexes, so a query with many terms costs about the same as a search for one tag. The terms of an AND
+ * are run with the one that matches the fewest photos first, and each term after that only looks at the photos still left.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoQuery {
+
+	/**
+	 * The plan the query was parsed into
+	 */
+	private final Node plan;
+
+	/**
+	 * Constructor for PhotoQuery
+	 *
+	 * @param plan	The plan the query was parsed into
+	 */
+	private PhotoQuery(Node plan)
+	{
+		this.plan = plan;
+	}
+
+	/**
+	 * Parses a query
+	 *
+	 * @param query	The query that was typed
+	 * @return	The parsed query
+	 * @throws IllegalArgumentException	If the query is not written correctly. The message says what is wrong.
+	 */
+	public static PhotoQuery parse(String query)
+	{
+		Parser parser = new Parser(tokenize(query));
+
+		if (parser.atEnd())
+		{
+			throw new IllegalArgumentException("The query is empty");
+		}
+
+		Node plan = parser.parseOr();
+
+		if (!parser.atEnd())
+		{
+			throw new IllegalArgumentException("Unexpected \"" + parser.peek() + "\" in the query");
+		}
+
+		return new PhotoQuery(plan);
+	}
+
+	/**
+	 * Finds the user's photos that match the query
+	 *
+	 * @param user	The user whose photos are searched
+	 * @return	Ids of the matching photos
+	 */
+	public BitSet evaluate(User user)
+	{
+		try
+		{
+			return plan.evaluate(user, null);
+		}
+		finally
+		{
+			// Matches kept while the plan ran are not used again, since the photos may change before the next search
+			plan.forgetMatches();
+		}
+	}
+
+	/**
+	 * Returns the caption words the query searches for, which are used to put the best matches first.
+	 * Words under a NOT are left out.
+	 *
+	 * @return	The caption words, split the same way captions are
+	 */
+	public List<String> getCaptionWords()
+	{
+		List<String> words = new ArrayList<String>();
+		plan.collectCaptionWords(words);
+
+		return words;
+	}
+
+	/**
+	 * Returns the plan of the query, with brackets around every AND, OR and NOT
+	 *
+	 * @return	The plan as text
+	 */
+	@Override
+	public String toString()
+	{
+		return plan.toString();
+	}
+
+	/**
+	 * Splits a query into words and brackets. Text in quotes stays in one word, without the quotes.
+	 *
+	 * @param query	The query that was typed
+	 * @return	The words and brackets of the query
+	 */
+	private static List<String> tokenize(String query)
+	{
+		List<String> tokens = new ArrayList<String>();
+		int i = 0;
+
+		while (i < query.length())
+		{
+			char c = query.charAt(i);
+
+			if (Character.isWhitespace(c))
+			{
+				i++;
+				continue;
+			}
+
+			if (c == '(' || c == ')')
+			{
+				tokens.add(String.valueOf(c));
+				i++;
+				continue;
+			}
+
+			StringBuilder token = new StringBuilder();
+			boolean inQuotes = false;
+
+			while (i < query.length())
+			{
+				c = query.charAt(i);
+
+				if (c == '"')
+				{
+					inQuotes = !inQuotes;
+				}
+				else if (!inQuotes && (Character.isWhitespace(c) || c == '(' || c == ')'))
+				{
+					break;
+				}
+				else
+				{
+					token.append(c);
+				}
+
+				i++;
+			}
+
+			if (inQuotes)
+			{
+				throw new IllegalArgumentException("A quote in the query is never closed");
+			}
+
+			tokens.add(token.toString());
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Reads the words of a query and builds the plan
+	 */
+	private static class Parser
+	{
+		/**
+		 * The words and brackets of the query
+		 */
+		private final List<String> tokens;
+
+		/**
+		 * Position of the next word to read
+		 */
+		private int position;
+
+		/**
+		 * Constructor for Parser
+		 *
+		 * @param tokens	The words and brackets of the query
+		 */
+		Parser(List<String> tokens)
+		{
+			this.tokens = tokens;
+			position = 0;
+		}
+
+		/**
+		 * Checks to see if every word has been read
+		 *
+		 * @return	True if there are no words left, false otherwise
+		 */
+		boolean atEnd()
+		{
+			return position >= tokens.size();
+		}
+
+		/**
+		 * Returns the next word without reading it
+		 *
+		 * @return	The next word, or null if there are none left
+		 */
+		String peek()
+		{
+			return atEnd() ? null : tokens.get(position);
+		}
+
+		/**
+		 * Reads the next word if it is the given keyword, ignoring case
+		 *
+		 * @param keyword	The keyword
+		 * @return	True if the keyword was read, false otherwise
+		 */
+		boolean accept(String keyword)
+		{
+			if (!atEnd() && tokens.get(position).equalsIgnoreCase(keyword))
+			{
+				position++;
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Reads terms joined by OR
+		 *
+		 * @return	The plan of the terms
+		 */
+		Node parseOr()
+		{
+			List<Node> terms = new ArrayList<Node>();
+			terms.add(parseAnd());
+
+			while (accept("OR"))
+			{
+				terms.add(parseAnd());
+			}
+
+			return terms.size() == 1 ? terms.get(0) : new Or(terms);
+		}
+
+		/**
+		 * Reads terms joined by AND, or just written next to each other
+		 *
+		 * @return	The plan of the terms
+		 */
+		Node parseAnd()
+		{
+			List<Node> terms = new ArrayList<Node>();
+			terms.add(parseNot());
+
+			while (!atEnd() && !peek().equals(")") && !peek().equalsIgnoreCase("OR"))
+			{
+				accept("AND");
+				terms.add(parseNot());
+			}
+
+			return terms.size() == 1 ? terms.get(0) : new And(terms);
+		}
+
+		/**
+		 * Reads a term that may have NOT in front of it
+		 *
+		 * @return	The plan of the term
+		 */
+		Node parseNot()
+		{
+			if (accept("NOT"))
+			{
+				return new Not(parseNot());
+			}
+
+			return parseTerm();
+		}
+
+		/**
+		 * Reads one term, or a query in brackets
+		 *
+		 * @return	The plan of the term
+		 */
+		Node parseTerm()
+		{
+			if (atEnd())
+			{
+				throw new IllegalArgumentException("The query ends too early");
+			}
+
+			String token = tokens.get(position++);
+
+			if (token.equals("("))
+			{
+				Node inside = parseOr();
+
+				if (!accept(")"))
+				{
+					throw new IllegalArgumentException("A bracket in the query is never closed");
+				}
+
+				return inside;
+			}
+
+			if (token.equals(")") || token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR"))
+			{
+				throw new IllegalArgumentException("Unexpected \"" + token + "\" in the query");
+			}
+
+			int colon = token.indexOf(':');
+
+			if (colon < 0)
+			{
+				return new CaptionTerm(token);
+			}
+
+			String field = token.substring(0, colon).trim();
+			String value = token.substring(colon + 1).trim();
+
+			if (field.isEmpty() || value.isEmpty())
+			{
+				throw new IllegalArgumentException("\"" + token + "\" needs something on both sides of the colon");
+			}
+
+			if (field.equalsIgnoreCase("date"))
+			{
+				return parseDate(value);
+			}
+
+			if (field.equalsIgnoreCase("caption"))
+			{
+				return new CaptionTerm(value);
+			}
+
+			// A ~ at the end of a tag value also finds values with small typos, and may give the most typos allowed
+			int tilde = value.lastIndexOf('~');
+
+			if (tilde > 0 && (tilde == value.length() - 1 || (tilde == value.length() - 2 && Character.isDigit(value.charAt(tilde + 1)))))
+			{
+				String exactValue = value.substring(0, tilde);
+				int maxEdits = tilde == value.length() - 1 ? User.fuzzyEdits(exactValue) : value.charAt(tilde + 1) - '0';
+
+				if (maxEdits > User.maxFuzzyEdits)
+				{
+					throw new IllegalArgumentException("\"" + token + "\" allows too many typos, at most "
+							+ User.maxFuzzyEdits + " can be allowed");
+				}
+
+				return new TagTerm(field, exactValue, maxEdits);
+			}
+
+			return new TagTerm(field, value, 0);
+		}
+
+		/**
+		 * Reads the value of a date term, which is a date or two dates separated by ..
+		 *
+		 * @param value	The value of the date term
+		 * @return	The plan of the term
+		 */
+		Node parseDate(String value)
+		{
+			int separator = value.indexOf("..");
+
+			try
+			{
+				if (separator < 0)
+				{
+					LocalDate day = LocalDate.parse(value);
+					return new DateTerm(day, day);
+				}
+
+				String from = value.substring(0, separator);
+				String to = value.substring(separator + 2);
+
+				return new DateTerm(from.isEmpty() ? null : LocalDate.parse(from), to.isEmpty() ? null : LocalDate.parse(to));
+			}
+			catch (DateTimeParseException e)
+			{
+				throw new IllegalArgumentException("\"" + value + "\" is not a date written as YYYY-MM-DD");
+			}
+		}
+	}
+
+	/**
+	 * One step of a plan
+	 */
+	private static abstract class Node
+	{
+		/**
+		 * Finds the photos that match this step
+		 *
+		 * @param user	The user whose photos are searched
+		 * @param candidates	The only photos that need to be checked, or null to check every photo
+		 * @return	Ids of the matching photos, which are always some of the candidates
+		 */
+		abstract BitSet evaluate(User user, BitSet candidates);
+
+		/**
+		 * Guesses how many photos this step matches, so cheap steps can be run first
+		 *
+		 * @param user	The user whose photos are searched
+		 * @return	About how many photos match
+		 */
+		abstract int estimate(User user);
+
+		/**
+		 * Adds the caption words this step searches for to the list, so the results can be ranked by them.
+		 * Words under a NOT are left out because the photos found do not have them.
+		 *
+		 * @param words	The list of words
+		 */
+		void collectCaptionWords(List<String> words)
+		{
+		}
+
+		/**
+		 * Drops any matches this step kept while the plan ran
+		 */
+		void forgetMatches()
+		{
+		}
+	}
+
+	/**
+	 * Matches the photos that have a tag
+	 */
+	private static class TagTerm extends Node
+	{
+		/**
+		 * Type of the tag
+		 */
+		private final String tagType;
+
+		/**
+		 * Value of the tag
+		 */
+		private final String tagValue;
+
+		/**
+		 * Most typos a tag value can have and still match, 0 to only match the exact value
+		 */
+		private final int maxEdits;
+
+		/**
+		 * The photos with a similar value, found when the term was estimated and used once by evaluate,
+		 * so the values are only searched for once. Null if they have not been found.
+		 */
+		private BitSet similarPhotos;
+
+		/**
+		 * The user whose photos similarPhotos are
+		 */
+		private User similarPhotosUser;
+
+		/**
+		 * Constructor for TagTerm
+		 *
+		 * @param tagType	Type of the tag
+		 * @param tagValue	Value of the tag
+		 * @param maxEdits	Most typos a tag value can have and still match
+		 */
+		TagTerm(String tagType, String tagValue, int maxEdits)
+		{
+			this.tagType = tagType;
+			this.tagValue = tagValue;
+			this.maxEdits = maxEdits;
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			BitSet photoIds;
+
+			if (maxEdits == 0)
+			{
+				photoIds = user.getTagIndex().photosWithTag(tagType, tagValue);
+			}
+			else
+			{
+				photoIds = findSimilarPhotos(user);
+				forgetMatches();
+			}
+
+			if (candidates != null)
+			{
+				photoIds.and(candidates);
+			}
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			if (maxEdits == 0)
+			{
+				return user.getTagIndex().countPhotosWithTag(tagType, tagValue);
+			}
+
+			return findSimilarPhotos(user).cardinality();
+		}
+
+		@Override
+		void forgetMatches()
+		{
+			similarPhotos = null;
+			similarPhotosUser = null;
+		}
+
+		/**
+		 * Returns the photos with a value similar to the term's, searching for the values only the first time
+		 *
+		 * @param user	The user whose photos are searched
+		 * @return	Ids of the photos with a similar value
+		 */
+		private BitSet findSimilarPhotos(User user)
+		{
+			if (similarPhotos == null || similarPhotosUser != user)
+			{
+				similarPhotos = user.getTagIndex().photosWithSimilarTag(tagType, tagValue, maxEdits);
+				similarPhotosUser = user;
+			}
+
+			return similarPhotos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return tagType + ":" + tagValue + (maxEdits == 0 ? "" : "~" + maxEdits);
+		}
+	}
+
+	/**
+	 * Matches the photos taken between two dates, including both dates
+	 */
+	private static class DateTerm extends Node
+	{
+		/**
+		 * First day of the range as an epoch day
+		 */
+		private final int fromDay;
+
+		/**
+		 * Last day of the range as an epoch day
+		 */
+		private final int toDay;
+
+		/**
+		 * Constructor for DateTerm
+		 *
+		 * @param fromDate	First date of the range, or null if the range has no start
+		 * @param toDate	Last date of the range, or null if the range has no end
+		 */
+		DateTerm(LocalDate fromDate, LocalDate toDate)
+		{
+			fromDay = fromDate == null ? Integer.MIN_VALUE : DateIndex.toDay(fromDate);
+			toDay = toDate == null ? Integer.MAX_VALUE : DateIndex.toDay(toDate);
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			BitSet photoIds = user.getDateIndex().photoSetInRange(fromDay, toDay);
+
+			if (candidates != null)
+			{
+				photoIds.and(candidates);
+			}
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			return user.getDateIndex().countPhotosInRange(fromDay, toDay);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "date:" + (fromDay == Integer.MIN_VALUE ? "" : LocalDate.ofEpochDay(fromDay).toString()) + ".."
+					+ (toDay == Integer.MAX_VALUE ? "" : LocalDate.ofEpochDay(toDay).toString());
+		}
+	}
+
+	/**
+	 * Matches the photos whose caption has a word, a phrase, or a word starting with some letters
+	 */
+	private static class CaptionTerm extends Node
+	{
+		/**
+		 * The word or phrase being searched for, or the letters a word starts with
+		 */
+		private final String text;
+
+		/**
+		 * True if the text is the start of a word, written with a * at the end
+		 */
+		private final boolean prefix;
+
+		/**
+		 * Constructor for CaptionTerm
+		 *
+		 * @param text	The word or phrase being searched for, or the start of a word followed by *
+		 */
+		CaptionTerm(String text)
+		{
+			prefix = text.endsWith("*");
+			this.text = prefix ? text.substring(0, text.length() - 1) : text;
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			CaptionIndex captionIndex = user.getCaptionIndex();
+			BitSet photoIds = prefix ? captionIndex.photosWithPrefix(text) : captionIndex.photosWithPhrase(text);
+
+			if (candidates != null)
+			{
+				photoIds.and(candidates);
+			}
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			CaptionIndex captionIndex = user.getCaptionIndex();
+
+			return prefix ? captionIndex.countPhotosWithPrefix(text) : captionIndex.countPhotosWithPhrase(text);
+		}
+
+		@Override
+		void collectCaptionWords(List<String> words)
+		{
+			if (!prefix)
+			{
+				words.addAll(CaptionIndex.tokenize(text));
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "caption:" + (text.indexOf(' ') >= 0 ? "\"" + text + "\"" : text) + (prefix ? "*" : "");
+		}
+	}
+
+	/**
+	 * Matches the photos that match every term
+	 */
+	private static class And extends Node
+	{
+		/**
+		 * The terms being combined
+		 */
+		private final List<Node> terms;
+
+		/**
+		 * Constructor for And
+		 *
+		 * @param terms	The terms being combined
+		 */
+		And(List<Node> terms)
+		{
+			this.terms = terms;
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			// The term matching the fewest photos runs first, so every term after it has fewer photos to look at.
+			// Each term's estimate is worked out once, since an estimate can walk a whole index.
+			int[] estimates = new int[terms.size()];
+			Integer[] order = new Integer[terms.size()];
+
+			for (int i = 0; i < estimates.length; i++)
+			{
+				estimates[i] = terms.get(i).estimate(user);
+				order[i] = i;
+			}
+
+			Arrays.sort(order, Comparator.comparingInt(i -> estimates[i]));
+
+			BitSet photoIds = candidates;
+
+			for (int i: order)
+			{
+				photoIds = terms.get(i).evaluate(user, photoIds);
+
+				if (photoIds.isEmpty())
+				{
+					break;
+				}
+			}
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			int smallest = Integer.MAX_VALUE;
+
+			for (Node term: terms)
+			{
+				smallest = Math.min(smallest, term.estimate(user));
+			}
+
+			return smallest;
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(terms, " AND ");
+		}
+
+		@Override
+		void collectCaptionWords(List<String> words)
+		{
+			for (Node term: terms)
+			{
+				term.collectCaptionWords(words);
+			}
+		}
+
+		@Override
+		void forgetMatches()
+		{
+			for (Node term: terms)
+			{
+				term.forgetMatches();
+			}
+		}
+	}
+
+	/**
+	 * Matches the photos that match at least one term
+	 */
+	private static class Or extends Node
+	{
+		/**
+		 * The terms being combined
+		 */
+		private final List<Node> terms;
+
+		/**
+		 * Constructor for Or
+		 *
+		 * @param terms	The terms being combined
+		 */
+		Or(List<Node> terms)
+		{
+			this.terms = terms;
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			BitSet photoIds = new BitSet();
+
+			for (Node term: terms)
+			{
+				photoIds.or(term.evaluate(user, candidates));
+			}
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			long total = 0;
+
+			for (Node term: terms)
+			{
+				total += term.estimate(user);
+			}
+
+			return (int) Math.min(total, user.getDateIndex().countPhotos());
+		}
+
+		@Override
+		public String toString()
+		{
+			return join(terms, " OR ");
+		}
+
+		@Override
+		void collectCaptionWords(List<String> words)
+		{
+			for (Node term: terms)
+			{
+				term.collectCaptionWords(words);
+			}
+		}
+
+		@Override
+		void forgetMatches()
+		{
+			for (Node term: terms)
+			{
+				term.forgetMatches();
+			}
+		}
+	}
+
+	/**
+	 * Matches the photos that do not match a term
+	 */
+	private static class Not extends Node
+	{
+		/**
+		 * The term being reversed
+		 */
+		private final Node term;
+
+		/**
+		 * Constructor for Not
+		 *
+		 * @param term	The term being reversed
+		 */
+		Not(Node term)
+		{
+			this.term = term;
+		}
+
+		@Override
+		BitSet evaluate(User user, BitSet candidates)
+		{
+			BitSet photoIds = candidates == null ? user.getDateIndex().allPhotos() : (BitSet) candidates.clone();
+			photoIds.andNot(term.evaluate(user, candidates));
+
+			return photoIds;
+		}
+
+		@Override
+		int estimate(User user)
+		{
+			return user.getDateIndex().countPhotos() - term.estimate(user);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "(NOT " + term + ")";
+		}
+
+		@Override
+		void forgetMatches()
+		{
+			term.forgetMatches();
+		}
+	}
+
+	/**
+	 * Writes terms with a keyword between each of them, inside brackets
+	 *
+	 * @param terms	The terms
+	 * @param keyword	The keyword, with a space on each side
+	 * @return	The terms as text
+	 */
+	private static String join(List<Node> terms, String keyword)
+	{
+		StringBuilder text = new StringBuilder("(");
+
+		for (int i = 0; i < terms.size(); i++)
+		{
+			if (i > 0)
+			{
+				text.append(keyword);
+			}
+
+			text.append(terms.get(i));
+		}
+
+		return text.append(")").toString();
+	}
+}
@@ -0,0 +1,144 @@
+package photo.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class keeps the data that is shared between all of the windows while the program runs.
+ * The users are read from disk once, and every window works on the same objects in memory.
+ * What the user is currently looking at, such as the current album, is kept here and is never saved.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class Session {
+
+	/**
+	 * The one session of the program
+	 */
+	private static final Session session = new Session();
+
+	/**
+	 * Holds the list of users, read from disk the first time it is needed
+	 */
+	private UserManagement userManager;
+
+	/**
+	 * Small copies of the photos shown in the lists, made the first time they are needed
+	 */
+	private ThumbnailCache thumbnailCache;
+
+	/**
+	 * Keeps track of the current user
+	 */
+	public User currentUser;
+
+	/**
+	 * Keeps track of the current album the current user is editing
+	 */
+	public Album currentAlbum;
+
+	/**
+	 * Keeps track of the current photo the current user is looking at
+	 */
+	public Photo currentPhoto;
+
+	/**
+	 * After a search is done, the search results are kept so that user can create
+	 * an album from it if they choose to.
+	 */
+	public List<Photo> photoSearchResults;
+
+	/**
+	 * The folder import that is running, or null if none is. It is kept here so that only one folder
+	 * is imported at a time, even if another album window is opened while it runs.
+	 */
+	public PhotoImporter folderImport;
+
+	/**
+	 * Constructor for Session
+	 */
+	private Session()
+	{
+		userManager = null;
+		photoSearchResults = new ArrayList<Photo>();
+	}
+
+	/**
+	 * Returns the session of the program
+	 *
+	 * @return	The session
+	 */
+	public static Session get()
+	{
+		return session;
+	}
+
+	/**
+	 * Returns the list of users. The save data is read the first time this is called,
+	 * or a new list is made if there is no save data yet.
+	 *
+	 * @return	The instance of UserManagement, which holds the list of users
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	public UserManagement getUserManager() throws IOException, ClassNotFoundException
+	{
+		if (userManager == null)
+		{
+			if (UserManagement.saveDataExists())
+			{
+				userManager = UserManagement.readApp();
+			}
+			else
+			{
+				userManager = new UserManagement();
+			}
+		}
+
+		return userManager;
+	}
+
+	/**
+	 * Returns the thumbnails of the photos, which are kept in a folder inside the storage directory
+	 *
+	 * @return	The thumbnail cache
+	 */
+	public ThumbnailCache getThumbnailCache()
+	{
+		if (thumbnailCache == null)
+		{
+			thumbnailCache = new ThumbnailCache(new File(UserManagement.storeDir, "thumbnails"));
+		}
+
+		return thumbnailCache;
+	}
+
+	/**
+	 * Opens the tiles of a photo for zooming into it in the background. They are kept in a folder inside the storage directory.
+	 *
+	 * @param photoPath	Path of the photo
+	 * @return	The photo's tile pyramid once it is open, or null if the photo could not be read
+	 */
+	public CompletableFuture<TilePyramid> openTilePyramid(String photoPath)
+	{
+		return TilePyramid.open(new File(UserManagement.storeDir, "tiles"), photoPath);
+	}
+
+	/**
+	 * Logs in the given user and forgets what the previous user was looking at
+	 *
+	 * @param user	The user that logged in
+	 */
+	public void logIn(User user)
+	{
+		currentUser = user;
+		currentAlbum = null;
+		currentPhoto = null;
+		photoSearchResults = new ArrayList<Photo>();
+	}
+}
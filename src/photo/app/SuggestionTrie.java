@@ -0,0 +1,381 @@
+package photo.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class suggests words that start with what the user has typed so far, the most used words first.
+ * The words are kept in a trie, a tree with one letter on each branch, so the words starting with some letters
+ * are all under one node. Each node remembers the most used words under it, so a suggestion only has to walk
+ * down the letters typed. When a word is added or removed, only the nodes on its path forget their suggestions,
+ * and they are worked out again from their children the next time they are asked for.
+ * Case is ignored when matching, and each word is suggested the way it was last written.
+ *
+ * The trie can also find the words that are a few typos away from a word. The edit distance to the word is worked out
+ * one letter at a time while walking down the trie, so words sharing their first letters share the work,
+ * and a branch is skipped as soon as every word under it would be too far away.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class SuggestionTrie {
+
+	/**
+	 * Most suggestions each node remembers, which is also the most suggestions that can be asked for at once
+	 */
+	public static final int maxSuggestions = 10;
+
+	/**
+	 * The node for no letters, which every word is under
+	 */
+	private final Node root;
+
+	/**
+	 * Constructor for SuggestionTrie
+	 */
+	public SuggestionTrie()
+	{
+		root = new Node();
+	}
+
+	/**
+	 * Counts one more use of a word
+	 *
+	 * @param word	The word
+	 */
+	public void add(String word)
+	{
+		String key = word.toLowerCase(Locale.ROOT);
+		Node node = root;
+		node.suggestions = null;
+
+		for (int i = 0; i < key.length(); i++)
+		{
+			node = node.childFor(key.charAt(i), true);
+			node.suggestions = null;
+		}
+
+		node.word = word;
+		node.uses++;
+	}
+
+	/**
+	 * Counts one less use of a word. A word with no uses left is no longer suggested.
+	 *
+	 * @param word	The word
+	 */
+	public void remove(String word)
+	{
+		String key = word.toLowerCase(Locale.ROOT);
+		Node[] path = new Node[key.length() + 1];
+		path[0] = root;
+
+		for (int i = 0; i < key.length(); i++)
+		{
+			path[i + 1] = path[i].childFor(key.charAt(i), false);
+
+			if (path[i + 1] == null)
+			{
+				return;
+			}
+		}
+
+		Node node = path[key.length()];
+
+		if (node.uses == 0)
+		{
+			return;
+		}
+
+		node.uses--;
+
+		if (node.uses == 0)
+		{
+			node.word = null;
+		}
+
+		for (int i = key.length(); i >= 0; i--)
+		{
+			path[i].suggestions = null;
+
+			// Branches with no words left are cut off so the trie does not grow forever
+			if (i > 0 && path[i].uses == 0 && path[i].letters.length == 0)
+			{
+				path[i - 1].removeChild(key.charAt(i - 1));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of uses of a word
+	 *
+	 * @param word	The word
+	 * @return	Number of uses, 0 if the word is not in the trie
+	 */
+	public int getUses(String word)
+	{
+		Node node = find(word.toLowerCase(Locale.ROOT));
+
+		return node == null ? 0 : node.uses;
+	}
+
+	/**
+	 * Returns the most used words that start with the prefix, ignoring case
+	 *
+	 * @param prefix	What the user has typed so far
+	 * @param limit	Most words to return, up to maxSuggestions
+	 * @return	The words, the most used first. Words used the same number of times are in alphabetical order.
+	 */
+	public List<String> suggest(String prefix, int limit)
+	{
+		List<String> words = new ArrayList<String>();
+		Node node = find(prefix.toLowerCase(Locale.ROOT));
+
+		if (node == null)
+		{
+			return words;
+		}
+
+		Node[] best = node.suggestions();
+
+		for (int i = 0; i < best.length && i < limit; i++)
+		{
+			words.add(best[i].word);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Returns the words within a number of edits of a word, ignoring case.
+	 * An edit is adding, removing or changing one letter.
+	 *
+	 * @param word	The word
+	 * @param maxEdits	Most edits a word can be away
+	 * @return	The words that are close enough, the way they were last written
+	 */
+	public List<String> findSimilar(String word, int maxEdits)
+	{
+		String key = word.toLowerCase(Locale.ROOT);
+		List<String> words = new ArrayList<String>();
+
+		// Row i of the distance table is how many edits turn the first i letters of the word into the letters so far
+		int[] firstRow = new int[key.length() + 1];
+
+		for (int i = 0; i < firstRow.length; i++)
+		{
+			firstRow[i] = i;
+		}
+
+		if (root.uses > 0 && key.length() <= maxEdits)
+		{
+			words.add(root.word);
+		}
+
+		for (int i = 0; i < root.letters.length; i++)
+		{
+			findSimilar(root.children[i], root.letters[i], key, firstRow, maxEdits, words);
+		}
+
+		return words;
+	}
+
+	/**
+	 * Walks down one branch of the trie for findSimilar
+	 *
+	 * @param node	The node being walked to
+	 * @param letter	The letter of the node
+	 * @param key	The word in lower case
+	 * @param previousRow	Distances for the node above this one
+	 * @param maxEdits	Most edits a word can be away
+	 * @param words	The list the words that are close enough are added to
+	 */
+	private static void findSimilar(Node node, char letter, String key, int[] previousRow, int maxEdits, List<String> words)
+	{
+		int[] row = new int[previousRow.length];
+		row[0] = previousRow[0] + 1;
+		int smallest = row[0];
+
+		for (int i = 1; i < row.length; i++)
+		{
+			int insert = row[i - 1] + 1;
+			int delete = previousRow[i] + 1;
+			int replace = previousRow[i - 1] + (key.charAt(i - 1) == letter ? 0 : 1);
+
+			row[i] = Math.min(Math.min(insert, delete), replace);
+			smallest = Math.min(smallest, row[i]);
+		}
+
+		if (node.uses > 0 && row[row.length - 1] <= maxEdits)
+		{
+			words.add(node.word);
+		}
+
+		// Every word further down is at least as far away as the closest distance in this row
+		if (smallest <= maxEdits)
+		{
+			for (int i = 0; i < node.letters.length; i++)
+			{
+				findSimilar(node.children[i], node.letters[i], key, row, maxEdits, words);
+			}
+		}
+	}
+
+	/**
+	 * Finds the node for some letters
+	 *
+	 * @param key	The letters in lower case
+	 * @return	The node, or null if no word starts with the letters
+	 */
+	private Node find(String key)
+	{
+		Node node = root;
+
+		for (int i = 0; i < key.length() && node != null; i++)
+		{
+			node = node.childFor(key.charAt(i), false);
+		}
+
+		return node;
+	}
+
+	/**
+	 * One letter of the trie. Children are kept in arrays sorted by letter, which takes much less memory than a map.
+	 */
+	private static class Node
+	{
+		/**
+		 * Letters of the children, sorted
+		 */
+		private char[] letters;
+
+		/**
+		 * The children, in the same order as their letters
+		 */
+		private Node[] children;
+
+		/**
+		 * The word that ends at this node the way it was last written, or null if no word ends here
+		 */
+		private String word;
+
+		/**
+		 * Number of uses of the word that ends at this node
+		 */
+		private int uses;
+
+		/**
+		 * The most used words under this node, or null if they have to be worked out again
+		 */
+		private Node[] suggestions;
+
+		/**
+		 * Constructor for Node
+		 */
+		Node()
+		{
+			letters = new char[0];
+			children = new Node[0];
+		}
+
+		/**
+		 * Returns the child for a letter
+		 *
+		 * @param letter	The letter
+		 * @param create	True to make the child if there is none
+		 * @return	The child, or null if there is none and create is false
+		 */
+		Node childFor(char letter, boolean create)
+		{
+			int position = Arrays.binarySearch(letters, letter);
+
+			if (position >= 0)
+			{
+				return children[position];
+			}
+
+			if (!create)
+			{
+				return null;
+			}
+
+			position = -position - 1;
+			Node child = new Node();
+
+			char[] newLetters = new char[letters.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(letters, 0, newLetters, 0, position);
+			System.arraycopy(children, 0, newChildren, 0, position);
+			newLetters[position] = letter;
+			newChildren[position] = child;
+			System.arraycopy(letters, position, newLetters, position + 1, letters.length - position);
+			System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+
+			letters = newLetters;
+			children = newChildren;
+
+			return child;
+		}
+
+		/**
+		 * Removes the child for a letter
+		 *
+		 * @param letter	The letter
+		 */
+		void removeChild(char letter)
+		{
+			int position = Arrays.binarySearch(letters, letter);
+
+			if (position < 0)
+			{
+				return;
+			}
+
+			char[] newLetters = new char[letters.length - 1];
+			Node[] newChildren = new Node[children.length - 1];
+			System.arraycopy(letters, 0, newLetters, 0, position);
+			System.arraycopy(children, 0, newChildren, 0, position);
+			System.arraycopy(letters, position + 1, newLetters, position, letters.length - position - 1);
+			System.arraycopy(children, position + 1, newChildren, position, children.length - position - 1);
+
+			letters = newLetters;
+			children = newChildren;
+		}
+
+		/**
+		 * Returns the most used words under this node, working them out from the children if needed
+		 *
+		 * @return	The nodes of the words, the most used first
+		 */
+		Node[] suggestions()
+		{
+			if (suggestions != null)
+			{
+				return suggestions;
+			}
+
+			List<Node> candidates = new ArrayList<Node>();
+
+			if (uses > 0)
+			{
+				candidates.add(this);
+			}
+
+			for (Node child: children)
+			{
+				candidates.addAll(Arrays.asList(child.suggestions()));
+			}
+
+			candidates.sort((first, second) -> first.uses != second.uses
+					? Integer.compare(second.uses, first.uses)
+					: first.word.compareToIgnoreCase(second.word));
+
+			suggestions = candidates.subList(0, Math.min(maxSuggestions, candidates.size())).toArray(new Node[0]);
+
+			return suggestions;
+		}
+	}
+}
@@ -1,11 +1,14 @@
 package photo.app;
 
 import java.io.Serializable;
+import java.util.Locale;
 
 /**
  * This class will handle the tags values for each picture.
  * A picture may have more than one tag, but it may not have any duplicate tags where 
  * both parts of the tag are the same as another tag.
+ * Two tags are equal if their types and values are the same, ignoring case.
+ * Tags never change, so each user keeps one copy of each tag in a TagPool and every photo with it shares that copy.
  * 
  * @author Amit Patel, Hideyo Sakamoto
  *
@@ -28,6 +31,11 @@ public class Tag implements Serializable{
 	 */
 	private String tagValue;
 	
+	/**
+	 * The type and value in lower case, used to compare tags. It is worked out the first time it is needed.
+	 */
+	private transient String key;
+	
 	/**
 	 * Constructor for the Tag class. Takes in two parameters, the type of the tag
 	 * and the value of the tag
@@ -61,6 +69,55 @@ public class Tag implements Serializable{
 		return this.tagValue;
 	}
 	
+	/**
+	 * Returns the type and value of the tag in lower case, separated by a character that cannot be typed,
+	 * so two tags have the same key only if they are equal
+	 * 
+	 * @return	The key of the tag
+	 */
+	public String getKey()
+	{
+		if (key == null)
+		{
+			key = tagType.toLowerCase(Locale.ROOT) + '\u0000' + tagValue.toLowerCase(Locale.ROOT);
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Checks to see if another tag has the same type and value, ignoring case
+	 * 
+	 * @param other	The object being compared
+	 * @return	True if the other object is an equal tag, false otherwise
+	 */
+	@Override
+	public boolean equals(Object other)
+	{
+		if (this == other)
+		{
+			return true;
+		}
+		
+		if (!(other instanceof Tag))
+		{
+			return false;
+		}
+		
+		return getKey().equals(((Tag) other).getKey());
+	}
+	
+	/**
+	 * Returns a hash code that is the same for equal tags
+	 * 
+	 * @return	The hash code
+	 */
+	@Override
+	public int hashCode()
+	{
+		return getKey().hashCode();
+	}
+	
 	/**
 	 * Turns the tag into a string to allow it to be displayed on the UI
 	 * 
@@ -0,0 +1,221 @@
+package photo.app;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class finds the photos that have a tag without looking at every photo.
+ * For each tag pair, it keeps a set of the ids of the photos that have it, which stays small for rarely used tags.
+ * Searching for two tags is then done by combining the two sets.
+ * Tag types and values are compared without case, the same way Photo compares them.
+ * The index also suggests tag types and values while the user types, the most used ones first.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class TagIndex {
+
+	/**
+	 * Ids of the photos that have each tag pair, found by the normalized tag pair
+	 */
+	private Map<String, PhotoIdSet> photosByTag;
+
+	/**
+	 * Tag types, counted once for each tag pair of that type a photo has, so a photo with two people
+	 * counts the type twice. The types used on the most tags are suggested first.
+	 */
+	private SuggestionTrie tagTypes;
+
+	/**
+	 * Tag values of every type, counted once for each tag pair with that value a photo has
+	 */
+	private SuggestionTrie tagValues;
+
+	/**
+	 * Tag values of each tag type, found by the tag type in lower case
+	 */
+	private Map<String, SuggestionTrie> tagValuesByType;
+
+	/**
+	 * Constructor for TagIndex
+	 */
+	public TagIndex()
+	{
+		photosByTag = new HashMap<String, PhotoIdSet>();
+		tagTypes = new SuggestionTrie();
+		tagValues = new SuggestionTrie();
+		tagValuesByType = new HashMap<String, SuggestionTrie>();
+	}
+
+	/**
+	 * Records that the photo with the given id has the tag
+	 *
+	 * @param photoId	Id of the photo
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 */
+	public void addTag(int photoId, String tagType, String tagValue)
+	{
+		PhotoIdSet photoIds = photosByTag.computeIfAbsent(key(tagType, tagValue), key -> new PhotoIdSet());
+
+		// A photo is only counted once for each tag pair
+		if (!photoIds.add(photoId))
+		{
+			return;
+		}
+
+		tagTypes.add(tagType);
+		tagValues.add(tagValue);
+		tagValuesByType.computeIfAbsent(tagType.toLowerCase(Locale.ROOT), type -> new SuggestionTrie()).add(tagValue);
+	}
+
+	/**
+	 * Records that the photo with the given id no longer has the tag
+	 *
+	 * @param photoId	Id of the photo
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 */
+	public void removeTag(int photoId, String tagType, String tagValue)
+	{
+		String key = key(tagType, tagValue);
+		PhotoIdSet photoIds = photosByTag.get(key);
+
+		if (photoIds == null || !photoIds.remove(photoId))
+		{
+			return;
+		}
+
+		tagTypes.remove(tagType);
+		tagValues.remove(tagValue);
+		tagValuesByType.get(tagType.toLowerCase(Locale.ROOT)).remove(tagValue);
+
+		// Tags nobody uses anymore are dropped so the index does not grow forever
+		if (photoIds.size() == 0)
+		{
+			photosByTag.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the ids of the photos that have the tag.
+	 * The set is a copy, so it can be combined with other sets without changing the index.
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @return	Ids of the photos that have the tag
+	 */
+	public BitSet photosWithTag(String tagType, String tagValue)
+	{
+		PhotoIdSet photoIds = photosByTag.get(key(tagType, tagValue));
+
+		if (photoIds == null)
+		{
+			return new BitSet();
+		}
+
+		return photoIds.toBitSet();
+	}
+
+	/**
+	 * Returns the ids of the photos that have a tag of the given type whose value is within a number of edits
+	 * of the given value, so small typos still find the photos.
+	 * The close values are found in the trie of the type's values instead of comparing every photo's tags.
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag, which may have typos
+	 * @param maxEdits	Most edits a value can be away
+	 * @return	Ids of the photos that have a close enough tag
+	 */
+	public BitSet photosWithSimilarTag(String tagType, String tagValue, int maxEdits)
+	{
+		BitSet photoIds = new BitSet();
+		SuggestionTrie typeValues = tagValuesByType.get(tagType.toLowerCase(Locale.ROOT));
+
+		if (typeValues == null)
+		{
+			return photoIds;
+		}
+
+		for (String similarValue: typeValues.findSimilar(tagValue, maxEdits))
+		{
+			PhotoIdSet valuePhotoIds = photosByTag.get(key(tagType, similarValue));
+
+			if (valuePhotoIds != null)
+			{
+				valuePhotoIds.addTo(photoIds);
+			}
+		}
+
+		return photoIds;
+	}
+
+	/**
+	 * Returns the number of photos that have the tag, without copying the set
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @return	Number of photos that have the tag
+	 */
+	public int countPhotosWithTag(String tagType, String tagValue)
+	{
+		PhotoIdSet photoIds = photosByTag.get(key(tagType, tagValue));
+
+		if (photoIds == null)
+		{
+			return 0;
+		}
+
+		return photoIds.size();
+	}
+
+	/**
+	 * Suggests tag types that start with what the user has typed, the most used first
+	 *
+	 * @param prefix	What the user has typed so far
+	 * @param limit	Most suggestions to return, up to SuggestionTrie.maxSuggestions
+	 * @return	The tag types
+	 */
+	public List<String> suggestTagTypes(String prefix, int limit)
+	{
+		return tagTypes.suggest(prefix, limit);
+	}
+
+	/**
+	 * Suggests tag values that start with what the user has typed, the most used first
+	 *
+	 * @param tagType	Type of the tag, or null to suggest values of every type
+	 * @param prefix	What the user has typed so far
+	 * @param limit	Most suggestions to return, up to SuggestionTrie.maxSuggestions
+	 * @return	The tag values
+	 */
+	public List<String> suggestTagValues(String tagType, String prefix, int limit)
+	{
+		if (tagType == null)
+		{
+			return tagValues.suggest(prefix, limit);
+		}
+
+		SuggestionTrie typeValues = tagValuesByType.get(tagType.toLowerCase(Locale.ROOT));
+
+		return typeValues == null ? new ArrayList<String>() : typeValues.suggest(prefix, limit);
+	}
+
+	/**
+	 * Makes the key of a tag pair. Case is ignored, and the type and value are separated by a
+	 * character that cannot be typed so that different pairs never make the same key.
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @return	The key of the tag pair
+	 */
+	private static String key(String tagType, String tagValue)
+	{
+		return tagType.toLowerCase(Locale.ROOT) + '\u0000' + tagValue.toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,110 @@
+package photo.app;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a dictionary of a user's tags. Each different tag is kept once and given a number, its id,
+ * and photos store the ids of their tags instead of the tags themselves.
+ * A tag on thousands of photos is then one object in memory, and checking if a photo has a tag compares numbers
+ * instead of strings. The save data writes each photo's tags as Tag objects, and since every photo shares the
+ * pool's copy, each different tag is written only once.
+ * The pool is not saved. It is built again from the photos' tags when the user is read, so ids can be different
+ * every time the program runs.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class TagPool {
+
+	/**
+	 * The id of each tag, found by any tag equal to it
+	 */
+	private Map<Tag, Integer> idsByTag;
+
+	/**
+	 * The shared copy of each tag, found by its id
+	 */
+	private List<Tag> tagsById;
+
+	/**
+	 * Constructor for TagPool
+	 */
+	public TagPool()
+	{
+		idsByTag = new HashMap<Tag, Integer>();
+		tagsById = new ArrayList<Tag>();
+	}
+
+	/**
+	 * Returns the id of a tag, adding it to the pool if this is the first time the tag is used.
+	 * The shared copy keeps the case it was first written in.
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @return	The id of the tag
+	 */
+	public int intern(String tagType, String tagValue)
+	{
+		return intern(new Tag(tagType, tagValue));
+	}
+
+	/**
+	 * Returns the id of a tag. If the tag is not in the pool yet, the given tag becomes the shared copy.
+	 *
+	 * @param tag	The tag
+	 * @return	The id of the tag
+	 */
+	public int intern(Tag tag)
+	{
+		Integer tagId = idsByTag.get(tag);
+
+		if (tagId != null)
+		{
+			return tagId;
+		}
+
+		idsByTag.put(tag, tagsById.size());
+		tagsById.add(tag);
+
+		return tagsById.size() - 1;
+	}
+
+	/**
+	 * Returns the id of a tag without adding it to the pool
+	 *
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @return	The id of the tag, or -1 if no photo has ever had the tag
+	 */
+	public int find(String tagType, String tagValue)
+	{
+		Integer tagId = idsByTag.get(new Tag(tagType, tagValue));
+
+		return tagId == null ? -1 : tagId;
+	}
+
+	/**
+	 * Returns the shared copy of the tag with the given id
+	 *
+	 * @param tagId	Id of the tag
+	 * @return	The tag
+	 */
+	public Tag getTag(int tagId)
+	{
+		return tagsById.get(tagId);
+	}
+
+	/**
+	 * Returns the number of different tags in the pool
+	 *
+	 * @return	Number of tags
+	 */
+	public int size()
+	{
+		return tagsById.size();
+	}
+}
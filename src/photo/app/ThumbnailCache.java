@@ -0,0 +1,421 @@
+package photo.app;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class keeps small copies of photos in a folder on disk, so the lists of photos do not have to read and decode
+ * every full size photo each time they are shown. A thumbnail is made once in the background and is read back
+ * from its own small file after that, even after the program is restarted.
+ *
+ * Each thumbnail's file name is made from the photo's path, the size of the thumbnail, and when the photo file was last
+ * changed, so a photo that is edited gets a new thumbnail instead of showing the old one.
+ * A request for a thumbnail can be cancelled, such as when the photo scrolls out of a list, and a thumbnail that nobody
+ * is waiting for anymore is not made.
+ *
+ * Looking at the photo file to see when it was last changed is done on a background thread too, so showing a list
+ * never waits on the disk, even when the photos are on a slow network drive. When the cache is opened, the thumbnails
+ * made before a photo was last changed are removed, along with the oldest thumbnails once they take up too much of the disk.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class ThumbnailCache {
+
+	/**
+	 * Format the thumbnails are saved in
+	 */
+	private static final String thumbnailFormat = "jpg";
+
+	/**
+	 * Most bytes the thumbnails may take up on disk. The oldest thumbnails are removed to stay under it.
+	 */
+	private static final long maxCacheBytes = 256L * 1024 * 1024;
+
+	/**
+	 * Thread that looks for thumbnails that were already made. It is separate from the makers,
+	 * so finding a thumbnail never waits behind photos being decoded.
+	 */
+	private static final ExecutorService thumbnailFinder = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "thumbnail-finder");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Threads that make thumbnails in the background, one for each processor since decoding photos keeps them busy
+	 */
+	private static final ExecutorService thumbnailMakers = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "thumbnail-maker");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+
+	/**
+	 * Folder the thumbnails are kept in
+	 */
+	private final File directory;
+
+	/**
+	 * Thumbnails that are being looked for or made, by photo and size, so a thumbnail asked for twice is only made once
+	 */
+	private final Map<String, ThumbnailJob> thumbnailsBeingMade;
+
+	/**
+	 * Constructor for ThumbnailCache
+	 *
+	 * @param directory	Folder the thumbnails are kept in. It is made if it does not exist.
+	 */
+	public ThumbnailCache(File directory)
+	{
+		this.directory = directory;
+		thumbnailsBeingMade = new ConcurrentHashMap<String, ThumbnailJob>();
+		thumbnailMakers.execute(this::removeOldThumbnails);
+	}
+
+	/**
+	 * Returns the thumbnail of a photo, looking for it and making it if it has not been made yet, all in the background.
+	 * Cancelling the returned request tells the cache it is no longer needed.
+	 *
+	 * @param photoPath	Path of the photo
+	 * @param size	Most pixels the thumbnail is wide and high
+	 * @return	The thumbnail file once it is ready, or null if the photo could not be read
+	 */
+	public CompletableFuture<File> requestThumbnail(String photoPath, int size)
+	{
+		String thumbnailName = hash(photoPath) + "-" + size;
+
+		ThumbnailJob job = thumbnailsBeingMade.compute(thumbnailName, (name, existingJob) -> {
+			if (existingJob != null)
+			{
+				existingJob.waiting++;
+				return existingJob;
+			}
+
+			ThumbnailJob newJob = new ThumbnailJob(thumbnailName, new File(photoPath), size);
+			thumbnailFinder.execute(newJob::find);
+
+			return newJob;
+		});
+
+		CompletableFuture<File> request = new CompletableFuture<File>();
+		job.made.whenComplete((file, error) -> request.complete(error == null ? file : null));
+
+		request.whenComplete((file, error) -> {
+			if (request.isCancelled())
+			{
+				thumbnailsBeingMade.computeIfPresent(thumbnailName, (name, waitingJob) -> {
+					if (waitingJob == job)
+					{
+						waitingJob.waiting--;
+					}
+
+					return waitingJob;
+				});
+			}
+		});
+
+		return request;
+	}
+
+	/**
+	 * Returns the file a photo's thumbnail is kept in
+	 *
+	 * @param thumbnailName	The hash of the photo's path and the size of the thumbnail
+	 * @param lastChanged	When the photo file was last changed
+	 * @return	The thumbnail file, which may not exist yet
+	 */
+	private File thumbnailFile(String thumbnailName, long lastChanged)
+	{
+		return new File(directory, thumbnailName + "-" + Long.toHexString(lastChanged) + "." + thumbnailFormat);
+	}
+
+	/**
+	 * Removes the thumbnails made before their photo was last changed, keeping only the newest one of each photo and size,
+	 * then removes the oldest thumbnails until the rest fit in the most bytes they may take up
+	 */
+	private void removeOldThumbnails()
+	{
+		File[] thumbnails = directory.listFiles((folder, name) -> name.endsWith("." + thumbnailFormat));
+
+		if (thumbnails == null)
+		{
+			return;
+		}
+
+		Arrays.sort(thumbnails, Comparator.comparingLong(File::lastModified).reversed());
+		Set<String> keptNames = new HashSet<String>();
+		long totalBytes = 0;
+
+		for (File thumbnail: thumbnails)
+		{
+			String name = thumbnail.getName();
+			int lastDash = name.lastIndexOf('-');
+			long bytes = thumbnail.length();
+
+			if (lastDash < 0 || !keptNames.add(name.substring(0, lastDash)) || totalBytes + bytes > maxCacheBytes)
+			{
+				thumbnail.delete();
+				continue;
+			}
+
+			totalBytes += bytes;
+		}
+	}
+
+	/**
+	 * Decodes a photo at a small size and saves it as a thumbnail.
+	 * Big photos are read skipping rows and columns of pixels, so they are never decoded at full size.
+	 *
+	 * @param photoFile	The photo
+	 * @param thumbnail	The file to save the thumbnail in
+	 * @param size	Most pixels the thumbnail is wide and high
+	 * @return	The thumbnail file, or null if the photo could not be read
+	 */
+	private File makeThumbnail(File photoFile, File thumbnail, int size)
+	{
+		try (ImageInputStream input = ImageIO.createImageInputStream(photoFile))
+		{
+			Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+
+			if (readers == null || !readers.hasNext())
+			{
+				return null;
+			}
+
+			ImageReader reader = readers.next();
+			BufferedImage decoded;
+
+			try
+			{
+				reader.setInput(input, true, true);
+				int width = reader.getWidth(0);
+				int height = reader.getHeight(0);
+
+				// Keep at least twice the pixels needed so the scaled thumbnail still looks smooth
+				int step = Math.max(1, Math.max(width, height) / (size * 2));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				decoded = reader.read(0, param);
+			}
+			finally
+			{
+				reader.dispose();
+			}
+
+			double scale = Math.min(1.0, (double) size / Math.max(decoded.getWidth(), decoded.getHeight()));
+			int thumbnailWidth = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+			int thumbnailHeight = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+
+			BufferedImage scaled = new BufferedImage(thumbnailWidth, thumbnailHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = scaled.createGraphics();
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+			// JPEG has no transparency, so see-through parts of the photo are shown as white
+			graphics.drawImage(decoded, 0, 0, thumbnailWidth, thumbnailHeight, Color.WHITE, null);
+			graphics.dispose();
+
+			directory.mkdirs();
+
+			// The thumbnail is written to another file first so a list never reads one that is half written
+			File partial = File.createTempFile("thumbnail", ".part", directory);
+
+			try
+			{
+				if (!ImageIO.write(scaled, thumbnailFormat, partial))
+				{
+					return null;
+				}
+
+				Files.move(partial.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally
+			{
+				partial.delete();
+			}
+
+			return thumbnail;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// A photo that cannot be read has no thumbnail, and the list shows the photo itself
+			return null;
+		}
+	}
+
+	/**
+	 * One thumbnail being looked for or waiting to be made, along with how many requests are waiting for it
+	 */
+	private class ThumbnailJob implements Runnable
+	{
+		/**
+		 * The hash of the photo's path and the size of the thumbnail, which is its name in thumbnailsBeingMade
+		 */
+		private final String thumbnailName;
+
+		/**
+		 * The photo
+		 */
+		private final File photoFile;
+
+		/**
+		 * The file to save the thumbnail in, known once the photo file has been looked at
+		 */
+		private File thumbnail;
+
+		/**
+		 * Most pixels the thumbnail is wide and high
+		 */
+		private final int size;
+
+		/**
+		 * Number of requests that have not been cancelled. It is only changed while the job's map entry is locked.
+		 */
+		private int waiting;
+
+		/**
+		 * The thumbnail file once it is made
+		 */
+		private final CompletableFuture<File> made;
+
+		/**
+		 * Constructor for ThumbnailJob
+		 *
+		 * @param thumbnailName	The hash of the photo's path and the size of the thumbnail
+		 * @param photoFile	The photo
+		 * @param size	Most pixels the thumbnail is wide and high
+		 */
+		ThumbnailJob(String thumbnailName, File photoFile, int size)
+		{
+			this.thumbnailName = thumbnailName;
+			this.photoFile = photoFile;
+			this.size = size;
+			waiting = 1;
+			made = new CompletableFuture<File>();
+		}
+
+		/**
+		 * Looks for a thumbnail made since the photo was last changed, and hands the job to the makers if there is none
+		 */
+		void find()
+		{
+			if (!stillWanted())
+			{
+				return;
+			}
+
+			thumbnail = thumbnailFile(thumbnailName, photoFile.lastModified());
+
+			if (!thumbnail.isFile())
+			{
+				thumbnailMakers.execute(this);
+				return;
+			}
+
+			try
+			{
+				made.complete(thumbnail);
+			}
+			finally
+			{
+				thumbnailsBeingMade.remove(thumbnailName, this);
+			}
+		}
+
+		/**
+		 * Makes the thumbnail, unless every request for it was cancelled while it waited
+		 */
+		@Override
+		public void run()
+		{
+			if (!stillWanted())
+			{
+				return;
+			}
+
+			try
+			{
+				made.complete(makeThumbnail(photoFile, thumbnail, size));
+			}
+			finally
+			{
+				thumbnailsBeingMade.remove(thumbnailName, this);
+			}
+		}
+
+		/**
+		 * Checks that a request is still waiting for the thumbnail.
+		 * A job nobody waits for is taken out of the map, so a later request starts a new one.
+		 *
+		 * @return	True if the thumbnail is still wanted, false if every request for it was cancelled
+		 */
+		private boolean stillWanted()
+		{
+			ThumbnailJob job = thumbnailsBeingMade.computeIfPresent(thumbnailName,
+					(name, waitingJob) -> waitingJob.waiting > 0 ? waitingJob : null);
+
+			if (job == null)
+			{
+				made.cancel(false);
+				return false;
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * Returns a short name for a photo's path that can be used in a file name. TilePyramid uses it too.
+	 *
+	 * @param photoPath	Path of the photo
+	 * @return	The first 16 bytes of the path's SHA-1 hash, as hexadecimal
+	 */
+	static String hash(String photoPath)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(photoPath.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder();
+
+			for (int i = 0; i < 16; i++)
+			{
+				name.append(String.format("%02x", digest[i]));
+			}
+
+			return name.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java version has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,616 @@
+package photo.app;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class cuts a photo into square tiles at several zoom levels, so a very large photo can be zoomed into
+ * without decoding all of it. Level 0 has the photo's full size, and each level after it is half as wide and high,
+ * up to a level that fits in a single tile.
+ *
+ * The tiles are made only when they are asked for and are kept in a folder on disk for the next time.
+ * When a tile is asked for, its whole row of tiles is made at once, since reading one strip of the photo
+ * across its width costs about the same as reading one tile of it. Only that strip is decoded, skipping rows
+ * and columns of pixels for the smaller levels, so the memory used depends on the width of the photo and not its size.
+ * A request for a tile can be cancelled, and a row nobody is waiting for anymore is not made.
+ *
+ * A photo's tiles are opened in the background, since even reading the header of the photo waits on the disk.
+ * Opening them removes the tiles made before the photo was last changed, and the tiles of the photos
+ * opened longest ago once all of them take up too much of the disk. The tiles of photos that are still open
+ * are never removed, until they are closed.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class TilePyramid {
+
+	/**
+	 * Pixels each tile is wide and high. Tiles on the right and bottom edges may be smaller.
+	 */
+	public static final int tileSize = 256;
+
+	/**
+	 * Most bytes the tiles of every photo may take up on disk. The tiles of the photos opened longest ago
+	 * are removed to stay under it.
+	 */
+	private static final long maxCacheBytes = 512L * 1024 * 1024;
+
+	/**
+	 * Format the tiles are saved in
+	 */
+	private static final String tileFormat = "jpg";
+
+	/**
+	 * Thread that opens the tiles of photos. It is separate from the makers, so opening a photo never waits
+	 * behind rows of tiles being made.
+	 */
+	private static final ExecutorService tileOpener = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "tile-opener");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Folders of the tiles that are open, with how many times each one is open
+	 */
+	private static final Map<File, Integer> openDirectories = new ConcurrentHashMap<File, Integer>();
+
+	/**
+	 * Threads that make rows of tiles in the background, one for each processor since decoding photos keeps them busy
+	 */
+	private static final ExecutorService tileMakers = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), runnable -> {
+				Thread thread = new Thread(runnable, "tile-maker");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			});
+
+	/**
+	 * The photo
+	 */
+	private final File photoFile;
+
+	/**
+	 * When the photo file was last changed, as of when its tiles were opened
+	 */
+	private final long lastModified;
+
+	/**
+	 * Folder the photo's tiles are kept in. Its name changes when the photo is edited, so old tiles are not used.
+	 */
+	private final File directory;
+
+	/**
+	 * Width of the photo in pixels
+	 */
+	private final int width;
+
+	/**
+	 * Height of the photo in pixels
+	 */
+	private final int height;
+
+	/**
+	 * Number of zoom levels
+	 */
+	private final int levelCount;
+
+	/**
+	 * Rows of tiles that are waiting to be made or are being made, by level and row
+	 */
+	private final Map<String, RowJob> rowsBeingMade;
+
+	/**
+	 * Opens the tiles of a photo in the background. They should be closed once they are no longer shown.
+	 *
+	 * @param cacheDirectory	Folder the tiles of every photo are kept in
+	 * @param photoPath	Path of the photo
+	 * @return	The photo's tiles once they are open, or null if the photo could not be read
+	 */
+	public static CompletableFuture<TilePyramid> open(File cacheDirectory, String photoPath)
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			try
+			{
+				return new TilePyramid(cacheDirectory, photoPath);
+			}
+			catch (IOException | RuntimeException e)
+			{
+				return null;
+			}
+		}, tileOpener);
+	}
+
+	/**
+	 * Constructor for TilePyramid. Only the header of the photo is read, to find its size.
+	 *
+	 * @param cacheDirectory	Folder the tiles of every photo are kept in
+	 * @param photoPath	Path of the photo
+	 * @throws IOException	If the photo cannot be read
+	 */
+	private TilePyramid(File cacheDirectory, String photoPath) throws IOException
+	{
+		photoFile = new File(photoPath);
+		lastModified = photoFile.lastModified();
+		directory = new File(cacheDirectory, ThumbnailCache.hash(photoPath) + "-" + Long.toHexString(lastModified));
+		rowsBeingMade = new ConcurrentHashMap<String, RowJob>();
+
+		try (ImageInputStream input = ImageIO.createImageInputStream(photoFile))
+		{
+			ImageReader reader = openReader(input);
+
+			try
+			{
+				width = reader.getWidth(0);
+				height = reader.getHeight(0);
+			}
+			finally
+			{
+				reader.dispose();
+			}
+		}
+
+		int levels = 1;
+
+		while (Math.max(levelWidth(levels - 1), levelHeight(levels - 1)) > tileSize)
+		{
+			levels++;
+		}
+
+		levelCount = levels;
+
+		// Marks the tiles as used now, so they are the last ones removed to make room.
+		// The folder is made first, since the time of a folder that does not exist cannot be set.
+		directory.mkdirs();
+		directory.setLastModified(System.currentTimeMillis());
+		openDirectories.merge(directory, 1, Integer::sum);
+		tileMakers.execute(() -> removeOldTiles(cacheDirectory, ThumbnailCache.hash(photoPath) + "-"));
+	}
+
+	/**
+	 * Closes the tiles once they are no longer shown, so they can be removed to make room for other photos' tiles
+	 */
+	public void close()
+	{
+		openDirectories.computeIfPresent(directory, (folder, opens) -> opens > 1 ? opens - 1 : null);
+	}
+
+	/**
+	 * Returns the width of the photo
+	 *
+	 * @return	Width in pixels
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the height of the photo
+	 *
+	 * @return	Height in pixels
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Returns when the photo file was last changed, which tells the tiles of an edited photo apart from the old ones
+	 *
+	 * @return	Milliseconds since the epoch, or 0 if it is not known
+	 */
+	public long getLastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * Returns the number of zoom levels. The last level fits in a single tile.
+	 *
+	 * @return	Number of levels
+	 */
+	public int getLevelCount()
+	{
+		return levelCount;
+	}
+
+	/**
+	 * Returns the width of the photo at a level
+	 *
+	 * @param level	The level, 0 being the full size
+	 * @return	Width in pixels
+	 */
+	public int levelWidth(int level)
+	{
+		return Math.max(1, (int) Math.ceil(width / Math.pow(2, level)));
+	}
+
+	/**
+	 * Returns the height of the photo at a level
+	 *
+	 * @param level	The level, 0 being the full size
+	 * @return	Height in pixels
+	 */
+	public int levelHeight(int level)
+	{
+		return Math.max(1, (int) Math.ceil(height / Math.pow(2, level)));
+	}
+
+	/**
+	 * Returns the number of columns of tiles at a level
+	 *
+	 * @param level	The level
+	 * @return	Number of columns
+	 */
+	public int getColumns(int level)
+	{
+		return (levelWidth(level) + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * Returns the number of rows of tiles at a level
+	 *
+	 * @param level	The level
+	 * @return	Number of rows
+	 */
+	public int getRows(int level)
+	{
+		return (levelHeight(level) + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * Returns a tile if it has already been made
+	 *
+	 * @param level	The level
+	 * @param column	Column of the tile
+	 * @param row	Row of the tile
+	 * @return	The tile file, or null if it has not been made yet
+	 */
+	public File getTile(int level, int column, int row)
+	{
+		File tile = tileFile(level, column, row);
+
+		return tile.isFile() ? tile : null;
+	}
+
+	/**
+	 * Returns a tile, making its row of tiles in the background if it has not been made yet.
+	 * Cancelling the returned request tells the pyramid it is no longer needed.
+	 *
+	 * @param level	The level
+	 * @param column	Column of the tile
+	 * @param row	Row of the tile
+	 * @return	The tile file once it is ready, or null if the photo could not be read
+	 */
+	public CompletableFuture<File> requestTile(int level, int column, int row)
+	{
+		File tile = tileFile(level, column, row);
+
+		if (tile.isFile())
+		{
+			return CompletableFuture.completedFuture(tile);
+		}
+
+		String rowName = level + "-" + row;
+
+		RowJob job = rowsBeingMade.compute(rowName, (name, existingJob) -> {
+			if (existingJob != null)
+			{
+				existingJob.waiting++;
+				return existingJob;
+			}
+
+			RowJob newJob = new RowJob(rowName, level, row);
+			tileMakers.execute(newJob);
+
+			return newJob;
+		});
+
+		CompletableFuture<File> request = new CompletableFuture<File>();
+		job.made.whenComplete((made, error) -> request.complete(error == null && made && tile.isFile() ? tile : null));
+
+		request.whenComplete((file, error) -> {
+			if (request.isCancelled())
+			{
+				rowsBeingMade.computeIfPresent(rowName, (name, waitingJob) -> {
+					if (waitingJob == job)
+					{
+						waitingJob.waiting--;
+					}
+
+					return waitingJob;
+				});
+			}
+		});
+
+		return request;
+	}
+
+	/**
+	 * Returns the file a tile is kept in
+	 *
+	 * @param level	The level
+	 * @param column	Column of the tile
+	 * @param row	Row of the tile
+	 * @return	The tile file, which may not exist yet
+	 */
+	private File tileFile(int level, int column, int row)
+	{
+		return new File(directory, level + "-" + column + "-" + row + "." + tileFormat);
+	}
+
+	/**
+	 * Decodes one strip of the photo across its whole width and saves it as a row of tiles.
+	 * For the smaller levels, rows and columns of pixels are skipped while decoding and the rest is scaled down smoothly.
+	 *
+	 * @param level	The level
+	 * @param row	Row of tiles
+	 * @return	True if the tiles were made, false if the photo could not be read
+	 */
+	private boolean makeRow(int level, int row)
+	{
+		int levelScale = 1 << level;
+		int top = row * tileSize * levelScale;
+		int stripHeight = Math.min(tileSize * levelScale, height - top);
+		int rowWidth = levelWidth(level);
+		int rowHeight = Math.min(tileSize, levelHeight(level) - row * tileSize);
+
+		try (ImageInputStream input = ImageIO.createImageInputStream(photoFile))
+		{
+			ImageReader reader = openReader(input);
+			BufferedImage strip;
+
+			try
+			{
+				// Skip half as many pixels as the level needs, so scaling down the rest still looks smooth
+				int step = Math.max(1, levelScale / 2);
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(new Rectangle(0, top, width, stripHeight));
+				param.setSourceSubsampling(step, step, 0, 0);
+				strip = reader.read(0, param);
+			}
+			finally
+			{
+				reader.dispose();
+			}
+
+			// JPEG has no transparency, so see-through parts of the photo are drawn onto white
+			if (strip.getWidth() != rowWidth || strip.getHeight() != rowHeight || strip.getColorModel().hasAlpha())
+			{
+				BufferedImage scaled = new BufferedImage(rowWidth, rowHeight, BufferedImage.TYPE_INT_RGB);
+				Graphics2D graphics = scaled.createGraphics();
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.drawImage(strip, 0, 0, rowWidth, rowHeight, Color.WHITE, null);
+				graphics.dispose();
+				strip = scaled;
+			}
+
+			directory.mkdirs();
+
+			for (int column = 0; column < getColumns(level); column++)
+			{
+				int left = column * tileSize;
+				BufferedImage tile = strip.getSubimage(left, 0, Math.min(tileSize, rowWidth - left), rowHeight);
+
+				// Each tile is written to another file first so the viewer never reads one that is half written
+				File partial = File.createTempFile("tile", ".part", directory);
+
+				try
+				{
+					if (!ImageIO.write(tile, tileFormat, partial))
+					{
+						return false;
+					}
+
+					Files.move(partial.toPath(), tileFile(level, column, row).toPath(),
+							StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+				finally
+				{
+					partial.delete();
+				}
+			}
+
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// A photo that cannot be read has no tiles, and the viewer keeps showing the whole photo
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the folders of tiles made before this photo was last changed, then removes the folders of the photos
+	 * opened longest ago until the tiles of every photo fit in the most bytes they may take up.
+	 * The folders of tiles that are open, such as this photo's own folder, are always kept.
+	 *
+	 * @param cacheDirectory	Folder the tiles of every photo are kept in
+	 * @param photoPrefix	Start of the name of every folder of this photo's tiles
+	 */
+	private void removeOldTiles(File cacheDirectory, String photoPrefix)
+	{
+		File[] folders = cacheDirectory.listFiles(File::isDirectory);
+
+		if (folders == null)
+		{
+			return;
+		}
+
+		Arrays.sort(folders, Comparator.comparingLong(File::lastModified));
+		long[] folderBytes = new long[folders.length];
+		long totalBytes = 0;
+
+		for (int i = 0; i < folders.length; i++)
+		{
+			if (folders[i].getName().startsWith(photoPrefix) && !openDirectories.containsKey(folders[i]))
+			{
+				deleteFolder(folders[i]);
+				folders[i] = null;
+				continue;
+			}
+
+			for (File tile: listFiles(folders[i]))
+			{
+				folderBytes[i] += tile.length();
+			}
+
+			totalBytes += folderBytes[i];
+		}
+
+		for (int i = 0; i < folders.length && totalBytes > maxCacheBytes; i++)
+		{
+			if (folders[i] != null && !openDirectories.containsKey(folders[i]))
+			{
+				deleteFolder(folders[i]);
+				totalBytes -= folderBytes[i];
+			}
+		}
+	}
+
+	/**
+	 * Deletes a folder of tiles along with every tile in it
+	 *
+	 * @param folder	The folder
+	 */
+	private static void deleteFolder(File folder)
+	{
+		for (File tile: listFiles(folder))
+		{
+			tile.delete();
+		}
+
+		folder.delete();
+	}
+
+	/**
+	 * Returns the files in a folder
+	 *
+	 * @param folder	The folder
+	 * @return	The files, which is empty if the folder cannot be read
+	 */
+	private static File[] listFiles(File folder)
+	{
+		File[] files = folder.listFiles();
+
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Returns a reader for a photo
+	 *
+	 * @param input	The photo's open file
+	 * @return	The reader, set to read the photo
+	 * @throws IOException	If there is no reader for the photo's format
+	 */
+	private static ImageReader openReader(ImageInputStream input) throws IOException
+	{
+		Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+
+		if (readers == null || !readers.hasNext())
+		{
+			throw new IOException("The photo's format cannot be read");
+		}
+
+		ImageReader reader = readers.next();
+		reader.setInput(input, true, true);
+
+		return reader;
+	}
+
+	/**
+	 * One row of tiles waiting to be made, along with how many requests are waiting for it
+	 */
+	private class RowJob implements Runnable
+	{
+		/**
+		 * Name of the row in rowsBeingMade
+		 */
+		private final String rowName;
+
+		/**
+		 * The level
+		 */
+		private final int level;
+
+		/**
+		 * Row of tiles
+		 */
+		private final int row;
+
+		/**
+		 * Number of requests that have not been cancelled. It is only changed while the job's map entry is locked.
+		 */
+		private int waiting;
+
+		/**
+		 * True once the tiles are made, or false if the photo could not be read
+		 */
+		private final CompletableFuture<Boolean> made;
+
+		/**
+		 * Constructor for RowJob
+		 *
+		 * @param rowName	Name of the row in rowsBeingMade
+		 * @param level	The level
+		 * @param row	Row of tiles
+		 */
+		RowJob(String rowName, int level, int row)
+		{
+			this.rowName = rowName;
+			this.level = level;
+			this.row = row;
+			waiting = 1;
+			made = new CompletableFuture<Boolean>();
+		}
+
+		/**
+		 * Makes the row of tiles, unless every request for it was cancelled while it waited
+		 */
+		@Override
+		public void run()
+		{
+			// A job nobody waits for is taken out of the map, so a later request starts a new one
+			RowJob stillWanted = rowsBeingMade.computeIfPresent(rowName, (name, job) -> job.waiting > 0 ? job : null);
+
+			if (stillWanted == null)
+			{
+				made.cancel(false);
+				return;
+			}
+
+			try
+			{
+				made.complete(makeRow(level, row));
+			}
+			finally
+			{
+				rowsBeingMade.remove(rowName, this);
+			}
+		}
+	}
+}
@@ -1,8 +1,19 @@
 package photo.app;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * This class will handle the information for an individual user.
@@ -18,7 +29,12 @@ public class User implements Serializable{
 	 * The serial ID
 	 */
 	private static final long serialVersionUID = -3748439693527033733L;
-
+	
+	/**
+	 * Most typos a fuzzy tag search can allow. More than this finds almost every value and looks at all of them.
+	 */
+	public static final int maxFuzzyEdits = 2;
+	
 	/**
 	 *  name used to login
 	 */
@@ -35,11 +51,48 @@ public class User implements Serializable{
 	 */
 	private List<String> tagTypes;
 	
+	/**
+	 * Holds the one copy of every photo the user has, found by its path.
+	 * Albums hold references to these photos, so a photo that is in more than one album
+	 * is the same object in all of them and a tag or caption only has to be changed once.
+	 */
+	private Map<String, Photo> photoRegistry;
+	
+	/**
+	 * The user's photos, found by their id. A photo's id is its position in this list.
+	 */
+	private transient List<Photo> photosById;
+	
+	/**
+	 * Finds the photos that have a tag. Only photos that are in at least one album are in the index.
+	 */
+	private transient TagIndex tagIndex;
+	
+	/**
+	 * Finds the photos taken between two dates. Only photos that are in at least one album are in the index.
+	 */
+	private transient DateIndex dateIndex;
+	
+	/**
+	 * Finds the photos whose captions have a word or phrase. Only photos that are in at least one album are in the index.
+	 */
+	private transient CaptionIndex captionIndex;
+	
+	/**
+	 * Dictionary of the user's tags. Photos store the ids of their tags in it, so photos with the same tag share it.
+	 */
+	private transient TagPool tagPool;
+	
 	/**
 	 * Keeps track of the album the user is currently looking at
 	 */
 	public Album currentAlbum;
 	
+	/**
+	 * First journal generation that is not already part of this user's saved file
+	 */
+	private long journalGeneration;
+	
 	/**
 	 * constructor makes an instance of user with given name only as password is optional
 	 * @param name
@@ -50,9 +103,36 @@ public class User implements Serializable{
 		tagTypes = new ArrayList<String>();
 		tagTypes.add("Location");
 		tagTypes.add("Person");
+		photoRegistry = new HashMap<String, Photo>();
+		photosById = new ArrayList<Photo>();
+		tagIndex = new TagIndex();
+		dateIndex = new DateIndex();
+		captionIndex = new CaptionIndex();
+		tagPool = new TagPool();
 		currentAlbum = null;
 	}
 	
+	/**
+	 * Returns the user's photo with the given path, making a new one if none of the user's albums have it.
+	 * This photo should be used whenever a photo is added to one of the user's albums.
+	 * 
+	 * @param photoPath	Path of the photo
+	 * @return	The user's photo with the given path
+	 */
+	public Photo getOrCreatePhoto(String photoPath)
+	{
+		Photo photo = photoRegistry.get(photoPath);
+		
+		// A photo that was removed from every album starts over with no tags or caption
+		if (photo == null || !photo.isInAnAlbum())
+		{
+			photo = new Photo(photoPath);
+			registerPhoto(photo);
+		}
+		
+		return photo;
+	}
+	
 	/**
 	 * The user is able to select and add to a preset list of tag types.
 	 * The user will be able to pick it in the future.
@@ -111,6 +191,26 @@ public class User implements Serializable{
 		return tagTypes;
 	}
 	
+	/**
+	 * Returns the first journal generation that is not already part of this user's saved file
+	 * 
+	 * @return	The journal generation
+	 */
+	public long getJournalGeneration()
+	{
+		return journalGeneration;
+	}
+	
+	/**
+	 * Sets the first journal generation that is not already part of this user's saved file
+	 * 
+	 * @param journalGeneration	The journal generation
+	 */
+	public void setJournalGeneration(long journalGeneration)
+	{
+		this.journalGeneration = journalGeneration;
+	}
+	
 	/**
 	 * Changes user name
 	 * @param name The new name for user
@@ -137,6 +237,101 @@ public class User implements Serializable{
 		albumList.add(albumToAdd);
 	}
 	
+	/**
+	 * Returns the user's photo with the same path as the given photo. If none of the user's albums have it,
+	 * the given photo becomes the user's photo. This is used for photos that were already read, such as by PhotoImporter.
+	 * 
+	 * @param newPhoto	A photo that was read but is not in any album yet
+	 * @return	The user's photo with the same path
+	 */
+	public Photo getOrAddPhoto(Photo newPhoto)
+	{
+		Photo photo = photoRegistry.get(newPhoto.getPhotoPath());
+		
+		if (photo == null || !photo.isInAnAlbum())
+		{
+			photo = newPhoto;
+			registerPhoto(photo);
+		}
+		
+		return photo;
+	}
+	
+	/**
+	 * Adds photos that were already read, such as by PhotoImporter, to one of the user's albums in one pass.
+	 * Photos whose path is already in the album are skipped.
+	 * A photo that is already in another album keeps its tags and caption.
+	 * 
+	 * @param album	The album the photos are added to
+	 * @param importedPhotos	The photos that were read
+	 * @return	The photos that were added, in order
+	 */
+	public List<Photo> addImportedPhotosToAlbum(Album album, Collection<Photo> importedPhotos)
+	{
+		LinkedHashMap<String, Photo> newPhotos = new LinkedHashMap<String, Photo>();
+		
+		for (Photo importedPhoto: importedPhotos)
+		{
+			if (!album.isPhotoPathPresent(importedPhoto.getPhotoPath()))
+			{
+				newPhotos.putIfAbsent(importedPhoto.getPhotoPath(), importedPhoto);
+			}
+		}
+		
+		List<Photo> photosToAdd = new ArrayList<Photo>();
+		
+		for (Photo newPhoto: newPhotos.values())
+		{
+			photosToAdd.add(getOrAddPhoto(newPhoto));
+		}
+		
+		return album.addPhotos(photosToAdd);
+	}
+	
+	/**
+	 * Adds the photos with the given paths to one of the user's albums in one pass.
+	 * Paths that are already in the album, or that are given more than once, are only added once.
+	 * A photo that is already in another album keeps its tags and caption.
+	 * 
+	 * @param album	The album the photos are added to
+	 * @param photoPaths	Paths of the photos
+	 * @return	The photos that were added, in order
+	 */
+	public List<Photo> addPhotosToAlbum(Album album, Collection<String> photoPaths)
+	{
+		LinkedHashSet<String> newPaths = new LinkedHashSet<String>();
+		
+		for (String photoPath: photoPaths)
+		{
+			if (!album.isPhotoPathPresent(photoPath))
+			{
+				newPaths.add(photoPath);
+			}
+		}
+		
+		List<String> pathList = new ArrayList<String>(newPaths);
+		Photo[] readPhotos = new Photo[pathList.size()];
+		
+		// Making a photo reads its file's header, so the photos the user does not have yet are read in parallel
+		IntStream.range(0, readPhotos.length).parallel().forEach(i -> {
+			Photo photo = photoRegistry.get(pathList.get(i));
+			
+			if (photo == null || !photo.isInAnAlbum())
+			{
+				readPhotos[i] = new Photo(pathList.get(i));
+			}
+		});
+		
+		List<Photo> photosToAdd = new ArrayList<Photo>();
+		
+		for (int i = 0; i < readPhotos.length; i++)
+		{
+			photosToAdd.add(readPhotos[i] != null ? getOrAddPhoto(readPhotos[i]) : getOrCreatePhoto(pathList.get(i)));
+		}
+		
+		return album.addPhotos(photosToAdd);
+	}
+	
 	/**
 	 * This method is used to check if an album name already taken by another album for a user.
 	 * All album names should be unique for a user.
@@ -189,7 +384,10 @@ public class User implements Serializable{
 		{
 			if (albumList.get(i).getAlbumName().equalsIgnoreCase(albumNameToRemove))
 			{
-				albumList.remove(i);
+				for (Photo photo: albumList.remove(i).getPhotos())
+				{
+					photo.removedFromAlbum();
+				}
 				break;
 			}
 		}
@@ -200,6 +398,24 @@ public class User implements Serializable{
 		return this.albumList;
 	}
 	
+	/**
+	 * Finds a photo with the given path in any of the user's albums
+	 * 
+	 * @param photoPath	Path of the photo
+	 * @return	The photo, or null if none of the albums have it
+	 */
+	public Photo findPhoto(String photoPath)
+	{
+		Photo photo = photoRegistry.get(photoPath);
+		
+		if (photo == null || !photo.isInAnAlbum())
+		{
+			return null;
+		}
+		
+		return photo;
+	}
+	
 	/**
 	 * Create a new album from the search results.
 	 * The results can be a result of data range or tag values.
@@ -225,160 +441,442 @@ public class User implements Serializable{
 	}
 	
 	/**
-	 * Whenever a tag is added to a photo, this method will be called to see if there are copies
-	 * of this photo across other albums. This is checked using the path of the photo since each photo will
-	 * have a unique path. If there is a match, the tag will also be added to that photo in the other album.
+	 * Returns the photos that have the tag pair
 	 * 
-	 * @param photoPath	Path of the photo, used to identify if the same photo is in another album
-	 * @param albumThatWasAlteredFirst	First album that has the photo that has the tag added
-	 * @param tagType	The type of the tag, such as location
-	 * @param tagValue	The value of the tag, such as the name of a person
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @param fuzzy	True to also find tag values with small typos, false to find only the exact value
+	 * @return	The photos with the tag, each one only once
 	 */
-	public void makeChangesToPhotoAcrossAllAlbumsAddTag(String photoPath, String albumThatWasAlteredFirst,
-			String tagType, String tagValue)
+	public List<Photo> searchTag(String tagType, String tagValue, boolean fuzzy)
 	{
+		return getPhotos(photosWithTag(tagType, tagValue, fuzzy));
+	}
+	
+	/**
+	 * Returns the photos that have both of the tag pairs
+	 * 
+	 * @param tagType1	Type of the first tag
+	 * @param tagValue1	Value of the first tag
+	 * @param tagType2	Type of the second tag
+	 * @param tagValue2	Value of the second tag
+	 * @param fuzzy	True to also find tag values with small typos, false to find only the exact values
+	 * @return	The photos with both tags, each one only once
+	 */
+	public List<Photo> searchTagsAnd(String tagType1, String tagValue1, String tagType2, String tagValue2, boolean fuzzy)
+	{
+		BitSet photoIds = photosWithTag(tagType1, tagValue1, fuzzy);
+		photoIds.and(photosWithTag(tagType2, tagValue2, fuzzy));
 		
-		for (int i = 0; i < albumList.size(); i++)
+		return getPhotos(photoIds);
+	}
+	
+	/**
+	 * Returns the photos that have at least one of the tag pairs
+	 * 
+	 * @param tagType1	Type of the first tag
+	 * @param tagValue1	Value of the first tag
+	 * @param tagType2	Type of the second tag
+	 * @param tagValue2	Value of the second tag
+	 * @param fuzzy	True to also find tag values with small typos, false to find only the exact values
+	 * @return	The photos with either tag, each one only once
+	 */
+	public List<Photo> searchTagsOr(String tagType1, String tagValue1, String tagType2, String tagValue2, boolean fuzzy)
+	{
+		BitSet photoIds = photosWithTag(tagType1, tagValue1, fuzzy);
+		photoIds.or(photosWithTag(tagType2, tagValue2, fuzzy));
+		
+		return getPhotos(photoIds);
+	}
+	
+	/**
+	 * Returns the number of typos a fuzzy tag search allows for a value. Short values only allow one,
+	 * otherwise almost every short value would be found.
+	 * 
+	 * @param tagValue	The value being searched for
+	 * @return	Most edits a tag value can be away from the value, never more than maxFuzzyEdits
+	 */
+	public static int fuzzyEdits(String tagValue)
+	{
+		return tagValue.length() <= 4 ? 1 : maxFuzzyEdits;
+	}
+	
+	/**
+	 * Returns the photos taken between the two dates, including both dates
+	 * 
+	 * @param fromDate	The older date in the date range
+	 * @param toDate	The later date in the date range
+	 * @return	The photos in the range in the order they were taken, each one only once
+	 */
+	public List<Photo> searchDateRange(LocalDate fromDate, LocalDate toDate)
+	{
+		int[] photoIds = dateIndex.photosInRange(DateIndex.toDay(fromDate), DateIndex.toDay(toDate));
+		List<Photo> photos = new ArrayList<Photo>(photoIds.length);
+		
+		for (int photoId: photoIds)
 		{
-			Album currentAlbum = albumList.get(i);
-			
-			// This is the album that was already changed. No need to change it again.
-			if (currentAlbum.getAlbumName().equalsIgnoreCase(albumThatWasAlteredFirst))
-			{
-				continue;
-			}
+			photos.add(photosById.get(photoId));
+		}
+		
+		return photos;
+	}
+	
+	/**
+	 * Returns the photos that match a query, such as person:alice AND date:2020-01-01..2020-12-31.
+	 * If the query searches captions, the photos whose captions match best come first.
+	 * 
+	 * @param query	The query that was typed
+	 * @return	The matching photos, each one only once
+	 * @throws IllegalArgumentException	If the query is not written correctly
+	 */
+	public List<Photo> search(String query)
+	{
+		PhotoQuery parsedQuery = PhotoQuery.parse(query);
+		BitSet photoIds = parsedQuery.evaluate(this);
+		List<String> captionWords = parsedQuery.getCaptionWords();
+		
+		if (captionWords.isEmpty())
+		{
+			return getPhotos(photoIds);
+		}
+		
+		List<Photo> photos = new ArrayList<Photo>(photoIds.cardinality());
+		
+		for (int photoId: captionIndex.rank(photoIds, captionWords))
+		{
+			photos.add(photosById.get(photoId));
+		}
+		
+		return photos;
+	}
+	
+	/**
+	 * Returns the index of the user's captions, so searches can combine the sets of photos it returns
+	 * 
+	 * @return	The caption index
+	 */
+	public CaptionIndex getCaptionIndex()
+	{
+		return captionIndex;
+	}
+	
+	/**
+	 * Returns the index of the user's photo dates, so searches can combine the sets of photos it returns
+	 * 
+	 * @return	The date index
+	 */
+	public DateIndex getDateIndex()
+	{
+		return dateIndex;
+	}
+	
+	/**
+	 * Suggests tag types that start with what the user has typed. The types used by the most photos come first,
+	 * followed by types from the list of preset tag types that no photo uses yet.
+	 * 
+	 * @param prefix	What the user has typed so far
+	 * @return	The suggested tag types
+	 */
+	public List<String> suggestTagTypes(String prefix)
+	{
+		List<String> suggestions = tagIndex.suggestTagTypes(prefix, SuggestionTrie.maxSuggestions);
+		
+		for (int i = 0; i < tagTypes.size() && suggestions.size() < SuggestionTrie.maxSuggestions; i++)
+		{
+			String tagType = tagTypes.get(i);
 			
-			for (int j = 0; j < currentAlbum.getPhotos().size(); j++)
+			if (tagType.regionMatches(true, 0, prefix, 0, prefix.length()) && !containsIgnoreCase(suggestions, tagType))
 			{
-				Photo currentPhoto = currentAlbum.getPhotos().get(j);
-				
-				if (currentPhoto.getPhotoPath().equals(photoPath))
-				{
-					if (currentPhoto.checkIfTagExists(tagType, tagValue))
-					{
-						break;
-					}
-					currentPhoto.addTag(tagType, tagValue);
-					break;
-				}
+				suggestions.add(tagType);
 			}
 		}
+		
+		return suggestions;
 	}
 	
 	/**
-	 * Whenever a tag is removed from a photo, this method will be called to see if there are copies
-	 * of this photo across other albums. This is checked using the path of the photo since each photo will
-	 * have a unique path. If there is a match, the tag will also be removed from that photo in the other album.
+	 * Suggests tag values that start with what the user has typed, the values used by the most photos first.
+	 * If no photo has a tag of the given type yet, values of every type are suggested.
 	 * 
-	 * @param photoPath	Path of the photo, used to identify if the same photo is in another album
-	 * @param albumThatWasAlteredFirst	First album that has the photo that has the tag added
-	 * @param tagType	The type of the tag, such as location
-	 * @param tagValue	The value of the tag, such as the name of a person
+	 * @param tagType	Type of the tag being typed, or null or empty if it is not known
+	 * @param prefix	What the user has typed so far
+	 * @return	The suggested tag values
 	 */
-	public void makeChangesToPhotoAcrossAllAlbumsRemoveTag(String photoPath, String albumThatWasAlteredFirst,
-			String tagType, String tagValue)
+	public List<String> suggestTagValues(String tagType, String prefix)
 	{
-		for (int i = 0; i < albumList.size(); i++)
+		if (tagType != null && !tagType.trim().isEmpty())
 		{
-			Album currentAlbum = albumList.get(i);
+			List<String> suggestions = tagIndex.suggestTagValues(tagType.trim(), prefix, SuggestionTrie.maxSuggestions);
 			
-			// This is the album that was already changed. No need to change it again.
-			if (currentAlbum.getAlbumName().equalsIgnoreCase(albumThatWasAlteredFirst))
+			if (!suggestions.isEmpty())
 			{
-				continue;
+				return suggestions;
 			}
-			
-			for (int j = 0; j < currentAlbum.getPhotos().size(); j++)
+		}
+		
+		return tagIndex.suggestTagValues(null, prefix, SuggestionTrie.maxSuggestions);
+	}
+	
+	/**
+	 * Returns the index of the user's tags, so searches can combine the sets of photos it returns
+	 * 
+	 * @return	The tag index
+	 */
+	public TagIndex getTagIndex()
+	{
+		return tagIndex;
+	}
+	
+	/**
+	 * Returns the photos with the given ids, in the order of their ids
+	 * 
+	 * @param photoIds	Ids of the photos
+	 * @return	The photos
+	 */
+	public List<Photo> getPhotos(BitSet photoIds)
+	{
+		List<Photo> photos = new ArrayList<Photo>(photoIds.cardinality());
+		
+		for (int id = photoIds.nextSetBit(0); id >= 0; id = photoIds.nextSetBit(id + 1))
+		{
+			photos.add(photosById.get(id));
+		}
+		
+		return photos;
+	}
+	
+	/**
+	 * Returns the ids of the photos that have the tag pair, or a tag pair with a value close to it
+	 * 
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 * @param fuzzy	True to also find tag values with small typos
+	 * @return	Ids of the photos with the tag
+	 */
+	private BitSet photosWithTag(String tagType, String tagValue, boolean fuzzy)
+	{
+		if (fuzzy)
+		{
+			return tagIndex.photosWithSimilarTag(tagType, tagValue, fuzzyEdits(tagValue));
+		}
+		
+		return tagIndex.photosWithTag(tagType, tagValue);
+	}
+	
+	/**
+	 * Checks to see if a list has a word, ignoring case
+	 * 
+	 * @param words	The list
+	 * @param word	The word
+	 * @return	True if the list has the word, false otherwise
+	 */
+	private static boolean containsIgnoreCase(List<String> words, String word)
+	{
+		for (String listWord: words)
+		{
+			if (listWord.equalsIgnoreCase(word))
 			{
-				Photo currentPhoto = currentAlbum.getPhotos().get(j);
-				
-				if (currentPhoto.getPhotoPath().equals(photoPath))
-				{
-					if (!currentPhoto.checkIfTagExists(tagType, tagValue))
-					{
-						break;
-					}
-					currentPhoto.removeTag(tagType, tagValue);
-					break;
-				}
+				return true;
 			}
 		}
+		
+		return false;
+	}
+	
+	/**
+	 * Adds a new photo to the registry and gives it an id. If a photo with the same path was removed from
+	 * every album, the new photo replaces it and takes its id, so adding a photo again does not use up another id.
+	 * 
+	 * @param photo	The new photo
+	 */
+	private void registerPhoto(Photo photo)
+	{
+		Photo oldPhoto = photoRegistry.put(photo.getPhotoPath(), photo);
+		
+		if (oldPhoto != null)
+		{
+			photo.setOwner(this, oldPhoto.getPhotoId());
+			photosById.set(oldPhoto.getPhotoId(), photo);
+			return;
+		}
+		
+		photo.setOwner(this, photosById.size());
+		photosById.add(photo);
+	}
+	
+	/**
+	 * Called by Photo when it is added to its first album, so its tags, date and caption can be found by searches
+	 * 
+	 * @param photo	The photo that was added
+	 */
+	void photoAddedToAlbums(Photo photo)
+	{
+		for (Tag tag: photo.getTagList())
+		{
+			tagIndex.addTag(photo.getPhotoId(), tag.getTagType(), tag.getTagValue());
+		}
+		
+		dateIndex.addPhoto(photo.getPhotoId(), photo.getEpochDay());
+		captionIndex.addPhoto(photo.getPhotoId(), photo.getPhotoCaption());
+	}
+	
+	/**
+	 * Called by Photo when its caption is changed
+	 * 
+	 * @param photo	The photo
+	 */
+	void captionChanged(Photo photo)
+	{
+		captionIndex.addPhoto(photo.getPhotoId(), photo.getPhotoCaption());
 	}
 	
 	/**
-	 * Whenever a photo's caption is changed, this method will be called to see if there are copies
-	 * of this photo across other albums. This is checked using the path of the photo since each photo will
-	 * have a unique path. If there is a match, the caption for the photo in the other album will also be changed.
+	 * Called by Photo when it is removed from its last album, so searches no longer find it
 	 * 
-	 * @param photoPath	Path of the photo, used to identify if the same photo is in another album
-	 * @param albumThatWasAlteredFirst	First album that has the photo that has the tag added
-	 * @param caption	The new caption of the photo
+	 * @param photo	The photo that was removed
 	 */
-	public void makeChangesToPhotoAcrossAllAlbumsChangeCaption(String photoPath, String albumThatWasAlteredFirst,
-			String caption)
+	void photoRemovedFromAlbums(Photo photo)
 	{
+		for (Tag tag: photo.getTagList())
+		{
+			tagIndex.removeTag(photo.getPhotoId(), tag.getTagType(), tag.getTagValue());
+		}
+		
+		dateIndex.removePhoto(photo.getPhotoId());
+		captionIndex.removePhoto(photo.getPhotoId());
+	}
+	
+	/**
+	 * Returns the dictionary of the user's tags, which the user's photos store the ids of their tags in
+	 * 
+	 * @return	The tag pool
+	 */
+	TagPool getTagPool()
+	{
+		return tagPool;
+	}
+	
+	/**
+	 * Called by Photo when a tag is added to it
+	 * 
+	 * @param photo	The photo
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 */
+	void tagAdded(Photo photo, String tagType, String tagValue)
+	{
+		tagIndex.addTag(photo.getPhotoId(), tagType, tagValue);
+	}
+	
+	/**
+	 * Called by Photo when a tag is removed from it
+	 * 
+	 * @param photo	The photo
+	 * @param tagType	Type of the tag
+	 * @param tagValue	Value of the tag
+	 */
+	void tagRemoved(Photo photo, String tagType, String tagValue)
+	{
+		tagIndex.removeTag(photo.getPhotoId(), tagType, tagValue);
+	}
+	
+	/**
+	 * Reads the user from the save data. Users saved before there was a photo registry
+	 * may have a separate copy of the same photo in each album, so the registry is built here
+	 * and every album is pointed at one copy of each photo.
+	 * 
+	 * @param in	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		in.defaultReadObject();
+		
+		if (photoRegistry == null)
+		{
+			buildPhotoRegistry();
+		}
+		
+		indexPhotos();
+	}
+	
+	/**
+	 * Writes the user to the save data. Photos that were removed from every album are left out.
+	 * 
+	 * @param out	Stream of the save data
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException
+	{
+		// The photos stay in the registry in memory, so a photo added again takes the id it had
+		Map<String, Photo> allPhotos = photoRegistry;
+		photoRegistry = new HashMap<String, Photo>(allPhotos);
+		photoRegistry.values().removeIf(photo -> !photo.isInAnAlbum());
+		
+		try
+		{
+			out.defaultWriteObject();
+		}
+		finally
+		{
+			photoRegistry = allPhotos;
+		}
+	}
+	
+	/**
+	 * Builds the photo registry from the photos in the albums.
+	 * The first copy of each path is kept, and any other copy is replaced by it.
+	 */
+	private void buildPhotoRegistry()
+	{
+		photoRegistry = new HashMap<String, Photo>();
+		
 		for (int i = 0; i < albumList.size(); i++)
 		{
-			Album currentAlbum = albumList.get(i);
-			
-			// This is the album that was already changed. No need to change it again.
-			if (currentAlbum.getAlbumName().equalsIgnoreCase(albumThatWasAlteredFirst))
-			{
-				continue;
-			}
+			Album album = albumList.get(i);
+			List<Photo> photos = album.getPhotos();
 			
-			for (int j = 0; j < currentAlbum.getPhotos().size(); j++)
+			for (int j = 0; j < photos.size(); j++)
 			{
-				Photo currentPhoto = currentAlbum.getPhotos().get(j);
-				if (currentPhoto.getPhotoPath().equals(photoPath))
+				Photo photo = photos.get(j);
+				Photo registeredPhoto = photoRegistry.get(photo.getPhotoPath());
+				
+				if (registeredPhoto == null)
 				{
-					currentPhoto.changePhotoCaption(caption);
-					break;
+					registeredPhoto = photo;
+					registeredPhoto.resetAlbumCount();
+					photoRegistry.put(photo.getPhotoPath(), registeredPhoto);
 				}
+				else if (registeredPhoto != photo)
+				{
+					album.replacePhoto(j, registeredPhoto);
+				}
+				
+				registeredPhoto.addedToAlbum();
 			}
 		}
 	}
 	
 	/**
-	 * This method is used when a new photo is added to an album.
-	 * It checks to see if the same photo is another album.
-	 * If there is a match, checked by seeing if the photoPath is the same, 
-	 * the tags and caption from the photo that is found is added to the photo
-	 * that was uploaded.
-	 * 
-	 * @param photoToCheck	The new photo that was added
-	 * @param albumPhotoWasAddedTo	The album that the photo was added to
+	 * Gives every photo in the registry an id and builds the indexes, since they are not part of the save data
 	 */
-	public void checkIfNewPhotoIsInAnotherAlbum(Photo photoToCheck, String albumPhotoWasAddedTo)
+	private void indexPhotos()
 	{
-		for (int i = 0; i < albumList.size(); i++)
+		photosById = new ArrayList<Photo>();
+		tagIndex = new TagIndex();
+		dateIndex = new DateIndex();
+		captionIndex = new CaptionIndex();
+		tagPool = new TagPool();
+		
+		for (Photo photo: photoRegistry.values())
 		{
-			Album currentAlbum = albumList.get(i);
+			photo.setOwner(this, photosById.size());
+			photosById.add(photo);
 			
-			// This is the album that the photo was added to. No need to check it.
-			if (currentAlbum.getAlbumName().equalsIgnoreCase(albumPhotoWasAddedTo))
+			if (photo.isInAnAlbum())
 			{
-				continue;
-			}
-			
-			for (int j = 0; j < currentAlbum.getPhotos().size(); j++)
-			{
-				Photo currentPhoto = currentAlbum.getPhotos().get(j);
-				
-				if (currentPhoto.getPhotoPath().equals(photoToCheck.getPhotoPath()))
-				{
-					List<Tag> tagsToAdd = currentPhoto.getTagList();
-					String captionToSet = currentPhoto.getPhotoCaption();
-					
-					for (int k = 0; k < tagsToAdd.size(); k++)
-					{
-						photoToCheck.addTag(tagsToAdd.get(k).getTagType(), tagsToAdd.get(k).getTagValue());
-					}
-					
-					photoToCheck.changePhotoCaption(captionToSet);
-					
-					return;
-				}
+				photoAddedToAlbums(photo);
 			}
 		}
 	}
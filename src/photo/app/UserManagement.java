@@ -1,5 +1,7 @@
 package photo.app;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -7,115 +9,201 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class will be responsible for keeping track of all of the users.
  * Each user will contain all of their photos and data.
- * 
+ *
+ * The save data is split into a small index of user names and one file per user.
+ * Only the index is read at startup, and a user's file is only read the first time that user is needed.
+ *
  * @author Amit Patel, Hideyo Sakamoto
  *
  */
 
 public class UserManagement implements Serializable{
-	
+
 	/**
 	 * The serial ID
 	 */
 	private static final long serialVersionUID = -9080366602999037531L;
-	
+
 	/**
 	 * Storage directory of user list
 	 */
 	public static final String storeDir = "dat";
-	
+
 	/**
-	 * File that stores all of the Users and their data
+	 * File that stores the index of all of the users
 	 */
-	public static final String storeFile = "users.dat";
-	
+	public static final String storeFile = "users.idx";
+
 	/**
-	 * Keeps track of all of the users
+	 * File that stored all of the Users and their data before each user had their own file.
+	 * It is only read once to move the users into their own files.
 	 */
-	public List<User> allUsersList;
-	
+	public static final String legacyStoreFile = "users.dat";
+
 	/**
-	 * Keeps track of the current user
+	 * Directory inside storeDir that holds one file per user
 	 */
-	public User currentUser;
-	
+	public static final String userDir = "users";
+
 	/**
-	 * Keeps track of the current album the current user is editing
+	 * Only used to read the legacy save file, which kept every user in this list
 	 */
-	public Album currentAlbum;
-	
+	private List<User> allUsersList;
+
 	/**
-	 * Keeps track of the current photo the current user is looking at
+	 * Maps the name of every user to the number of the file that holds their data
 	 */
-	public Photo currentPhoto;
-	
+	private LinkedHashMap<String, Integer> userFiles;
+
 	/**
-	 * After a search is done, the search results are saved so that user can create
-	 * an album from it if they choose to.
+	 * Number of the file that will be given to the next new user
 	 */
-	public List<Photo> photoSearchResults;
-	
+	private int nextUserFile;
+
+	/**
+	 * Users whose files have been read so far, by file number
+	 */
+	private transient Map<Integer, User> loadedUsers;
+
+	/**
+	 * Changes made since the last save, by file number. They are appended to each user's journal by writeApp.
+	 */
+	private transient Map<Integer, List<JournalEntry>> pendingChanges;
+
+	/**
+	 * Files of users that were added since the last save and need to be written in full
+	 */
+	private transient Set<Integer> addedUserFiles;
+
+	/**
+	 * Files of users that were deleted since the last save and need to be removed
+	 */
+	private transient Set<Integer> deletedUserFiles;
+
+	/**
+	 * True if users were added or deleted since the last save, so the index needs to be written
+	 */
+	private transient boolean indexChanged;
+
+	/**
+	 * Keeps each user's file as a snapshot plus a journal of changes, by file number.
+	 * The journals are shared by every UserManagement read in this session.
+	 */
+	private static final Map<Integer, ChangeJournal> journals = new HashMap<Integer, ChangeJournal>();
+
 	/**
 	 * Constructor for UserManagement
 	 */
 	public UserManagement()
 	{
-		allUsersList = new ArrayList<User>();
-		currentUser = null;
-		currentAlbum = null;
-		photoSearchResults = new ArrayList<Photo>();
+		userFiles = new LinkedHashMap<String, Integer>();
+		nextUserFile = 0;
+		initTransientFields();
+	}
+
+	/**
+	 * Sets up the fields that are not saved. They are null after the index is read.
+	 */
+	private void initTransientFields()
+	{
+		loadedUsers = new HashMap<Integer, User>();
+		pendingChanges = new HashMap<Integer, List<JournalEntry>>();
+		addedUserFiles = new HashSet<Integer>();
+		deletedUserFiles = new HashSet<Integer>();
+		indexChanged = false;
+	}
+
+	/**
+	 * Records a change that was made so that it is saved the next time writeApp is called.
+	 * Every change to a user's data needs to be recorded, otherwise it is lost when the data is read again.
+	 *
+	 * @param type	The kind of change
+	 * @param args	The arguments of the change. The first one is always the name of the user.
+	 */
+	public void recordChange(JournalEntry.Type type, String... args)
+	{
+		recordChange(new JournalEntry(type, args));
 	}
 	
+	/**
+	 * Records a change that was made so that it is saved the next time writeApp is called,
+	 * such as one made by JournalEntry.addPhotos
+	 *
+	 * @param change	The change
+	 */
+	public void recordChange(JournalEntry change)
+	{
+		Integer fileNumber = findUserFile(change.getUserName());
+
+		if (fileNumber == null)
+		{
+			return;
+		}
+
+		List<JournalEntry> changes = pendingChanges.get(fileNumber);
+
+		if (changes == null)
+		{
+			changes = new ArrayList<JournalEntry>();
+			pendingChanges.put(fileNumber, changes);
+		}
+
+		changes.add(change);
+	}
+
 	/**
 	 * Allows new users to be added to the list of Users
-	 * 
+	 *
 	 * @param userToAdd	New User to add to the list
 	 */
 	public void addUser(User userToAdd)
 	{
-		allUsersList.add(userToAdd);
+		int fileNumber = nextUserFile++;
+
+		userFiles.put(userToAdd.getUserName(), fileNumber);
+		loadedUsers.put(fileNumber, userToAdd);
+		addedUserFiles.add(fileNumber);
+		indexChanged = true;
 	}
-	
+
 	/**
-	 * Checks to see if the stock username is present in the list of users. 
+	 * Checks to see if the stock username is present in the list of users.
 	 * If it is not, it is added back into the list of users and the stock photos are also added.
 	 */
 	public void checkIfStockIsPresent()
 	{
-		boolean stockPresent = false;
-		
-		for (int i = 0; i < allUsersList.size(); i++)
-		{
-			String userName = allUsersList.get(i).getUserName();
-			
-			if (userName.equals("stock"))
-			{
-				stockPresent = true;
-			}
-		}
-		
+		boolean stockPresent = userFiles.containsKey("stock");
+
 		if (!stockPresent)
 		{
 			User stockUser = new User("stock");
-			
+
 			Album stockAlbum = new Album("stock");
-			
-			Photo photo1 = new Photo("data/photo1.jpg");
-			Photo photo2 = new Photo("data/photo2.jpg");
-			Photo photo3 = new Photo("data/photo3.jpg");
-			Photo photo4 = new Photo("data/photo4.jpg");
-			Photo photo5 = new Photo("data/photo5.jpg");
-			Photo photo6 = new Photo("data/photo6.jpg");
-			Photo photo7 = new Photo("data/photo7.jpg");
-			Photo photo8 = new Photo("data/photo8.jpg");
-			Photo photo9 = new Photo("data/photo9.jpg");
-			
+
+			Photo photo1 = stockUser.getOrCreatePhoto("data/photo1.jpg");
+			Photo photo2 = stockUser.getOrCreatePhoto("data/photo2.jpg");
+			Photo photo3 = stockUser.getOrCreatePhoto("data/photo3.jpg");
+			Photo photo4 = stockUser.getOrCreatePhoto("data/photo4.jpg");
+			Photo photo5 = stockUser.getOrCreatePhoto("data/photo5.jpg");
+			Photo photo6 = stockUser.getOrCreatePhoto("data/photo6.jpg");
+			Photo photo7 = stockUser.getOrCreatePhoto("data/photo7.jpg");
+			Photo photo8 = stockUser.getOrCreatePhoto("data/photo8.jpg");
+			Photo photo9 = stockUser.getOrCreatePhoto("data/photo9.jpg");
+
 			stockAlbum.addPhoto(photo1);
 			stockAlbum.addPhoto(photo2);
 			stockAlbum.addPhoto(photo3);
@@ -125,71 +213,114 @@ public class UserManagement implements Serializable{
 			stockAlbum.addPhoto(photo7);
 			stockAlbum.addPhoto(photo8);
 			stockAlbum.addPhoto(photo9);
-			
+
 			stockUser.addAlbum(stockAlbum);
-			
-			allUsersList.add(stockUser);
+
+			addUser(stockUser);
 		}
 	}
-	
+
 	/**
 	 * Returns the size of the List
-	 * 
+	 *
 	 * @return size of the List
 	 */
 	public int getSize() {
-		return allUsersList.size();
+		return userFiles.size();
 	}
-	
+
 	/**
 	 * Deletes the given user as a parameter
-	 * 
+	 *
 	 * @param userToDelete	Name of user to delete
 	 */
 	public void deleteUser(String userToDelete) {
-		
-		for (int i = 0; i < allUsersList.size(); i++)
+
+		Integer fileNumber = userFiles.remove(userToDelete);
+
+		if (fileNumber == null)
 		{
-			if (allUsersList.get(i).getUserName().equals(userToDelete))
+			return;
+		}
+
+		loadedUsers.remove(fileNumber);
+		pendingChanges.remove(fileNumber);
+		indexChanged = true;
+
+		// A user that was never saved has no file to remove
+		if (!addedUserFiles.remove(fileNumber))
+		{
+			deletedUserFiles.add(fileNumber);
+		}
+	}
+
+	/**
+	 * Gets the User by username. The user's file is read the first time the user is needed.
+	 *
+	 * @param userName	The name of the user
+	 * @return	The User
+	 * @throws IOException	If the user's file cannot be read
+	 */
+	public User getUser(String userName) throws IOException
+	{
+		Integer fileNumber = findUserFile(userName);
+
+		if (fileNumber == null)
+		{
+			return null;
+		}
+
+		User user = loadedUsers.get(fileNumber);
+
+		if (user == null)
+		{
+			try
+			{
+				user = getJournal(fileNumber).load();
+			}
+			catch (ClassNotFoundException e)
 			{
-				allUsersList.remove(i);
-				break;
+				throw new IOException(e);
 			}
+
+			loadedUsers.put(fileNumber, user);
 		}
+
+		return user;
 	}
-	
+
 	/**
-	 * Gets the User by username
-	 * 
+	 * Finds the number of the file that holds the data of the given user
+	 *
 	 * @param userName	The name of the user
-	 * @return	The User
+	 * @return	The file number, or null if there is no such user
 	 */
-	public User getUser(String userName)
+	private Integer findUserFile(String userName)
 	{
-		for (int i = 0; i < allUsersList.size(); i++)
+		for (Map.Entry<String, Integer> entry: userFiles.entrySet())
 		{
-			if (allUsersList.get(i).getUserName().equalsIgnoreCase(userName))
+			if (entry.getKey().equalsIgnoreCase(userName))
 			{
-				return allUsersList.get(i);
+				return entry.getValue();
 			}
 		}
-		
+
 		return null;
 	}
-	
+
 	/**
-	 * Returns the list of users that are currently present in the ArrayList
-	 * 
-	 * @return	The ArrayList of all of the users
+	 * Returns the names of all of the users. No user files are read.
+	 *
+	 * @return	The list of user names
 	 */
-	public List<User> getListOfUsers()
+	public List<String> getUserNames()
 	{
-		return allUsersList;
+		return new ArrayList<String>(userFiles.keySet());
 	}
-	
+
 	/**
 	 * Checks to see if the new username is already taken
-	 * 
+	 *
 	 * @param name	New username
 	 * @return	True if the username is already in the list, false otherwise
 	 */
@@ -199,45 +330,192 @@ public class UserManagement implements Serializable{
 		{
 			return true;
 		}
-		
-		for (int i = 0; i < allUsersList.size(); i++)
-		{
-			if (allUsersList.get(i).getUserName().equalsIgnoreCase(name))
-			{
-				return true;
-			}
-		}
-		
-		return false;
+
+		return findUserFile(name) != null;
 	}
-	
+
+	/**
+	 * Checks to see if there is any save data yet
+	 *
+	 * @return	True if the index or the legacy save file exists, false otherwise
+	 */
+	public static boolean saveDataExists()
+	{
+		return new File(storeDir, storeFile).exists() || new File(storeDir, legacyStoreFile).exists();
+	}
+
 	/**
 	 * This method will be used when the user logouts or closes the program,
 	 * This will allow us to save changes the user made between sessions.
-	 * 
+	 * Only the files of users that changed are touched. New users are written in full,
+	 * and the changes of existing users are appended to their journal.
+	 * Each user's changes are forgotten as soon as they are written, so if saving fails partway,
+	 * the next save only writes what is still left.
+	 *
 	 * @param userList	Instance of the UserManagement class, which handles all of the data for all Users
 	 * @throws IOException	Any exceptions encountered
 	 */
 	public static void writeApp(UserManagement userList) throws IOException
 	{
-		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(storeDir + File.separator + storeFile));
-		oos.writeObject(userList);
-		oos.close();
+		Iterator<Integer> addedFiles = userList.addedUserFiles.iterator();
+		
+		while (addedFiles.hasNext())
+		{
+			Integer fileNumber = addedFiles.next();
+			userList.getJournal(fileNumber).writeSnapshot(userList.loadedUsers.get(fileNumber));
+			userList.pendingChanges.remove(fileNumber);
+			addedFiles.remove();
+		}
+
+		Iterator<Map.Entry<Integer, List<JournalEntry>>> changedFiles = userList.pendingChanges.entrySet().iterator();
+		
+		while (changedFiles.hasNext())
+		{
+			Map.Entry<Integer, List<JournalEntry>> entry = changedFiles.next();
+			userList.getJournal(entry.getKey()).append(entry.getValue());
+			changedFiles.remove();
+		}
+
+		if (userList.indexChanged)
+		{
+			userList.writeIndex();
+			userList.indexChanged = false;
+		}
+
+		Iterator<Integer> deletedFiles = userList.deletedUserFiles.iterator();
+		
+		while (deletedFiles.hasNext())
+		{
+			Integer fileNumber = deletedFiles.next();
+			userList.getJournal(fileNumber).delete();
+
+			synchronized (journals)
+			{
+				journals.remove(fileNumber);
+			}
+
+			deletedFiles.remove();
+		}
 	}
-	
+
 	/**
 	 * This method will be used to read the save data for the list of users.
 	 * This will allow us to keep any changes for all users inbetween sessions.
-	 * 
+	 * Only the index is read. Each user's file is read the first time that user is needed.
+	 * It is called once per run by Session, which shares the result with every window.
+	 *
 	 * @return	The instance of UserManagement, which holds the list of users
 	 * @throws IOException	Any exceptions encounters
 	 * @throws ClassNotFoundException	If the class is not found
 	 */
 	public static UserManagement readApp() throws IOException, ClassNotFoundException
 	{
-		@SuppressWarnings("resource")
-		ObjectInputStream ois = new ObjectInputStream(new FileInputStream(storeDir + File.separator + storeFile));
-		UserManagement userList = (UserManagement) ois.readObject();
+		File indexFile = new File(storeDir, storeFile);
+
+		if (!indexFile.exists())
+		{
+			return migrateLegacyStoreFile();
+		}
+
+		UserManagement userList = (UserManagement) readObject(indexFile);
+		userList.initTransientFields();
+
+		return userList;
+	}
+
+	/**
+	 * Writes the index, which holds the user names and the numbers of their files.
+	 *
+	 * @throws IOException	Any exceptions encountered
+	 */
+	private void writeIndex() throws IOException
+	{
+		File directory = new File(storeDir);
+		directory.mkdirs();
+		File tempFile = new File(directory, storeFile + ".tmp");
+
+		ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try
+		{
+			oos.writeObject(this);
+		}
+		finally
+		{
+			oos.close();
+		}
+
+		Files.move(tempFile.toPath(), new File(directory, storeFile).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the legacy save file, which held every user, and moves each user into their own file.
+	 *
+	 * @return	The instance of UserManagement, which holds the list of users
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	private static UserManagement migrateLegacyStoreFile() throws IOException, ClassNotFoundException
+	{
+		File legacyFile = new File(storeDir, legacyStoreFile);
+		UserManagement legacy = (UserManagement) readObject(legacyFile);
+
+		UserManagement userList = new UserManagement();
+
+		if (legacy.allUsersList != null)
+		{
+			for (User user: legacy.allUsersList)
+			{
+				userList.addUser(user);
+			}
+		}
+
+		writeApp(userList);
+		legacyFile.delete();
+
 		return userList;
 	}
+
+	/**
+	 * Reads a single object from the given file
+	 *
+	 * @param file	The file to read
+	 * @return	The object that was read
+	 * @throws IOException	Any exceptions encountered
+	 * @throws ClassNotFoundException	If the class is not found
+	 */
+	private static Object readObject(File file) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			return ois.readObject();
+		}
+		finally
+		{
+			ois.close();
+		}
+	}
+
+	/**
+	 * Returns the journal that keeps the file of the given user
+	 *
+	 * @param fileNumber	The number of the user's file
+	 * @return	The journal
+	 */
+	private ChangeJournal getJournal(int fileNumber)
+	{
+		synchronized (journals)
+		{
+			ChangeJournal journal = journals.get(fileNumber);
+
+			if (journal == null)
+			{
+				journal = new ChangeJournal(storeDir + File.separator + userDir, "user" + fileNumber + ".dat");
+				journals.put(fileNumber, journal);
+			}
+
+			return journal;
+		}
+	}
 }
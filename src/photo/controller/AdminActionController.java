@@ -23,6 +23,7 @@ import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.util.Callback;
 import photo.app.Album;
+import photo.app.Session;
 import photo.app.User;
 import photo.app.UserManagement;
 
@@ -81,7 +82,7 @@ public class AdminActionController {
      * list of users 
      */
     @FXML
-    private ListView<User> myListView;
+    private ListView<String> myListView;
     
     /**
      * Holds the list of users
@@ -101,7 +102,7 @@ public class AdminActionController {
     /**
      * Used to populate the list of users
      */
-    private ObservableList<User> observList = FXCollections.observableArrayList();
+    private ObservableList<String> observList = FXCollections.observableArrayList();
     
     /**
      * The primary stage
@@ -118,8 +119,8 @@ public class AdminActionController {
     public void start(Stage primarystage) throws ClassNotFoundException, IOException {
     	this.primarystage = primarystage;
     	
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
+    	// Get the data shared by all windows
+    	userManager = Session.get().getUserManager();
     }
     
     /**
@@ -132,14 +133,14 @@ public class AdminActionController {
     	String newUserName = userNameTextField.getText();
 
     	// checks if the name is already taken
-    	if(userManager.allUsersList.size() == 0) {
+    	if(userManager.getSize() == 0) {
     		newUser = new User(newUserName);
     		userManager.addUser(newUser);
     		showText.setText("User added");
     	}
     	
-    	for(User user: userManager.allUsersList) {
-    		if(newUserName.equals(user.getUserName())) {
+    	for(String userName: userManager.getUserNames()) {
+    		if(newUserName.equals(userName)) {
     			showText.setText("Name already taken");
     			is_name_taken = true;
     		}
@@ -172,9 +173,9 @@ public class AdminActionController {
     void deleteUserAction(ActionEvent event) throws IOException {
     	String deletingUserName = userNameTextField.getText();
     	
-    	for(int i = 0; i < userManager.allUsersList.size(); i++) {
-    		if(userManager.allUsersList.get(i).getUserName().equalsIgnoreCase(deletingUserName)) {
-    			userManager.deleteUser(deletingUserName);
+    	for(String userName: userManager.getUserNames()) {
+    		if(userName.equalsIgnoreCase(deletingUserName)) {
+    			userManager.deleteUser(userName);
     			UserManagement.writeApp(userManager);
     			showText.setText("Deleted");
     	    	// Reset list
@@ -193,7 +194,7 @@ public class AdminActionController {
      */
     @FXML
     public void listuserAction(ActionEvent event) {
-    	List<User> users = userManager.getListOfUsers();
+    	List<String> users = userManager.getUserNames();
     	
     	if (users.size() == 0)
     	{
@@ -234,14 +235,14 @@ public class AdminActionController {
      */
     public void highlightUserList(MouseEvent event)
     {
-    	User userName = (User) myListView.getSelectionModel().getSelectedItem();
+    	String userName = myListView.getSelectionModel().getSelectedItem();
     	
     	if (userName == null)
     	{
     		return;
     	}
     	
-    	userNameTextField.setText(userName.getUserName());
+    	userNameTextField.setText(userName);
     }
 
     /**
@@ -263,8 +264,8 @@ public class AdminActionController {
     @FXML
     void initialize() throws ClassNotFoundException, IOException {
     	
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
+    	// Get the data shared by all windows
+    	userManager = Session.get().getUserManager();
     	
         assert listUserButton != null : "fx:id=\"listUserButton\" was not injected: check your FXML file 'AdminAction.fxml'.";
         assert logoutButton != null : "fx:id=\"logoutButton\" was not injected: check your FXML file 'AdminAction.fxml'.";
@@ -1,18 +1,20 @@
 package photo.controller;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -23,14 +25,18 @@ import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.text.Text;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 import photo.app.Album;
+import photo.app.JournalEntry;
 import photo.app.Photo;
+import photo.app.PhotoImporter;
+import photo.app.Session;
 import photo.app.User;
 import photo.app.UserManagement;
 
@@ -68,6 +74,18 @@ public class AlbumController {
     @FXML
     private Button addButton;
     
+    /*
+     * button to import every picture in a folder and its subfolders
+     */
+    @FXML
+    private Button importFolderButton;
+    
+    /*
+     * button to stop importing a folder
+     */
+    @FXML
+    private Button cancelImportButton;
+    
     /*
      *button to remove picture 
      */
@@ -107,13 +125,13 @@ public class AlbumController {
      * ListView that will show thumbanisl and its caption when clicked on
      */
     @FXML
-    private ListView<ImageView> photosAndCaptionsTable;
+    private ListView<Photo> photosAndCaptionsTable;
     
     /**
      * ObservableList that will help us build the ListView table
      */
     @FXML
-    private ObservableList<ImageView> tableBuilder;
+    private ObservableList<Photo> tableBuilder;
 
     /*
      * button to go to previous page
@@ -143,6 +161,11 @@ public class AlbumController {
      */
     private UserManagement userManager;
     
+    /**
+     * Keeps track of what the user is currently looking at, shared by all windows
+     */
+    private Session session;
+    
     /**
      * Keeps track of the selected album
      */
@@ -220,11 +243,29 @@ public class AlbumController {
     @FXML
     private Button removeTagTypeButton;
     
+    /**
+     * Imports the folder the user chose in this window, or null if this window is not importing a folder
+     */
+    private PhotoImporter photoImporter;
+    
+    /**
+     * Takes the photos the importer has read and adds them to the album a few times a second
+     */
+    private Timeline importTimeline;
+    
+    /**
+     * Number of photos added to the album by the current folder import
+     */
+    private int importedPhotoCount;
+    
     /**
      * Handles many of the actions that occur when a certain button is pressed.
      * When logoutButton is pressed, the user is logged out and the login window is opened.
      * When quitButton is pressed, the program exits.
-     * When addButton is pressed, the photo is added if it is not present in the current album.
+     * When addButton is pressed, the chosen photos are added if they are not present in the current album.
+     * When importFolderButton is pressed, every photo in the chosen folder and its subfolders is added in the background
+     * if it is not present in the current album.
+     * When cancelImportButton is pressed, the folder import is stopped. Photos already added are kept.
      * When removeButton is pressed, the selected photo is removed from the album.
      * When displaybutton is pressed, the selected photo is displayed in a new window along with its date, caption and tags
      * When addTagButton is pressed, the input tag pair is added to the selected photo if the combo is not already added
@@ -270,7 +311,7 @@ public class AlbumController {
     	
     	// add
     	if(event.getSource()==addButton) {
-    		// search picture and add to the album
+    		// search pictures and add them to the album
     		
             FileChooser fileChooser = new FileChooser();
             fileChooser.setTitle("Get image");
@@ -279,22 +320,50 @@ public class AlbumController {
             		new FileChooser.ExtensionFilter("PNG Files", "*.png"),
             		new FileChooser.ExtensionFilter("BMP Files", "*.bmp"), 
                     new FileChooser.ExtensionFilter("GIF Files", "*.gif"));
-            File selectedFile = fileChooser.showOpenDialog(null);
-            if (selectedFile == null)
+            List<File> selectedFiles = fileChooser.showOpenMultipleDialog(null);
+            if (selectedFiles == null)
             {
             	return;
             }
-            String filePath = selectedFile.getPath();
             
-            if (currentAlbum.isPhotoPathPresent(filePath))
+            if (!addPhotosToAlbum(selectedFiles))
             {
-            	showProblems.setText("Photo is already present in album");
             	return;
             }
-            
-            Photo photoToAdd = new Photo(filePath);
-            currentAlbum.addPhoto(photoToAdd);
-            currentUser.checkIfNewPhotoIsInAnotherAlbum(photoToAdd, currentAlbum.getAlbumName());
+    	}
+    	
+    	// import folder
+    	if(event.getSource()==importFolderButton) {
+    		// add every picture in the chosen folder and its subfolders to the album
+    		
+    		if (session.folderImport != null)
+    		{
+    			showProblems.setText("A folder is already being imported");
+    			return;
+    		}
+    		
+    		DirectoryChooser directoryChooser = new DirectoryChooser();
+    		directoryChooser.setTitle("Import folder");
+    		File selectedDirectory = directoryChooser.showDialog(null);
+    		if (selectedDirectory == null)
+    		{
+    			return;
+    		}
+    		
+    		startFolderImport(selectedDirectory);
+    		return;
+    	}
+    	
+    	// cancel import
+    	if(event.getSource()==cancelImportButton) {
+    		if (photoImporter == null)
+    		{
+    			return;
+    		}
+    		
+    		photoImporter.cancel();
+    		stopFolderImport();
+    		showProblems.setText("Import cancelled, " + importedPhotoCount + " photo(s) imported");
     	}
     	
     	
@@ -309,6 +378,8 @@ public class AlbumController {
     		
     		String photoPathToRemove = currentAlbum.getPhoto(selectedIndex).getPhotoPath();
     		currentAlbum.removePhoto(photoPathToRemove);
+    		userManager.recordChange(JournalEntry.Type.REMOVE_PHOTO, currentUser.getUserName(), 
+    				currentAlbum.getAlbumName(), photoPathToRemove);
     	}
     	
     	
@@ -323,8 +394,7 @@ public class AlbumController {
     		
     		Photo currentPhoto = currentAlbum.getPhoto(selectedIndex);
     		
-    		userManager.currentPhoto = currentPhoto;
-    		UserManagement.writeApp(userManager);
+    		session.currentPhoto = currentPhoto;
     		
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/OpenPhoto.fxml"));
     		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
@@ -369,8 +439,8 @@ public class AlbumController {
     		currentPhoto.addTag(tagType, tagValue);
     		showProblems.setText("Tag added");
     		
-    		currentUser.makeChangesToPhotoAcrossAllAlbumsAddTag(currentPhoto.getPhotoPath(), 
-    				currentAlbum.getAlbumName(), tagType, tagValue);
+    		userManager.recordChange(JournalEntry.Type.ADD_TAG, currentUser.getUserName(), 
+    				currentAlbum.getAlbumName(), currentPhoto.getPhotoPath(), tagType, tagValue);
     	}
     	
     	// Remove a tag
@@ -403,8 +473,8 @@ public class AlbumController {
     		currentPhoto.removeTag(tagType, tagValue);
     		showProblems.setText("Tag removed");
     		
-    		currentUser.makeChangesToPhotoAcrossAllAlbumsRemoveTag(currentPhoto.getPhotoPath(), 
-    				currentAlbum.getAlbumName(), tagType, tagValue);
+    		userManager.recordChange(JournalEntry.Type.REMOVE_TAG, currentUser.getUserName(), 
+    				currentAlbum.getAlbumName(), currentPhoto.getPhotoPath(), tagType, tagValue);
     	}
     	
     	// Copy photo to another album
@@ -441,6 +511,8 @@ public class AlbumController {
     		}
     		
     		currentUser.getAlbum(inputAlbumName).addPhoto(currentPhoto);
+    		userManager.recordChange(JournalEntry.Type.COPY_PHOTO, currentUser.getUserName(), 
+    				currentPhoto.getPhotoPath(), inputAlbumName);
     	}
     	
     	// Move photo to another album
@@ -478,6 +550,8 @@ public class AlbumController {
     		
     		currentUser.getAlbum(inputAlbumName).addPhoto(currentPhoto);
     		currentAlbum.removePhoto(currentPhoto.getPhotoPath());
+    		userManager.recordChange(JournalEntry.Type.MOVE_PHOTO, currentUser.getUserName(), 
+    				currentAlbum.getAlbumName(), currentPhoto.getPhotoPath(), inputAlbumName);
     	}
     	
     	// Show slideshow of photos in the current album
@@ -490,8 +564,6 @@ public class AlbumController {
     			return;
     		}
     		
-    		UserManagement.writeApp(userManager);
-    		
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/SlideshowPhotos.fxml"));
     		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
     		Scene scene = new Scene(root);
@@ -518,6 +590,7 @@ public class AlbumController {
     		}
     		
     		currentUser.addNewTagTypeIfNotInList(tagTypeToAdd);
+    		userManager.recordChange(JournalEntry.Type.ADD_TAG_TYPE, currentUser.getUserName(), tagTypeToAdd);
     		showProblems.setText("Tag Type added to list");
     		
     		populateComboBox();
@@ -542,6 +615,7 @@ public class AlbumController {
     		}
     		
     		currentUser.removeTagTypeFromList(tagTypeToRemove);
+    		userManager.recordChange(JournalEntry.Type.REMOVE_TAG_TYPE, currentUser.getUserName(), tagTypeToRemove);
     		showProblems.setText("Tag Type removed from list");
     		
     		populateComboBox();
@@ -553,6 +627,165 @@ public class AlbumController {
     	populateListView();
     }
     
+    /**
+     * Adds the chosen photo files to the current album in one batch.
+     * The whole batch is recorded as a single change, so it is only saved once.
+     * 
+     * @param selectedFiles	The photo files that were chosen
+     * @return	True if at least one photo was added, false otherwise
+     */
+    private boolean addPhotosToAlbum(List<File> selectedFiles)
+    {
+    	List<String> photoPaths = new ArrayList<String>();
+    	for (File selectedFile: selectedFiles)
+    	{
+    		photoPaths.add(selectedFile.getPath());
+    	}
+    	
+    	// If a photo is already in another album, the same photo is added so it keeps its tags and caption
+    	List<Photo> addedPhotos = currentUser.addPhotosToAlbum(currentAlbum, photoPaths);
+    	
+    	if (addedPhotos.isEmpty())
+    	{
+    		showProblems.setText(selectedFiles.size() == 1 ? "Photo is already present in album" 
+    				: "All of the photos are already present in album");
+    		return false;
+    	}
+    	
+    	recordAddedPhotos(addedPhotos);
+    	
+    	int skipped = selectedFiles.size() - addedPhotos.size();
+    	showProblems.setText(addedPhotos.size() + " photo(s) added" 
+    			+ (skipped > 0 ? ", " + skipped + " already present in album" : ""));
+    	
+    	return true;
+    }
+    
+    /**
+     * Records the photos that were added to the current album as a single change
+     * 
+     * @param addedPhotos	The photos that were added
+     */
+    private void recordAddedPhotos(List<Photo> addedPhotos)
+    {
+    	// What was read from each photo's file is recorded too, so reading the save data never reads the photos again
+    	userManager.recordChange(JournalEntry.addPhotos(currentUser.getUserName(), currentAlbum.getAlbumName(), addedPhotos));
+    }
+    
+    /**
+     * Starts importing every photo in the folder and its subfolders in the background.
+     * The photos are added to the album in batches as they are read, so the window stays usable.
+     * 
+     * @param folder	The folder to import
+     */
+    private void startFolderImport(File folder)
+    {
+    	photoImporter = new PhotoImporter(folder);
+    	session.folderImport = photoImporter;
+    	importedPhotoCount = 0;
+    	
+    	importTimeline = new Timeline(new KeyFrame(Duration.millis(200), event -> addImportedPhotos()));
+    	importTimeline.setCycleCount(Animation.INDEFINITE);
+    	
+    	photoImporter.start();
+    	importTimeline.play();
+    	
+    	cancelImportButton.setDisable(false);
+    	showProblems.setText("Importing " + folder.getName() + "...");
+    }
+    
+    /**
+     * Adds the photos the importer has read so far to the album as one batch and saves them.
+     * Shows how far along the import is, and refreshes the list of photos once the import is finished.
+     */
+    private void addImportedPhotos()
+    {
+    	// Photos added to an album that was renamed or deleted would be lost, and saved under a name that is gone
+    	if (currentUser.getAlbum(currentAlbum.getAlbumName()) != currentAlbum)
+    	{
+    		photoImporter.cancel();
+    		stopFolderImport();
+    		showProblems.setText("Import stopped, the album was renamed or deleted");
+    		return;
+    	}
+    	
+    	List<Photo> importedPhotos = photoImporter.nextBatch(PhotoImporter.queueCapacity);
+    	
+    	if (!importedPhotos.isEmpty())
+    	{
+    		List<Photo> addedPhotos = currentUser.addImportedPhotosToAlbum(currentAlbum, importedPhotos);
+    		importedPhotoCount += addedPhotos.size();
+    		
+    		if (!addedPhotos.isEmpty())
+    		{
+    			recordAddedPhotos(addedPhotos);
+    			
+    			try
+    			{
+    				UserManagement.writeApp(userManager);
+    			}
+    			catch (IOException e)
+    			{
+    				photoImporter.cancel();
+    				stopFolderImport();
+    				showProblems.setText("Import stopped, the photos could not be saved");
+    				return;
+    			}
+    		}
+    	}
+    	
+    	if (!photoImporter.isFinished())
+    	{
+    		showProblems.setText("Importing... " + importedPhotoCount + " photo(s) added, " 
+    				+ photoImporter.getPhotosFound() + " found so far");
+    		return;
+    	}
+    	
+    	stopFolderImport();
+    	showProblems.setText(importedPhotoCount + " photo(s) imported");
+    	
+    	try
+    	{
+    		populateListView();
+    	}
+    	catch (IOException e)
+    	{
+    		showProblems.setText(importedPhotoCount + " photo(s) imported, but the list of photos could not be shown");
+    	}
+    }
+    
+    /**
+     * Stops taking photos from the importer, such as when the import is finished or cancelled
+     */
+    private void stopFolderImport()
+    {
+    	importTimeline.stop();
+    	importTimeline = null;
+    	
+    	if (session.folderImport == photoImporter)
+    	{
+    		session.folderImport = null;
+    	}
+    	
+    	photoImporter = null;
+    	cancelImportButton.setDisable(true);
+    }
+    
+    /**
+     * Cancels the folder import of this window if there is one, such as when the window closes or shows another scene.
+     * Photos already added are kept.
+     */
+    private void cancelFolderImport()
+    {
+    	if (photoImporter == null)
+    	{
+    		return;
+    	}
+    	
+    	photoImporter.cancel();
+    	stopFolderImport();
+    }
+    
     /**
      * This method handles the event that the caption button is pressed.
      * The selected index is used to find the photo and the text from the textfield is used
@@ -581,9 +814,8 @@ public class AlbumController {
 
 		showProblems.setText("Caption changed");
 		
-		// If the same photo is in another album, the caption is also changed
-		currentUser.makeChangesToPhotoAcrossAllAlbumsChangeCaption(currentPhoto.getPhotoPath(), 
-				currentAlbum.getAlbumName(), newCaption);
+		userManager.recordChange(JournalEntry.Type.CHANGE_CAPTION, currentUser.getUserName(), 
+				currentAlbum.getAlbumName(), currentPhoto.getPhotoPath(), newCaption);
 		
     	// Saves any changes done
 		UserManagement.writeApp(userManager);
@@ -592,32 +824,15 @@ public class AlbumController {
     }
     
     /**
-     * Populates the listview with thumbnails of the photos in the album.
+     * Populates the listview with the photos in the album.
      * It is called whenever the user makes any changes to the album.
+     * Only the photos that can be seen have their thumbnails loaded, by PhotoCell.
      * 
      * @throws IOException	Throws any exceptions
      */
     public void populateListView() throws IOException
     {
-    	List<Photo> photosOfCurrentAlbum = currentAlbum.getPhotos();
-    	
-    	tableBuilder = FXCollections.observableArrayList();
-    	
-    	for (int i = 0; i < photosOfCurrentAlbum.size(); i++)
-    	{
-    		InputStream stream = new FileInputStream(photosOfCurrentAlbum.get(i).getPhotoPath());
-    		Image image = new Image(stream);
-    		ImageView imageView = new ImageView();
-    		imageView.setImage(image);
-    		
-    		imageView.setX(10);
-    		imageView.setY(10);
-    		imageView.setFitWidth(125);
-    		imageView.setFitHeight(125);
-    		imageView.setPreserveRatio(true);
-    		
-    		tableBuilder.add(imageView);
-    	}
+    	tableBuilder = FXCollections.observableArrayList(currentAlbum.getPhotos());
     	
     	photosAndCaptionsTable.setItems(tableBuilder);
     }
@@ -689,14 +904,43 @@ public class AlbumController {
         assert searchButton != null : "fx:id=\"searchButton\" was not injected: check your FXML file 'Album.fxml'.";
         assert captionButton != null : "fx:id=\"captionButton\" was not injected: check your FXML file 'Album.fxml'.";
         
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
-    	currentUser = userManager.currentUser;
-    	currentAlbum = userManager.currentAlbum;
+    	// Get the data shared by all windows
+    	session = Session.get();
+    	userManager = session.getUserManager();
+    	currentUser = session.currentUser;
+    	currentAlbum = session.currentAlbum;
     	
     	userText.setText(currentAlbum.getAlbumName() + " Photos");
     	
+    	// The timer would keep adding photos to the album after the window is gone, and a new album window
+    	// could start a second import, so the import is cancelled once the window closes or shows another scene
+    	EventHandler<WindowEvent> cancelWhenHidden = event -> cancelFolderImport();
+    	
+    	userText.sceneProperty().addListener((observable, oldScene, scene) -> {
+    		if (scene != null)
+    		{
+    			scene.windowProperty().addListener((windowObservable, oldWindow, window) -> {
+    				if (oldWindow != null)
+    				{
+    					oldWindow.removeEventHandler(WindowEvent.WINDOW_HIDDEN, cancelWhenHidden);
+    					cancelFolderImport();
+    				}
+    				
+    				if (window != null)
+    				{
+    					window.addEventHandler(WindowEvent.WINDOW_HIDDEN, cancelWhenHidden);
+    				}
+    			});
+    		}
+    	});
+    	
+    	photosAndCaptionsTable.setCellFactory(list -> new PhotoCell());
+    	photosAndCaptionsTable.setFixedCellSize(PhotoCell.cellHeight);
     	populateListView();
     	populateComboBox();
+    	
+    	// Suggest tag types and values that are already used while they are typed
+    	AutoComplete.attach(tagTypeTextField, currentUser::suggestTagTypes);
+    	AutoComplete.attach(tagValueTextField, text -> currentUser.suggestTagValues(tagTypeTextField.getText(), text));
     }
 }
@@ -0,0 +1,109 @@
+package photo.controller;
+
+import java.util.List;
+import java.util.function.Function;
+
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+/**
+ * Shows suggestions under a text field while the user types, and fills in the one that is clicked.
+ * The suggestions come from the user's tag index, so nothing is looked up by going through the photos.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ */
+public class AutoComplete {
+
+    /**
+     * The text field the suggestions are for
+     */
+    private final TextField field;
+
+    /**
+     * Finds the suggestions for what has been typed
+     */
+    private final Function<String, List<String>> suggestions;
+
+    /**
+     * The menu of suggestions shown under the text field
+     */
+    private final ContextMenu menu;
+
+    /**
+     * Constructor for AutoComplete
+     *
+     * @param field	The text field the suggestions are for
+     * @param suggestions	Finds the suggestions for what has been typed
+     */
+    private AutoComplete(TextField field, Function<String, List<String>> suggestions)
+    {
+    	this.field = field;
+    	this.suggestions = suggestions;
+    	menu = new ContextMenu();
+
+    	field.textProperty().addListener((observable, oldText, newText) -> showSuggestions(newText));
+
+    	// The suggestions go away when the user moves to another field
+    	field.focusedProperty().addListener((observable, wasFocused, isFocused) -> {
+    		if (!isFocused)
+    		{
+    			menu.hide();
+    		}
+    	});
+    }
+
+    /**
+     * Shows suggestions under the text field while the user types in it
+     *
+     * @param field	The text field
+     * @param suggestions	Finds the suggestions for what has been typed
+     */
+    public static void attach(TextField field, Function<String, List<String>> suggestions)
+    {
+    	new AutoComplete(field, suggestions);
+    }
+
+    /**
+     * Shows the suggestions for what has been typed, or hides the menu if there are none.
+     * Nothing is shown when the text was changed by the program instead of the user typing.
+     *
+     * @param text	What has been typed
+     */
+    private void showSuggestions(String text)
+    {
+    	if (!field.isFocused() || text.trim().isEmpty())
+    	{
+    		menu.hide();
+    		return;
+    	}
+
+    	List<String> words = suggestions.apply(text);
+
+    	// There is nothing to suggest if the only suggestion is what was already typed
+    	if (words.isEmpty() || (words.size() == 1 && words.get(0).equalsIgnoreCase(text)))
+    	{
+    		menu.hide();
+    		return;
+    	}
+
+    	menu.getItems().clear();
+
+    	for (String word: words)
+    	{
+    		MenuItem item = new MenuItem(word);
+    		item.setOnAction(event -> {
+    			field.setText(word);
+    			field.positionCaret(word.length());
+    			menu.hide();
+    		});
+    		menu.getItems().add(item);
+    	}
+
+    	if (!menu.isShowing())
+    	{
+    		menu.show(field, Side.BOTTOM, 0, 0);
+    	}
+    }
+}
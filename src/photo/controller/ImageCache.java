@@ -0,0 +1,323 @@
+package photo.controller;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.stage.Screen;
+
+/**
+ * Keeps decoded photos in memory so going back to a photo or an album does not read and decode its file again.
+ * Each photo is kept by its path and the size it was decoded at, since a thumbnail and a photo shown in a window are different images.
+ * The cache has a budget in bytes, worked out from the pixels of each image, and when it is over the budget the photos
+ * that were used the longest time ago are dropped first. It is only used from the JavaFX thread.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ */
+public class ImageCache {
+
+    /**
+     * Bytes each pixel of a decoded image takes
+     */
+    private static final int bytesPerPixel = 4;
+
+    /**
+     * The cache shared by every window, with a budget of a quarter of the memory Java may use
+     */
+    private static final ImageCache imageCache = new ImageCache(Runtime.getRuntime().maxMemory() / 4);
+
+    /**
+     * The images, from the one used the longest time ago to the one used last
+     */
+    private final LinkedHashMap<String, Entry> images;
+
+    /**
+     * Most bytes the images can take
+     */
+    private long byteBudget;
+
+    /**
+     * Bytes the images take now
+     */
+    private long usedBytes;
+
+    /**
+     * Constructor for ImageCache
+     *
+     * @param byteBudget	Most bytes the images can take
+     */
+    public ImageCache(long byteBudget)
+    {
+    	images = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    	this.byteBudget = byteBudget;
+    	usedBytes = 0;
+    }
+
+    /**
+     * Returns the cache shared by every window
+     *
+     * @return	The image cache
+     */
+    public static ImageCache get()
+    {
+    	return imageCache;
+    }
+
+    /**
+     * Changes the most bytes the images can take, dropping images if they take more than that now
+     *
+     * @param byteBudget	Most bytes the images can take
+     */
+    public void setByteBudget(long byteBudget)
+    {
+    	this.byteBudget = byteBudget;
+    	evict();
+    }
+
+    /**
+     * Returns the bytes the images take now
+     *
+     * @return	Number of bytes
+     */
+    public long getUsedBytes()
+    {
+    	return usedBytes;
+    }
+
+    /**
+     * Returns the size a photo should be read at to fill a view, counting the screen's scaling so it is still sharp.
+     * Reading a photo at this size takes memory for the view's pixels instead of all of the photo's pixels.
+     *
+     * @param imageView	The view the photo is shown in
+     * @return	Most pixels the photo should be wide and high
+     */
+    public static int displaySize(ImageView imageView)
+    {
+    	double scale = Screen.getPrimary().getOutputScaleX();
+
+    	return (int) Math.ceil(Math.max(imageView.getFitWidth(), imageView.getFitHeight()) * scale);
+    }
+
+    /**
+     * Returns a photo decoded to fit in a square of the given size, reading it in the background if it is not in the cache.
+     * The photo is scaled down while it is decoded, so the full size photo is never kept in memory.
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     * @return	The image, which may still be loading
+     */
+    public Image getImage(String photoPath, int size)
+    {
+    	Image image = getCachedImage(photoPath, size);
+
+    	if (image != null)
+    	{
+    		return image;
+    	}
+
+    	String url = new File(photoPath).toURI().toString();
+    	image = new Image(url, size, size, true, true, true);
+
+    	return add(photoPath, size, image);
+    }
+
+    /**
+     * Returns a photo decoded at the given size if it is in the cache
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     * @return	The image, which may still be loading, or null if it is not in the cache
+     */
+    public Image getCachedImage(String photoPath, int size)
+    {
+    	Entry entry = images.get(key(photoPath, size));
+
+    	return entry == null ? null : entry.image;
+    }
+
+    /**
+     * Reads an image of a photo from another file, such as its thumbnail, in the background and keeps it in the cache.
+     * The file should already be the given size.
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     * @param imageFile	The file to read the image from
+     * @return	The image, which may still be loading
+     */
+    public Image loadImage(String photoPath, int size, File imageFile)
+    {
+    	Image image = getCachedImage(photoPath, size);
+
+    	if (image != null)
+    	{
+    		return image;
+    	}
+
+    	return add(photoPath, size, new Image(imageFile.toURI().toString(), true));
+    }
+
+    /**
+     * Stops reading an image that is no longer needed and drops it from the cache.
+     * An image that has already been read is kept.
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     */
+    public void cancel(String photoPath, int size)
+    {
+    	String key = key(photoPath, size);
+    	Entry entry = images.get(key);
+
+    	if (entry != null && entry.image.getProgress() < 1)
+    	{
+    		entry.image.cancel();
+    		remove(key, entry);
+    	}
+    }
+
+    /**
+     * Adds an image to the cache and keeps its size up to date once it has been read
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     * @param image	The image, which may still be loading
+     * @return	The image
+     */
+    private Image add(String photoPath, int size, Image image)
+    {
+    	String key = key(photoPath, size);
+    	Entry entry = new Entry(image);
+
+    	// Until the image is read its real size is not known, so it is counted at the most it can take
+    	entry.bytes = (long) size * size * bytesPerPixel;
+
+    	// An image bigger than the whole budget is still shown, but it is not kept and does not push the others out
+    	if (entry.bytes > byteBudget)
+    	{
+    		return image;
+    	}
+
+    	images.put(key, entry);
+    	usedBytes += entry.bytes;
+
+    	if (image.getProgress() >= 1)
+    	{
+    		imageRead(key, entry);
+    	}
+    	else
+    	{
+    		image.progressProperty().addListener((observable, oldProgress, progress) -> {
+    			if (progress.doubleValue() >= 1)
+    			{
+    				imageRead(key, entry);
+    			}
+    		});
+    	}
+
+    	evict();
+
+    	return image;
+    }
+
+    /**
+     * Counts the real size of an image once it has been read, or drops it if it could not be read
+     *
+     * @param key	The key of the image
+     * @param entry	The image's entry
+     */
+    private void imageRead(String key, Entry entry)
+    {
+    	if (images.get(key) != entry)
+    	{
+    		return;
+    	}
+
+    	if (entry.image.isError())
+    	{
+    		remove(key, entry);
+    		return;
+    	}
+
+    	long bytes = (long) entry.image.getWidth() * (long) entry.image.getHeight() * bytesPerPixel;
+    	usedBytes += bytes - entry.bytes;
+    	entry.bytes = bytes;
+
+    	// An image bigger than the whole budget is still shown, but it is not kept
+    	if (bytes > byteBudget)
+    	{
+    		remove(key, entry);
+    		return;
+    	}
+
+    	evict();
+    }
+
+    /**
+     * Drops the images used the longest time ago until the images take no more than the budget
+     */
+    private void evict()
+    {
+    	Iterator<Map.Entry<String, Entry>> oldestFirst = images.entrySet().iterator();
+
+    	while (usedBytes > byteBudget && oldestFirst.hasNext())
+    	{
+    		usedBytes -= oldestFirst.next().getValue().bytes;
+    		oldestFirst.remove();
+    	}
+    }
+
+    /**
+     * Drops an image from the cache
+     *
+     * @param key	The key of the image
+     * @param entry	The image's entry
+     */
+    private void remove(String key, Entry entry)
+    {
+    	if (images.remove(key, entry))
+    	{
+    		usedBytes -= entry.bytes;
+    	}
+    }
+
+    /**
+     * Returns the key of a photo decoded at a size
+     *
+     * @param photoPath	Path of the photo
+     * @param size	Most pixels the image is wide and high
+     * @return	The key
+     */
+    private static String key(String photoPath, int size)
+    {
+    	return size + ":" + photoPath;
+    }
+
+    /**
+     * One image in the cache along with the bytes it takes
+     */
+    private static class Entry
+    {
+    	/**
+    	 * The image
+    	 */
+    	private final Image image;
+
+    	/**
+    	 * Bytes the image takes
+    	 */
+    	private long bytes;
+
+    	/**
+    	 * Constructor for Entry
+    	 *
+    	 * @param image	The image
+    	 */
+    	Entry(Image image)
+    	{
+    		this.image = image;
+    	}
+    }
+}
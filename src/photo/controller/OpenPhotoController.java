@@ -1,13 +1,10 @@
 package photo.controller;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -16,13 +13,14 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import photo.app.Album;
 import photo.app.Photo;
-import photo.app.UserManagement;
+import photo.app.Session;
+import photo.app.TilePyramid;
 
 /**
  * This GUI window shows up when a picture is chosen and displayed.
@@ -40,6 +38,40 @@ public class OpenPhotoController {
     @FXML
     private ImageView imageDisplay;
 
+    /*
+     * pane the image is shown in, which the user can zoom into
+     */
+    @FXML
+    private StackPane photoPane;
+    
+    /**
+     * Button that zooms into the photo
+     */
+    @FXML
+    private Button zoomInButton;
+    
+    /**
+     * Button that zooms out of the photo
+     */
+    @FXML
+    private Button zoomOutButton;
+    
+    /**
+     * Button that shows the whole photo again
+     */
+    @FXML
+    private Button zoomFitButton;
+    
+    /**
+     * Lets the user zoom into the photo and move around in it, or null if the photo's tiles cannot be made
+     */
+    private TileViewer tileViewer;
+    
+    /**
+     * The photo's tiles while they are being opened, or null once the window no longer waits for them
+     */
+    private CompletableFuture<TilePyramid> pyramidRequest;
+    
     /*
      * photo label 
      */
@@ -77,9 +109,9 @@ public class OpenPhotoController {
     private Text tagText;
     
     /**
-     * This variable holds all of the data for all users
+     * Keeps track of what the user is currently looking at, shared by all windows
      */
-    private UserManagement userManager;
+    private Session session;
     
     /**
      * This will be used to refer to the current photo and display it
@@ -98,11 +130,6 @@ public class OpenPhotoController {
     @FXML
     private Label displayTitle;
     
-    /**
-     * Format for how the date will be printed
-     */
-    String dateFormatPattern = "yyyy-MM-dd";
-    
     /**
      * This method is called whenever the return button is pressed.
      * It will let the user exit the image display window and go back to the list of photos.
@@ -113,10 +140,18 @@ public class OpenPhotoController {
     @FXML
     public void ReturnToPhotoList(ActionEvent event) throws IOException
     {
+		// Tiles still being opened or made for this photo are no longer needed
+		pyramidRequest = null;
+		
+		if (tileViewer != null)
+		{
+			tileViewer.close();
+		}
+		
 		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Album.fxml"));
 		
 		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
-		stage.setTitle("User: "+ userManager.currentUser.getUserName());
+		stage.setTitle("User: "+ session.currentUser.getUserName());
 		Scene scene = new Scene(root);
 		stage.setScene(scene);
 		stage.show();
@@ -128,10 +163,7 @@ public class OpenPhotoController {
      * @throws FileNotFoundException Throws any exceptions
      */
 	public void PhotoSetUp() throws FileNotFoundException {
-		Date date = currentPhoto.getDate();
-		DateFormat dateFormat = new SimpleDateFormat(dateFormatPattern);  
-		String strDate = dateFormat.format(date);  
-		photoText.setText(strDate);	// it's for date, not name
+		photoText.setText(currentPhoto.getDateText());	// it's for date, not name
 
 		// set caption
 		captionText.setText(currentPhoto.getPhotoCaption());
@@ -152,12 +184,73 @@ public class OpenPhotoController {
 		// set tags
 		tagText.setText(tags);
 		
-		InputStream stream = new FileInputStream(currentPhoto.getPhotoPath());;
+		// The photo is read at the size of the view, and photos that were shown before are taken from memory
+		imageDisplay.setImage(ImageCache.get().getImage(currentPhoto.getPhotoPath(), ImageCache.displaySize(imageDisplay)));
 		
-		Image image = new Image(stream);
-		imageDisplay.setImage(image);
+		// Zooming in shows tiles of the photo, made the first time they are needed, instead of decoding all of it.
+		// Opening them reads the photo's header, so it is done in the background and zooming waits until then.
+		zoomInButton.setDisable(true);
+		zoomOutButton.setDisable(true);
+		zoomFitButton.setDisable(true);
 		
-		displayTitle.setText(userManager.currentAlbum.getAlbumName() + " Photo Display");
+		String photoPath = currentPhoto.getPhotoPath();
+		CompletableFuture<TilePyramid> request = session.openTilePyramid(photoPath);
+		pyramidRequest = request;
+		
+		request.thenAccept(pyramid -> Platform.runLater(() -> {
+			if (pyramid == null)
+			{
+				return;
+			}
+			
+			// The window may have gone back to the list of photos while the tiles were opened
+			if (pyramidRequest != request)
+			{
+				pyramid.close();
+				return;
+			}
+			
+			pyramidRequest = null;
+			tileViewer = new TileViewer(photoPane, imageDisplay, pyramid, photoPath);
+			zoomInButton.setDisable(false);
+			zoomOutButton.setDisable(false);
+			zoomFitButton.setDisable(false);
+		}));
+		
+		displayTitle.setText(session.currentAlbum.getAlbumName() + " Photo Display");
+	}
+	
+	/**
+	 * Zooms into the photo when the Zoom In button is pressed
+	 * 
+	 * @param event	The button was pressed
+	 */
+	@FXML
+	public void zoomIn(ActionEvent event)
+	{
+		tileViewer.zoomIn();
+	}
+	
+	/**
+	 * Zooms out of the photo when the Zoom Out button is pressed
+	 * 
+	 * @param event	The button was pressed
+	 */
+	@FXML
+	public void zoomOut(ActionEvent event)
+	{
+		tileViewer.zoomOut();
+	}
+	
+	/**
+	 * Shows the whole photo again when the Fit button is pressed
+	 * 
+	 * @param event	The button was pressed
+	 */
+	@FXML
+	public void zoomToFit(ActionEvent event)
+	{
+		tileViewer.zoomToFit();
 	}
 	
 	/**
@@ -170,9 +263,9 @@ public class OpenPhotoController {
 	@FXML
 	void initialize() throws ClassNotFoundException, IOException
 	{
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
-    	currentPhoto = userManager.currentPhoto;
+    	// Get the data shared by all windows
+    	session = Session.get();
+    	currentPhoto = session.currentPhoto;
     	
     	PhotoSetUp();
 	}
@@ -0,0 +1,224 @@
+package photo.controller;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.application.Platform;
+import javafx.scene.control.ListCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import photo.app.Photo;
+import photo.app.Session;
+import photo.app.ThumbnailCache;
+
+/**
+ * One row of a list of photos, showing the photo's thumbnail.
+ * A list only makes enough cells to fill what can be seen and gives them new photos as the user scrolls,
+ * so only the thumbnails that can be seen are loaded, no matter how many photos are in the list.
+ * Each thumbnail is loaded in the background with a grey square shown until it is ready,
+ * and is kept in the image cache so scrolling back to it or coming back to the list shows it right away.
+ * When the cell is given another photo first, the loading of the old thumbnail is cancelled.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ */
+public class PhotoCell extends ListCell<Photo> {
+
+    /**
+     * Most pixels a thumbnail in a list is wide and high
+     */
+    public static final int thumbnailSize = 125;
+
+    /**
+     * Height of every cell, so the list knows how many fit without loading their thumbnails
+     */
+    public static final double cellHeight = thumbnailSize + 10;
+
+    /**
+     * The grey square shown while a thumbnail is loading, made the first time it is needed
+     */
+    private static Image placeholder;
+
+    /**
+     * Shows the thumbnail
+     */
+    private final ImageView imageView;
+
+    /**
+     * The photo the cell is showing, or null if it is empty
+     */
+    private Photo shownPhoto;
+
+    /**
+     * The request for the thumbnail to be made, or null if it is not being made for this cell
+     */
+    private CompletableFuture<File> thumbnailRequest;
+
+    /**
+     * The thumbnail being read in the background, or null if none is being read
+     */
+    private Image loadingImage;
+
+    /**
+     * Constructor for PhotoCell
+     */
+    public PhotoCell()
+    {
+    	imageView = new ImageView();
+    	imageView.setFitWidth(thumbnailSize);
+    	imageView.setFitHeight(thumbnailSize);
+    	imageView.setPreserveRatio(true);
+    }
+
+    /**
+     * Shows a photo in the cell, or nothing if the cell is empty
+     *
+     * @param photo	The photo
+     * @param empty	True if the cell has no photo
+     */
+    @Override
+    protected void updateItem(Photo photo, boolean empty)
+    {
+    	super.updateItem(photo, empty);
+    	setText(null);
+
+    	if (empty || photo == null)
+    	{
+    		cancelLoading();
+    		shownPhoto = null;
+    		setGraphic(null);
+    		return;
+    	}
+
+    	// The list asks cells to show the same photo again often, such as when it is laid out
+    	if (photo == shownPhoto)
+    	{
+    		return;
+    	}
+
+    	cancelLoading();
+    	shownPhoto = photo;
+    	imageView.setImage(placeholder());
+    	setGraphic(imageView);
+
+    	ImageCache imageCache = ImageCache.get();
+    	String photoPath = photo.getPhotoPath();
+    	Image cachedImage = imageCache.getCachedImage(photoPath, thumbnailSize);
+
+    	if (cachedImage != null)
+    	{
+    		showImage(cachedImage);
+    		return;
+    	}
+
+    	// Even finding a thumbnail that was already made looks at the photo file, so it is done in the background
+    	ThumbnailCache thumbnailCache = Session.get().getThumbnailCache();
+    	CompletableFuture<File> request = thumbnailCache.requestThumbnail(photoPath, thumbnailSize);
+    	thumbnailRequest = request;
+
+    	request.thenAccept(madeThumbnail -> Platform.runLater(() -> {
+    		// The cell may have been given another photo while the thumbnail was made
+    		if (thumbnailRequest != request)
+    		{
+    			return;
+    		}
+
+    		thumbnailRequest = null;
+
+    		if (madeThumbnail != null)
+    		{
+    			showImage(imageCache.loadImage(photoPath, thumbnailSize, madeThumbnail));
+    		}
+    		else
+    		{
+    			// The photo could not be made into a thumbnail, so it is decoded at the size of the list instead
+    			showImage(imageCache.getImage(photoPath, thumbnailSize));
+    		}
+    	}));
+    }
+
+    /**
+     * Shows an image that is being read in the background once it is ready
+     *
+     * @param image	The image
+     */
+    private void showImage(Image image)
+    {
+    	loadingImage = image;
+
+    	if (image.getProgress() >= 1)
+    	{
+    		imageLoaded(image);
+    		return;
+    	}
+
+    	image.progressProperty().addListener((observable, oldProgress, progress) -> {
+    		if (progress.doubleValue() >= 1)
+    		{
+    			imageLoaded(image);
+    		}
+    	});
+    }
+
+    /**
+     * Shows an image once it has been read, if the cell is still waiting for it
+     *
+     * @param image	The image
+     */
+    private void imageLoaded(Image image)
+    {
+    	if (loadingImage == image)
+    	{
+    		loadingImage = null;
+
+    		if (!image.isError())
+    		{
+    			imageView.setImage(image);
+    		}
+    	}
+    }
+
+    /**
+     * Cancels the loading of the thumbnail the cell was waiting for
+     */
+    private void cancelLoading()
+    {
+    	if (thumbnailRequest != null)
+    	{
+    		thumbnailRequest.cancel(false);
+    		thumbnailRequest = null;
+    	}
+
+    	if (loadingImage != null)
+    	{
+    		ImageCache.get().cancel(shownPhoto.getPhotoPath(), thumbnailSize);
+    		loadingImage = null;
+    	}
+    }
+
+    /**
+     * Returns the grey square shown while a thumbnail is loading
+     *
+     * @return	The placeholder image
+     */
+    private static Image placeholder()
+    {
+    	if (placeholder == null)
+    	{
+    		WritableImage square = new WritableImage(thumbnailSize, thumbnailSize);
+
+    		for (int x = 0; x < thumbnailSize; x++)
+    		{
+    			for (int y = 0; y < thumbnailSize; y++)
+    			{
+    				square.getPixelWriter().setColor(x, y, Color.LIGHTGREY);
+    			}
+    		}
+
+    		placeholder = square;
+    	}
+
+    	return placeholder;
+    }
+}
@@ -1,6 +1,5 @@
 package photo.controller;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -20,6 +19,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import photo.app.Session;
 import photo.app.User;
 import photo.app.UserManagement;
 
@@ -88,19 +88,9 @@ public class PhotoLoginController {
     	
     	// Reads the dat file if it exists and loads it into userManager.
     	// This will help us keep track of the list of users and make sure
-    	// that the user exists.
+    	// that the user exists. The data is read only once and shared by all windows.
     	
-		File datFile = new File("dat/users.dat");
-		boolean datFileExists = datFile.exists();
-		
-		if (datFileExists)
-		{
-			userManager = UserManagement.readApp();
-		}
-		else
-		{
-			userManager = new UserManagement();
-		}
+		userManager = Session.get().getUserManager();
 		
 		userManager.checkIfStockIsPresent();
 		
@@ -119,7 +109,7 @@ public class PhotoLoginController {
     @FXML
     void loginButton(ActionEvent event) throws IOException, ClassNotFoundException {
     	
-    	userManager = UserManagement.readApp();
+    	userManager = Session.get().getUserManager();
 		
 		String userName = name.getText();
 		
@@ -132,8 +122,6 @@ public class PhotoLoginController {
 		// admin window
     	if((userName.equals("admin"))) {
 
-    		UserManagement.writeApp(userManager);
-    		
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/AdminAction.fxml"));
     		
     		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
@@ -148,9 +136,7 @@ public class PhotoLoginController {
     	if((userManager.isNameTaken(userName)) && (!userName.equals("admin"))) {
     		// user subsystem
     		
-    		userManager.currentUser = userManager.getUser(userName);
-    		
-    		UserManagement.writeApp(userManager);
+    		Session.get().logIn(userManager.getUser(userName));
     		
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/UserSubSystem.fxml"));
     		
@@ -1,8 +1,6 @@
 package photo.controller;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,12 +17,13 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
 import javafx.stage.Stage;
 import photo.app.Album;
+import photo.app.JournalEntry;
 import photo.app.Photo;
+import photo.app.Session;
 import photo.app.User;
 import photo.app.UserManagement;
 
@@ -65,6 +64,34 @@ public class SearchPhotoController {
     @FXML
     private TextField newAlbumNameField;
     
+    /**
+     * Shows the page of results before the current one
+     */
+    @FXML
+    private Button previousPageButton;
+    
+    /**
+     * Shows the page of results after the current one
+     */
+    @FXML
+    private Button nextPageButton;
+    
+    /**
+     * Shows which page of results is being looked at
+     */
+    @FXML
+    private Label pageLabel;
+    
+    /**
+     * How many results are shown on one page, so only that many photos are loaded at a time
+     */
+    private static final int resultsPerPage = 50;
+    
+    /**
+     * The page of results being looked at, starting from 0
+     */
+    private int currentPage;
+    
     /**
      * List of the search results shown as images using ImageView
      */
@@ -81,17 +108,22 @@ public class SearchPhotoController {
      */
     private UserManagement userManager;
     
+    /**
+     * Keeps track of what the user is currently looking at, shared by all windows
+     */
+    private Session session;
+    
     /**
      * ListView that will show thumbanisl and its caption when clicked on
      */
     @FXML
-    private ListView<ImageView> photosAndCaptionsTable;
+    private ListView<Photo> photosAndCaptionsTable;
     
     /**
      * ObservableList that will help us build the ListView table
      */
     @FXML
-    private ObservableList<ImageView> tableBuilder;
+    private ObservableList<Photo> tableBuilder;
     
     /**
      * Will be used to show any problems encountered, such as the album name already existing
@@ -171,15 +203,34 @@ public class SearchPhotoController {
     			return;
     		}
     		
+    		// The results are the user's own photos, so they are added in one pass and recorded as a single change
     		Album albumToAdd = new Album(newAlbumName);
-    		
-    		for(int i = 0; i < photoSearchResults.size(); i++)
-    		{
-    			albumToAdd.addPhoto(photoSearchResults.get(i));
-    		}
+    		List<Photo> addedPhotos = albumToAdd.addPhotos(photoSearchResults);
     		
     		showProblems.setText("Album created and added");
     		currentUser.addAlbum(albumToAdd);
+    		
+    		userManager.recordChange(JournalEntry.Type.ADD_ALBUM, currentUser.getUserName(), newAlbumName);
+    		
+    		if (!addedPhotos.isEmpty())
+    		{
+    			userManager.recordChange(JournalEntry.addPhotos(currentUser.getUserName(), newAlbumName, addedPhotos));
+    		}
+    	}
+    	
+    	// Show the page before or after the current one
+    	if(event.getSource()==previousPageButton && currentPage > 0)
+    	{
+    		currentPage--;
+    		populateListView();
+    		return;
+    	}
+    	
+    	if(event.getSource()==nextPageButton && currentPage < pageCount() - 1)
+    	{
+    		currentPage++;
+    		populateListView();
+    		return;
     	}
     	
     	// Saves any changes done
@@ -189,31 +240,34 @@ public class SearchPhotoController {
     }
     
     /**
-     * Populates the listview with thumbnails of the photos in the album.
+     * Populates the listview with the photos on the current page of results.
+     * The results are already in order, with the best matches first.
+     * Only the photos that can be seen have their thumbnails loaded, by PhotoCell.
      * 
      * @throws IOException	Throws any exceptions
      */
     public void populateListView() throws IOException
     {    	
-    	tableBuilder = FXCollections.observableArrayList();
+    	int firstResult = currentPage * resultsPerPage;
+    	int lastResult = Math.min(firstResult + resultsPerPage, photoSearchResults.size());
     	
-    	for (int i = 0; i < photoSearchResults.size(); i++)
-    	{
-    		InputStream stream = new FileInputStream(photoSearchResults.get(i).getPhotoPath());
-    		Image image = new Image(stream);
-    		ImageView imageView = new ImageView();
-    		imageView.setImage(image);
-    		
-    		imageView.setX(10);
-    		imageView.setY(10);
-    		imageView.setFitWidth(125);
-    		imageView.setFitHeight(125);
-    		imageView.setPreserveRatio(true);
-    		
-    		tableBuilder.add(imageView);
-    	}
+    	tableBuilder = FXCollections.observableArrayList(photoSearchResults.subList(firstResult, lastResult));
     	
     	photosAndCaptionsTable.setItems(tableBuilder);
+    	
+    	pageLabel.setText("Page " + (currentPage + 1) + " of " + pageCount() + " (" + photoSearchResults.size() + " photos)");
+    	previousPageButton.setDisable(currentPage == 0);
+    	nextPageButton.setDisable(currentPage >= pageCount() - 1);
+    }
+    
+    /**
+     * Returns the number of pages of results, which is at least 1
+     * 
+     * @return	Number of pages
+     */
+    private int pageCount()
+    {
+    	return Math.max(1, (photoSearchResults.size() + resultsPerPage - 1) / resultsPerPage);
     }
     
     /**
@@ -233,7 +287,10 @@ public class SearchPhotoController {
     		return;
     	}
     	
-    	textPhotoCaptionSelected.setText("Photo Caption: " + photoSearchResults.get(selectedIndex).getPhotoCaption());
+    	// The list only shows the current page, so the index is counted from the start of the page
+    	int resultIndex = currentPage * resultsPerPage + selectedIndex;
+    	
+    	textPhotoCaptionSelected.setText("Photo Caption: " + photoSearchResults.get(resultIndex).getPhotoCaption());
     }
     
     /**
@@ -245,13 +302,17 @@ public class SearchPhotoController {
     @FXML
     void initialize() throws ClassNotFoundException, IOException {
         
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
-    	currentUser = userManager.currentUser;
+    	// Get the data shared by all windows
+    	session = Session.get();
+    	userManager = session.getUserManager();
+    	currentUser = session.currentUser;
     	
     	photoSearchResults = new ArrayList<Photo>();
-    	photoSearchResults.addAll(userManager.photoSearchResults);
+    	photoSearchResults.addAll(session.photoSearchResults);
+    	currentPage = 0;
     	
+    	photosAndCaptionsTable.setCellFactory(list -> new PhotoCell());
+    	photosAndCaptionsTable.setFixedCellSize(PhotoCell.cellHeight);
     	populateListView();
     }
 }
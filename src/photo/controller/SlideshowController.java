@@ -1,33 +1,47 @@
 package photo.controller;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 import photo.app.Album;
 import photo.app.Photo;
-import photo.app.UserManagement;
+import photo.app.Session;
 
 /**
  * This Controller will handle the slideshow function for the selected album.
  * The images are shown one by one and the user can navigate between photos using two buttons.
  * The buttons may be disabled if the slideshow is currently at the beginning or end of the album.
+ * The photos next to the one being shown are read in the background ahead of time, at the size they are shown at,
+ * so going to the next or previous photo does not have to wait for it to be read.
+ * 
+ * The slideshow can also play by itself, moving to the next photo after a number of seconds.
+ * While it plays, it reads far enough ahead that each photo is ready before it is shown, based on how long photos
+ * have been taking to read. A photo that is still not ready when its time comes is skipped if a later one is ready,
+ * and the number of skipped photos is shown.
  * 
  * @author Amit Patel, Hideyo Sakamoto
  *
@@ -77,9 +91,9 @@ public class SlideshowController {
     private Text tagText;
     
     /**
-     * This variable holds all of the data for all users
+     * Keeps track of what the user is currently looking at, shared by all windows
      */
-    private UserManagement userManager;
+    private Session session;
     
     /**
      * This will be used to refer to the current photo and display it
@@ -122,9 +136,73 @@ public class SlideshowController {
     private Label slideshowTitleCount;
     
     /**
-     * Date format as string
+     * Number of photos before and after the current one that are read ahead of time
+     */
+    private static final int prefetchDistance = 3;
+    
+    /**
+     * Paths of the photos that were asked to be read ahead of time, which may still be loading
+     */
+    private Set<String> prefetchedPaths = new HashSet<String>();
+    
+    /**
+     * Most photos that are read ahead of time while the slideshow plays
+     */
+    private static final int maxLookahead = 20;
+    
+    /**
+     * Button that starts and pauses the slideshow playing by itself
+     */
+    @FXML
+    private Button playButton;
+    
+    /**
+     * Text field for how many seconds each photo is shown while the slideshow plays
+     */
+    @FXML
+    private TextField intervalTextField;
+    
+    /**
+     * Check box for starting over from the first photo after the last one while the slideshow plays
+     */
+    @FXML
+    private CheckBox loopCheckBox;
+    
+    /**
+     * Shows whether the slideshow is playing and how many photos it had to skip
+     */
+    @FXML
+    private Label autoPlayStatus;
+    
+    /**
+     * Moves to the next photo each time the interval passes, or null if the slideshow has not been played
+     */
+    private Timeline autoPlay;
+    
+    /**
+     * Milliseconds each photo is shown while the slideshow plays
+     */
+    private double intervalMillis;
+    
+    /**
+     * Average milliseconds photos have taken to read, or 0 if none have been timed yet
+     */
+    private double averageReadMillis;
+    
+    /**
+     * Photos being read that are timed, by path, which are removed once they finish or stop being read
+     */
+    private Map<String, Image> timedReads = new HashMap<String, Image>();
+    
+    /**
+     * Number of photos skipped because they were not ready when their time came
+     */
+    private int skippedPhotos;
+    
+    /**
+     * Number of times the current photo was kept up longer because no photo after it was ready
      */
-    String dateFormatPattern = "yyyy-MM-dd";
+    private int latePhotos;
     
     /**
      * Handles the action when the previous button is pressed.
@@ -183,10 +261,12 @@ public class SlideshowController {
     @FXML
     public void ReturnToPhotoList(ActionEvent event) throws IOException
     {
+    	stopAutoPlay();
+    	
 		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Album.fxml"));
 		
 		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
-		stage.setTitle("User: "+ userManager.currentUser.getUserName());
+		stage.setTitle("User: "+ session.currentUser.getUserName());
 		Scene scene = new Scene(root);
 		stage.setScene(scene);
 		stage.show();
@@ -198,10 +278,7 @@ public class SlideshowController {
      * @throws FileNotFoundException Throws any exceptions
      */
 	public void PhotoSetUp() throws FileNotFoundException {
-		Date date = currentPhoto.getDate();
-		DateFormat dateFormat = new SimpleDateFormat(dateFormatPattern);  
-		String strDate = dateFormat.format(date);  
-		photoText.setText(strDate);	// it's for date, not name
+		photoText.setText(currentPhoto.getDateText());	// it's for date, not name
 
 		// set caption
 		captionText.setText(currentPhoto.getPhotoCaption());
@@ -222,13 +299,308 @@ public class SlideshowController {
 		// set tags
 		tagText.setText(tags);
 		
-		InputStream stream = new FileInputStream(currentPhoto.getPhotoPath());;
-		
-		Image image = new Image(stream);
-		imageDisplay.setImage(image);
+		// The photo was usually read ahead of time while the one before it was shown
+		imageDisplay.setImage(ImageCache.get().getImage(currentPhoto.getPhotoPath(), displaySize()));
 		
 		int numberToShow = photoCounter + 1;
 		slideshowTitleCount.setText(currentAlbum.getAlbumName() + " Slideshow: Photo " + numberToShow);
+		
+		prefetchNearbyPhotos();
+	}
+	
+	/**
+	 * Starts reading the photos near the current one in the background, the closest ones first.
+	 * Photos that were being read ahead of time but are no longer near the current one stop being read.
+	 */
+	private void prefetchNearbyPhotos()
+	{
+		ImageCache imageCache = ImageCache.get();
+		int size = displaySize();
+		Set<String> nearbyPaths = new HashSet<String>();
+		
+		for (int distance = 1; distance <= prefetchDistance; distance++)
+		{
+			for (int index: new int[] {photoCounter + distance, photoCounter - distance})
+			{
+				if (index >= 0 && index < currentAlbum.getAlbumSize())
+				{
+					String photoPath = currentAlbum.getPhoto(index).getPhotoPath();
+					nearbyPaths.add(photoPath);
+					requestImage(photoPath, size);
+				}
+			}
+		}
+		
+		// While playing, the photos coming up next are read further ahead, from the start again if it loops
+		if (isPlaying())
+		{
+			int lookahead = lookahead();
+			
+			for (int distance = 1; distance <= lookahead; distance++)
+			{
+				int index = playIndex(photoCounter + distance);
+				
+				if (index >= 0)
+				{
+					String photoPath = currentAlbum.getPhoto(index).getPhotoPath();
+					nearbyPaths.add(photoPath);
+					requestImage(photoPath, size);
+				}
+			}
+		}
+		
+		for (String photoPath: prefetchedPaths)
+		{
+			if (!nearbyPaths.contains(photoPath) && !photoPath.equals(currentPhoto.getPhotoPath()))
+			{
+				imageCache.cancel(photoPath, size);
+				timedReads.remove(photoPath);
+			}
+		}
+		
+		prefetchedPaths = nearbyPaths;
+	}
+	
+	/**
+	 * Asks the image cache for a photo, timing how long it takes to read if it is not in the cache yet.
+	 * Photos read at the same time share the disk and the threads reading them, so the time is split between
+	 * the photos that were being read when it started. Otherwise reading further ahead would make each photo
+	 * seem slower, which would make it read further ahead again.
+	 * 
+	 * @param photoPath	Path of the photo
+	 * @param size	Most pixels the photo is wide and high
+	 */
+	private void requestImage(String photoPath, int size)
+	{
+		ImageCache imageCache = ImageCache.get();
+		
+		if (imageCache.getCachedImage(photoPath, size) != null)
+		{
+			imageCache.getImage(photoPath, size);
+			return;
+		}
+		
+		long started = System.nanoTime();
+		Image image = imageCache.getImage(photoPath, size);
+		timedReads.put(photoPath, image);
+		int readsAtStart = timedReads.size();
+		
+		image.errorProperty().addListener((observable, wasError, error) -> timedReads.remove(photoPath, image));
+		image.progressProperty().addListener((observable, oldProgress, progress) -> {
+			if (progress.doubleValue() >= 1 && timedReads.remove(photoPath, image) && !image.isError())
+			{
+				double readMillis = (System.nanoTime() - started) / 1e6 / readsAtStart;
+				
+				// Recent photos count the most, so the lookahead follows a share that gets slower or faster
+				averageReadMillis = averageReadMillis == 0 ? readMillis : averageReadMillis * 0.8 + readMillis * 0.2;
+			}
+		});
+	}
+	
+	/**
+	 * Starts the slideshow playing by itself, or pauses it if it is playing.
+	 * It plays from the photo being shown.
+	 * 
+	 * @param event	Play button is pressed
+	 */
+	@FXML
+	public void toggleAutoPlay(ActionEvent event)
+	{
+		if (isPlaying())
+		{
+			autoPlay.pause();
+			playButton.setText("Play");
+			showAutoPlayStatus("Paused");
+			return;
+		}
+		
+		double seconds;
+		
+		try
+		{
+			seconds = Double.parseDouble(intervalTextField.getText().trim());
+		}
+		catch (NumberFormatException e)
+		{
+			seconds = -1;
+		}
+		
+		if (seconds <= 0)
+		{
+			autoPlayStatus.setText("Seconds per photo must be a number above 0");
+			return;
+		}
+		
+		// A new interval starts a new timer, otherwise the paused one carries on
+		if (autoPlay == null || seconds * 1000 != intervalMillis)
+		{
+			if (autoPlay != null)
+			{
+				autoPlay.stop();
+			}
+			
+			intervalMillis = seconds * 1000;
+			autoPlay = new Timeline(new KeyFrame(Duration.millis(intervalMillis), tick -> autoAdvance()));
+			autoPlay.setCycleCount(Animation.INDEFINITE);
+		}
+		
+		autoPlay.play();
+		playButton.setText("Pause");
+		showAutoPlayStatus("Playing");
+		
+		// Start reading ahead as far as playing needs right away
+		prefetchNearbyPhotos();
+	}
+	
+	/**
+	 * Moves to the next photo that is ready while the slideshow plays.
+	 * Photos that are not ready yet are skipped if a later photo is ready, otherwise the current photo stays up
+	 * rather than showing a photo that is only partly read.
+	 */
+	private void autoAdvance()
+	{
+		int size = displaySize();
+		int lookahead = lookahead();
+		
+		for (int distance = 1; distance <= lookahead; distance++)
+		{
+			int index = playIndex(photoCounter + distance);
+			
+			if (index < 0)
+			{
+				// The end of the album was reached without looping
+				if (distance == 1)
+				{
+					autoPlay.stop();
+					autoPlay = null;
+					playButton.setText("Play");
+					showAutoPlayStatus("Finished");
+					return;
+				}
+				
+				break;
+			}
+			
+			Image image = ImageCache.get().getCachedImage(currentAlbum.getPhoto(index).getPhotoPath(), size);
+			
+			if (image != null && image.getProgress() >= 1 && !image.isError())
+			{
+				skippedPhotos += distance - 1;
+				showPhoto(index);
+				showAutoPlayStatus("Playing");
+				return;
+			}
+		}
+		
+		latePhotos++;
+		showAutoPlayStatus("Playing");
+	}
+	
+	/**
+	 * Shows the photo at an index of the album, setting the buttons the same way as moving to it by hand
+	 * 
+	 * @param index	Index of the photo
+	 */
+	private void showPhoto(int index)
+	{
+		photoCounter = index;
+		currentPhoto = currentAlbum.getPhoto(index);
+		previousButton.setDisable(index <= 0);
+		nextButton.setDisable(index >= currentAlbum.getAlbumSize() - 1);
+		
+		try
+		{
+			PhotoSetUp();
+		}
+		catch (FileNotFoundException e)
+		{
+			// PhotoSetUp reads the photo in the background and does not open the file itself
+		}
+	}
+	
+	/**
+	 * Shows whether the slideshow is playing along with how many photos were skipped or shown late
+	 * 
+	 * @param state	Whether the slideshow is playing, paused or finished
+	 */
+	private void showAutoPlayStatus(String state)
+	{
+		String status = state;
+		
+		if (skippedPhotos > 0)
+		{
+			status += ", " + skippedPhotos + " photo(s) skipped because they were not ready in time";
+		}
+		
+		if (latePhotos > 0)
+		{
+			status += ", " + latePhotos + " photo(s) kept up longer while waiting for the next one";
+		}
+		
+		autoPlayStatus.setText(status);
+	}
+	
+	/**
+	 * Checks to see if the slideshow is playing by itself
+	 * 
+	 * @return	True if it is playing, false if it is paused or was never played
+	 */
+	private boolean isPlaying()
+	{
+		return autoPlay != null && autoPlay.getStatus() == Animation.Status.RUNNING;
+	}
+	
+	/**
+	 * Stops the slideshow playing by itself, so it no longer moves to the next photo or reads ahead
+	 */
+	private void stopAutoPlay()
+	{
+		if (autoPlay != null)
+		{
+			autoPlay.stop();
+			autoPlay = null;
+		}
+	}
+	
+	/**
+	 * Returns how many photos ahead are read while the slideshow plays.
+	 * It is enough photos to cover the time one photo takes to read, plus one more.
+	 * 
+	 * @return	Number of photos to read ahead
+	 */
+	private int lookahead()
+	{
+		int photosPerRead = (int) Math.ceil(averageReadMillis / intervalMillis);
+		
+		return Math.max(prefetchDistance, Math.min(maxLookahead, photosPerRead + 1));
+	}
+	
+	/**
+	 * Returns the index of a photo coming up while the slideshow plays, going back to the start if it loops
+	 * 
+	 * @param index	Index of the photo, which may be past the end of the album
+	 * @return	The index in the album, or -1 if it is past the end and the slideshow does not loop
+	 */
+	private int playIndex(int index)
+	{
+		int albumSize = currentAlbum.getAlbumSize();
+		
+		if (index < albumSize)
+		{
+			return index;
+		}
+		
+		return loopCheckBox.isSelected() ? index % albumSize : -1;
+	}
+	
+	/**
+	 * Returns the size photos are read at, which is the size of the view they are shown in
+	 * 
+	 * @return	Most pixels a photo is wide and high
+	 */
+	private int displaySize()
+	{
+		return ImageCache.displaySize(imageDisplay);
 	}
 	
 	/**
@@ -241,9 +613,9 @@ public class SlideshowController {
 	@FXML
 	void initialize() throws ClassNotFoundException, IOException
 	{
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
-    	currentAlbum = userManager.currentAlbum;
+    	// Get the data shared by all windows
+    	session = Session.get();
+    	currentAlbum = session.currentAlbum;
     	currentPhoto = currentAlbum.getPhoto(0);
     	photoCounter = 0;
     	
@@ -253,6 +625,28 @@ public class SlideshowController {
     		nextButton.setDisable(true);
     	}
     	
+    	// The timer would keep moving through the album and reading photos after the slideshow is gone,
+    	// so it stops once the window closes or shows another scene
+    	EventHandler<WindowEvent> stopWhenHidden = event -> stopAutoPlay();
+    	
+    	imageDisplay.sceneProperty().addListener((observable, oldScene, scene) -> {
+    		if (scene != null)
+    		{
+    			scene.windowProperty().addListener((windowObservable, oldWindow, window) -> {
+    				if (oldWindow != null)
+    				{
+    					oldWindow.removeEventHandler(WindowEvent.WINDOW_HIDDEN, stopWhenHidden);
+    					stopAutoPlay();
+    				}
+    				
+    				if (window != null)
+    				{
+    					window.addEventHandler(WindowEvent.WINDOW_HIDDEN, stopWhenHidden);
+    				}
+    			});
+    		}
+    	});
+    	
     	PhotoSetUp();
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,488 @@
+package photo.controller;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+import javafx.stage.Screen;
+import photo.app.TilePyramid;
+
+/**
+ * Lets the user zoom into a photo and move around in it, inside the pane the photo is shown in.
+ * The whole photo, already read at the size of the view, is stretched to the zoom and shown underneath,
+ * and the tiles of the photo's tile pyramid are laid over it. Only the tiles that can be seen are loaded,
+ * from the level whose pixels are closest to the screen's pixels, so zooming into a very large photo
+ * never decodes more than what fills the view. Tiles that move out of the view are dropped and their loading is cancelled,
+ * and loaded tiles are kept in the image cache so moving back to them shows them right away.
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ */
+public class TileViewer {
+
+    /**
+     * Most screen pixels one pixel of the photo can be stretched to
+     */
+    private static final double maxScale = 4;
+
+    /**
+     * How much each step of the zoom buttons zooms in or out
+     */
+    private static final double zoomStep = 2;
+
+    /**
+     * The pane the photo is shown in
+     */
+    private final Pane viewPane;
+
+    /**
+     * The whole photo, read at the size of the view
+     */
+    private final ImageView preview;
+
+    /**
+     * The tiles of the photo
+     */
+    private final TilePyramid pyramid;
+
+    /**
+     * Path of the photo, used to keep its tiles in the image cache
+     */
+    private final String photoPath;
+
+    /**
+     * Holds the tiles, laid over the whole photo
+     */
+    private final Group tileGroup;
+
+    /**
+     * The tiles that are shown or loading, by level, column and row
+     */
+    private final Map<String, Tile> tiles;
+
+    /**
+     * Screen pixels one pixel of the photo is shown as when the whole photo fits in the view
+     */
+    private final double fitScale;
+
+    /**
+     * Screen pixels one pixel of the photo is shown as now
+     */
+    private double scale;
+
+    /**
+     * Point of the photo, in its own pixels, shown at the middle of the view
+     */
+    private double centerX;
+
+    /**
+     * Point of the photo, in its own pixels, shown at the middle of the view
+     */
+    private double centerY;
+
+    /**
+     * Where the mouse was the last time the photo was dragged
+     */
+    private double dragX;
+
+    /**
+     * Where the mouse was the last time the photo was dragged
+     */
+    private double dragY;
+
+    /**
+     * Constructor for TileViewer. The photo is shown whole until the user zooms in.
+     *
+     * @param viewPane	The pane the photo is shown in
+     * @param preview	The view showing the whole photo, which should be in the pane with its image already set
+     * @param pyramid	The tiles of the photo
+     * @param photoPath	Path of the photo
+     */
+    public TileViewer(Pane viewPane, ImageView preview, TilePyramid pyramid, String photoPath)
+    {
+    	this.viewPane = viewPane;
+    	this.preview = preview;
+    	this.pyramid = pyramid;
+    	this.photoPath = photoPath;
+    	tiles = new HashMap<String, Tile>();
+
+    	// The whole photo fits in the box the view had before zooming
+    	fitScale = Math.min(preview.getFitWidth() / pyramid.getWidth(), preview.getFitHeight() / pyramid.getHeight());
+
+    	// The photo and its tiles are placed by the viewer instead of the pane, and nothing is drawn outside the pane
+    	tileGroup = new Group();
+    	tileGroup.setManaged(false);
+    	preview.setManaged(false);
+    	viewPane.getChildren().add(tileGroup);
+
+    	Rectangle clip = new Rectangle();
+    	clip.widthProperty().bind(viewPane.widthProperty());
+    	clip.heightProperty().bind(viewPane.heightProperty());
+    	viewPane.setClip(clip);
+
+    	viewPane.layoutBoundsProperty().addListener((observable, oldBounds, bounds) -> layoutTiles());
+    	viewPane.setOnMousePressed(this::startDrag);
+    	viewPane.setOnMouseDragged(this::drag);
+    	viewPane.setOnScroll(this::scroll);
+
+    	zoomToFit();
+    }
+
+    /**
+     * Zooms in one step, keeping the middle of the view in place
+     */
+    public void zoomIn()
+    {
+    	zoomAround(scale * zoomStep, viewPane.getWidth() / 2, viewPane.getHeight() / 2);
+    }
+
+    /**
+     * Zooms out one step, keeping the middle of the view in place
+     */
+    public void zoomOut()
+    {
+    	zoomAround(scale / zoomStep, viewPane.getWidth() / 2, viewPane.getHeight() / 2);
+    }
+
+    /**
+     * Shows the whole photo again
+     */
+    public void zoomToFit()
+    {
+    	scale = fitScale;
+    	centerX = pyramid.getWidth() / 2.0;
+    	centerY = pyramid.getHeight() / 2.0;
+    	layoutTiles();
+    }
+
+    /**
+     * Cancels the loading of every tile and closes the photo's tiles, such as when the window shows something else
+     */
+    public void close()
+    {
+    	for (Tile tile : tiles.values())
+    	{
+    		tile.cancel();
+    	}
+
+    	tiles.clear();
+    	tileGroup.getChildren().clear();
+    	pyramid.close();
+    }
+
+    /**
+     * Remembers where the user started dragging the photo
+     *
+     * @param event	The mouse was pressed
+     */
+    private void startDrag(MouseEvent event)
+    {
+    	dragX = event.getX();
+    	dragY = event.getY();
+    }
+
+    /**
+     * Moves the photo along with the mouse
+     *
+     * @param event	The mouse was dragged
+     */
+    private void drag(MouseEvent event)
+    {
+    	centerX -= (event.getX() - dragX) / scale;
+    	centerY -= (event.getY() - dragY) / scale;
+    	dragX = event.getX();
+    	dragY = event.getY();
+    	layoutTiles();
+    }
+
+    /**
+     * Zooms in or out around the mouse when the mouse wheel is turned
+     *
+     * @param event	The mouse wheel was turned
+     */
+    private void scroll(ScrollEvent event)
+    {
+    	// One notch of a mouse wheel is 40 pixels, and zooms by a quarter
+    	zoomAround(scale * Math.pow(1.25, event.getDeltaY() / 40), event.getX(), event.getY());
+    	event.consume();
+    }
+
+    /**
+     * Changes the zoom, keeping the point of the photo under a point of the view in place
+     *
+     * @param newScale	Screen pixels one pixel of the photo should be shown as
+     * @param viewX	The point of the view, from its left side
+     * @param viewY	The point of the view, from its top
+     */
+    private void zoomAround(double newScale, double viewX, double viewY)
+    {
+    	newScale = Math.max(fitScale, Math.min(Math.max(fitScale, maxScale), newScale));
+
+    	double photoX = centerX + (viewX - viewPane.getWidth() / 2) / scale;
+    	double photoY = centerY + (viewY - viewPane.getHeight() / 2) / scale;
+
+    	scale = newScale;
+    	centerX = photoX - (viewX - viewPane.getWidth() / 2) / scale;
+    	centerY = photoY - (viewY - viewPane.getHeight() / 2) / scale;
+    	layoutTiles();
+    }
+
+    /**
+     * Places the whole photo and the tiles that can be seen for the current zoom and position,
+     * loading the tiles that are new and dropping the ones that can no longer be seen
+     */
+    private void layoutTiles()
+    {
+    	double viewWidth = viewPane.getWidth() > 0 ? viewPane.getWidth() : viewPane.getPrefWidth();
+    	double viewHeight = viewPane.getHeight() > 0 ? viewPane.getHeight() : viewPane.getPrefHeight();
+    	int photoWidth = pyramid.getWidth();
+    	int photoHeight = pyramid.getHeight();
+
+    	centerX = keepInView(centerX, photoWidth, viewWidth);
+    	centerY = keepInView(centerY, photoHeight, viewHeight);
+
+    	double left = viewWidth / 2 - centerX * scale;
+    	double top = viewHeight / 2 - centerY * scale;
+
+    	preview.setFitWidth(photoWidth * scale);
+    	preview.setFitHeight(photoHeight * scale);
+    	preview.setLayoutX(left);
+    	preview.setLayoutY(top);
+
+    	Set<String> visible = new HashSet<String>();
+
+    	// The whole photo was read at the size of the view, so tiles are only needed once the user zooms in
+    	if (scale > fitScale * 1.01)
+    	{
+    		// Use the smallest level that still has at least one pixel for each pixel of the screen
+    		double screenScale = scale * Screen.getPrimary().getOutputScaleX();
+    		int level = (int) Math.floor(Math.log(1 / screenScale) / Math.log(2));
+    		level = Math.max(0, Math.min(pyramid.getLevelCount() - 1, level));
+
+    		// Pixels of the photo each tile covers at that level
+    		double span = (double) TilePyramid.tileSize * (1 << level);
+
+    		int firstColumn = Math.max(0, (int) Math.floor(-left / scale / span));
+    		int lastColumn = Math.min(pyramid.getColumns(level) - 1, (int) Math.floor((viewWidth - left) / scale / span));
+    		int firstRow = Math.max(0, (int) Math.floor(-top / scale / span));
+    		int lastRow = Math.min(pyramid.getRows(level) - 1, (int) Math.floor((viewHeight - top) / scale / span));
+
+    		for (int row = firstRow; row <= lastRow; row++)
+    		{
+    			for (int column = firstColumn; column <= lastColumn; column++)
+    			{
+    				String name = level + "-" + column + "-" + row;
+    				visible.add(name);
+
+    				Tile tile = tiles.get(name);
+
+    				if (tile == null)
+    				{
+    					tile = new Tile(name, level, column, row);
+    					tiles.put(name, tile);
+    					tileGroup.getChildren().add(tile.imageView);
+    				}
+
+    				// Edges are rounded to whole pixels the same way for every tile, so no gaps show between them
+    				double tileLeft = Math.floor(left + column * span * scale);
+    				double tileTop = Math.floor(top + row * span * scale);
+    				double tileRight = Math.floor(left + Math.min((column + 1) * span, photoWidth) * scale);
+    				double tileBottom = Math.floor(top + Math.min((row + 1) * span, photoHeight) * scale);
+
+    				tile.imageView.setLayoutX(tileLeft);
+    				tile.imageView.setLayoutY(tileTop);
+    				tile.imageView.setFitWidth(tileRight - tileLeft);
+    				tile.imageView.setFitHeight(tileBottom - tileTop);
+    			}
+    		}
+    	}
+
+    	Iterator<Tile> shownTiles = tiles.values().iterator();
+
+    	while (shownTiles.hasNext())
+    	{
+    		Tile tile = shownTiles.next();
+
+    		if (!visible.contains(tile.name))
+    		{
+    			tile.cancel();
+    			tileGroup.getChildren().remove(tile.imageView);
+    			shownTiles.remove();
+    		}
+    	}
+    }
+
+    /**
+     * Moves a point of the photo so the photo covers the view, or to the middle of the photo if it is smaller than the view
+     *
+     * @param center	Point of the photo at the middle of the view, in its own pixels
+     * @param photoLength	Width or height of the photo
+     * @param viewLength	Width or height of the view
+     * @return	The point moved so the photo covers the view
+     */
+    private double keepInView(double center, int photoLength, double viewLength)
+    {
+    	double halfView = viewLength / 2 / scale;
+
+    	if (halfView * 2 >= photoLength)
+    	{
+    		return photoLength / 2.0;
+    	}
+
+    	return Math.max(halfView, Math.min(photoLength - halfView, center));
+    }
+
+    /**
+     * One tile shown in the view, along with the loading of its image
+     */
+    private class Tile
+    {
+    	/**
+    	 * Level, column and row of the tile
+    	 */
+    	private final String name;
+
+    	/**
+    	 * Shows the tile
+    	 */
+    	private final ImageView imageView;
+
+    	/**
+    	 * The request for the tile to be made, or null if it is not being made for this view
+    	 */
+    	private CompletableFuture<File> tileRequest;
+
+    	/**
+    	 * True while the tile's image is being read
+    	 */
+    	private boolean loading;
+
+    	/**
+    	 * Constructor for Tile. It starts loading the tile, which is only shown once it has been read.
+    	 *
+    	 * @param name	Level, column and row of the tile
+    	 * @param level	The level
+    	 * @param column	Column of the tile
+    	 * @param row	Row of the tile
+    	 */
+    	Tile(String name, int level, int column, int row)
+    	{
+    		this.name = name;
+    		imageView = new ImageView();
+    		imageView.setSmooth(true);
+
+    		ImageCache imageCache = ImageCache.get();
+    		Image cachedImage = imageCache.getCachedImage(cacheKey(), TilePyramid.tileSize);
+
+    		if (cachedImage != null)
+    		{
+    			showImage(cachedImage);
+    			return;
+    		}
+
+    		File tileFile = pyramid.getTile(level, column, row);
+
+    		if (tileFile != null)
+    		{
+    			showImage(imageCache.loadImage(cacheKey(), TilePyramid.tileSize, tileFile));
+    			return;
+    		}
+
+    		CompletableFuture<File> request = pyramid.requestTile(level, column, row);
+    		tileRequest = request;
+
+    		request.thenAccept(madeTile -> Platform.runLater(() -> {
+    			// The tile may have moved out of the view while it was made
+    			if (tileRequest != request)
+    			{
+    				return;
+    			}
+
+    			tileRequest = null;
+
+    			// A tile that could not be made is left out, and the whole photo shows through
+    			if (madeTile != null)
+    			{
+    				showImage(imageCache.loadImage(cacheKey(), TilePyramid.tileSize, madeTile));
+    			}
+    		}));
+    	}
+
+    	/**
+    	 * Shows the tile's image once it has been read
+    	 *
+    	 * @param image	The image, which may still be loading
+    	 */
+    	private void showImage(Image image)
+    	{
+    		if (image.getProgress() >= 1)
+    		{
+    			imageLoaded(image);
+    			return;
+    		}
+
+    		loading = true;
+
+    		image.progressProperty().addListener((observable, oldProgress, progress) -> {
+    			if (progress.doubleValue() >= 1 && loading)
+    			{
+    				loading = false;
+    				imageLoaded(image);
+    			}
+    		});
+    	}
+
+    	/**
+    	 * Shows an image once it has been read, unless it could not be read
+    	 *
+    	 * @param image	The image
+    	 */
+    	private void imageLoaded(Image image)
+    	{
+    		if (!image.isError())
+    		{
+    			imageView.setImage(image);
+    		}
+    	}
+
+    	/**
+    	 * Cancels the making and reading of the tile
+    	 */
+    	private void cancel()
+    	{
+    		if (tileRequest != null)
+    		{
+    			tileRequest.cancel(false);
+    			tileRequest = null;
+    		}
+
+    		if (loading)
+    		{
+    			ImageCache.get().cancel(cacheKey(), TilePyramid.tileSize);
+    			loading = false;
+    		}
+    	}
+
+    	/**
+    	 * Returns the name the tile is kept under in the image cache
+    	 *
+    	 * @return	The photo's path and when it was last changed, along with the tile's level, column and row
+    	 */
+    	private String cacheKey()
+    	{
+    		// An edited photo's tiles are new files, so the ones read from before it changed are not shown
+    		return photoPath + "@" + Long.toHexString(pyramid.getLastModified()) + "#" + name;
+    	}
+    }
+}
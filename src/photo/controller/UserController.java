@@ -4,7 +4,6 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
 import java.util.List;
 
 import javafx.application.Platform;
@@ -17,6 +16,7 @@ import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.input.MouseEvent;
@@ -24,7 +24,9 @@ import javafx.scene.layout.AnchorPane;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import photo.app.Album;
+import photo.app.JournalEntry;
 import photo.app.Photo;
+import photo.app.Session;
 import photo.app.User;
 import photo.app.UserManagement;
 
@@ -108,6 +110,11 @@ public class UserController {
      */
     private UserManagement userManager;
     
+    /**
+     * Keeps track of what the user is currently looking at, shared by all windows
+     */
+    private Session session;
+    
     /**
      * Observable List for the list of albums for the user
      */
@@ -192,6 +199,24 @@ public class UserController {
     @FXML
     private TextField searchTwoTagValueSecond;
     
+    /**
+     * When checked, the tag searches also find tag values with a typo or two
+     */
+    @FXML
+    private CheckBox fuzzyTagSearch;
+    
+    /**
+     * Will search for photos matching the query typed in searchQueryText
+     */
+    @FXML
+    private Button searchQuery;
+    
+    /**
+     * Input query, such as person:alice AND date:2020-01-01..2020-12-31
+     */
+    @FXML
+    private TextField searchQueryText;
+    
     /*
      * album 
      */
@@ -239,6 +264,7 @@ public class UserController {
     		}else {
     			album = new Album(oldName);
     			currentUser.addAlbum(album);
+    			userManager.recordChange(JournalEntry.Type.ADD_ALBUM, currentUser.getUserName(), oldName);
     			textToShow.setText("Album added");
     		}
     	}
@@ -253,6 +279,7 @@ public class UserController {
     			// get an instance of Album and set new name with given text
     			album = currentUser.getAlbum(oldName);
     			album.changeAlbumName(newName);
+    			userManager.recordChange(JournalEntry.Type.RENAME_ALBUM, currentUser.getUserName(), oldName, newName);
     			textToShow.setText("Album name changed");
     			newAlbumText.setText("Rename Album to This");
     		}
@@ -268,6 +295,7 @@ public class UserController {
         		}else {
         			//album = new Album(oldName);
         			currentUser.removeAlbum(oldName);
+        			userManager.recordChange(JournalEntry.Type.DELETE_ALBUM, currentUser.getUserName(), oldName);
         			textToShow.setText("Album removed");
         		}
     	}
@@ -280,8 +308,7 @@ public class UserController {
     		}
     		else
     		{
-    			userManager.currentAlbum = currentUser.getAlbum(oldName);
-    			UserManagement.writeApp(userManager);
+    			session.currentAlbum = currentUser.getAlbum(oldName);
     			
         		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Album.fxml"));
         		
@@ -330,29 +357,8 @@ public class UserController {
     			return;
     		}
     		
-    		List<Photo> searchResults = new ArrayList<Photo>();
-    		List<Album> userAlbumList = currentUser.getListOfAlbums();
-    		
-    		// If there are any duplicate photos in the search, we only need one of them
-    		List<String> photoPathsFromResults = new ArrayList<String>();
-    		
-    		for (int i = 0; i < userAlbumList.size(); i++)
-    		{
-    			Album currentAlbum = userAlbumList.get(i);
-    			List<Photo> currentAlbumPhotos = currentAlbum.getPhotos();
-    			
-    			for (int j = 0; j < currentAlbumPhotos.size(); j++)
-    			{
-    				Photo currentPhoto = currentAlbumPhotos.get(j);
-    				
-    				if (currentPhoto.isPhotoWithinDateRange(fromLocalDate, toLocalDate) && 
-    						!photoPathsFromResults.contains(currentPhoto.getPhotoPath()))
-    				{
-    					searchResults.add(currentPhoto);
-    					photoPathsFromResults.add(currentPhoto.getPhotoPath());
-    				}
-    			}
-    		}
+    		// The date index already has each photo only once, sorted by date
+    		List<Photo> searchResults = currentUser.searchDateRange(fromLocalDate, toLocalDate);
     		
     		if (searchResults.size() == 0)
     		{
@@ -360,10 +366,7 @@ public class UserController {
     			return;
     		}
     		
-    		userManager.photoSearchResults.clear();
-    		userManager.photoSearchResults.addAll(searchResults);
-    		
-			UserManagement.writeApp(userManager);
+    		session.photoSearchResults = searchResults;
 			
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Search.fxml"));
     		
@@ -385,29 +388,8 @@ public class UserController {
     			return;
     		}
     		
-    		List<Photo> searchResults = new ArrayList<Photo>();
-    		List<Album> userAlbumList = currentUser.getListOfAlbums();
-    		
-    		// If there are any duplicate photos in the search, we only need one of them
-    		List<String> photoPathsFromResults = new ArrayList<String>();
-    		
-    		for (int i = 0; i < userAlbumList.size(); i++)
-    		{
-    			Album currentAlbum = userAlbumList.get(i);
-    			List<Photo> currentAlbumPhotos = currentAlbum.getPhotos();
-    			
-    			for (int j = 0; j < currentAlbumPhotos.size(); j++)
-    			{
-    				Photo currentPhoto = currentAlbumPhotos.get(j);
-    				
-    				if (currentPhoto.searchTagsOnePair(tagType, tagValue) && 
-    						!photoPathsFromResults.contains(currentPhoto.getPhotoPath()))
-    				{
-    					searchResults.add(currentPhoto);
-    					photoPathsFromResults.add(currentPhoto.getPhotoPath());
-    				}
-    			}
-    		}
+    		// The tag index already has each photo only once
+    		List<Photo> searchResults = currentUser.searchTag(tagType, tagValue, fuzzyTagSearch.isSelected());
     		
     		if (searchResults.size() == 0)
     		{
@@ -415,10 +397,7 @@ public class UserController {
     			return;
     		}
     		
-    		userManager.photoSearchResults.clear();
-    		userManager.photoSearchResults.addAll(searchResults);
-    		
-			UserManagement.writeApp(userManager);
+    		session.photoSearchResults = searchResults;
 			
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Search.fxml"));
     		
@@ -443,29 +422,9 @@ public class UserController {
     			return;
     		}
     		
-    		List<Photo> searchResults = new ArrayList<Photo>();
-    		List<Album> userAlbumList = currentUser.getListOfAlbums();
-    		
-    		// If there are any duplicate photos in the search, we only need one of them
-    		List<String> photoPathsFromResults = new ArrayList<String>();
-    		
-    		for (int i = 0; i < userAlbumList.size(); i++)
-    		{
-    			Album currentAlbum = userAlbumList.get(i);
-    			List<Photo> currentAlbumPhotos = currentAlbum.getPhotos();
-    			
-    			for (int j = 0; j < currentAlbumPhotos.size(); j++)
-    			{
-    				Photo currentPhoto = currentAlbumPhotos.get(j);
-    				
-    				if (currentPhoto.searchTagsTwoPairsAnd(firstTagType, firstTagValue, secondTagType, secondTagValue) && 
-    						!photoPathsFromResults.contains(currentPhoto.getPhotoPath()))
-    				{
-    					searchResults.add(currentPhoto);
-    					photoPathsFromResults.add(currentPhoto.getPhotoPath());
-    				}
-    			}
-    		}
+    		// The tag index already has each photo only once
+    		List<Photo> searchResults = currentUser.searchTagsAnd(firstTagType, firstTagValue, secondTagType, secondTagValue, 
+    				fuzzyTagSearch.isSelected());
     		
     		if (searchResults.size() == 0)
     		{
@@ -473,10 +432,7 @@ public class UserController {
     			return;
     		}
     		
-    		userManager.photoSearchResults.clear();
-    		userManager.photoSearchResults.addAll(searchResults);
-    		
-			UserManagement.writeApp(userManager);
+    		session.photoSearchResults = searchResults;
 			
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Search.fxml"));
     		
@@ -501,28 +457,47 @@ public class UserController {
     			return;
     		}
     		
-    		List<Photo> searchResults = new ArrayList<Photo>();
-    		List<Album> userAlbumList = currentUser.getListOfAlbums();
+    		// The tag index already has each photo only once
+    		List<Photo> searchResults = currentUser.searchTagsOr(firstTagType, firstTagValue, secondTagType, secondTagValue, 
+    				fuzzyTagSearch.isSelected());
+    		
+    		if (searchResults.size() == 0)
+    		{
+    			textToShow.setText("No photos found");
+    			return;
+    		}
+    		
+    		session.photoSearchResults = searchResults;
+			
+    		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Search.fxml"));
+    		
+    		Stage stage = (Stage)((Node)event.getSource()).getScene().getWindow();
+    		stage.setTitle("User: "+ currentUser.getUserName());
+    		Scene scene = new Scene(root);
+    		stage.setScene(scene);
+    		stage.show();
+    	}
+    	
+    	// Search button for a query clicked
+    	if(event.getSource()==searchQuery) {
+    		String query = searchQueryText.getText();
+    		
+    		// Return if the input field is empty
+    		if (query.trim().isEmpty())
+    		{
+    			return;
+    		}
     		
-    		// If there are any duplicate photos in the search, we only need one of them
-    		List<String> photoPathsFromResults = new ArrayList<String>();
+    		List<Photo> searchResults = null;
     		
-    		for (int i = 0; i < userAlbumList.size(); i++)
+    		try
     		{
-    			Album currentAlbum = userAlbumList.get(i);
-    			List<Photo> currentAlbumPhotos = currentAlbum.getPhotos();
-    			
-    			for (int j = 0; j < currentAlbumPhotos.size(); j++)
-    			{
-    				Photo currentPhoto = currentAlbumPhotos.get(j);
-    				
-    				if (currentPhoto.searchTagsTwoPairsOr(firstTagType, firstTagValue, secondTagType, secondTagValue) && 
-    						!photoPathsFromResults.contains(currentPhoto.getPhotoPath()))
-    				{
-    					searchResults.add(currentPhoto);
-    					photoPathsFromResults.add(currentPhoto.getPhotoPath());
-    				}
-    			}
+    			searchResults = currentUser.search(query);
+    		}
+    		catch (IllegalArgumentException e)
+    		{
+    			textToShow.setText(e.getMessage());
+    			return;
     		}
     		
     		if (searchResults.size() == 0)
@@ -531,10 +506,7 @@ public class UserController {
     			return;
     		}
     		
-    		userManager.photoSearchResults.clear();
-    		userManager.photoSearchResults.addAll(searchResults);
-    		
-			UserManagement.writeApp(userManager);
+    		session.photoSearchResults = searchResults;
 			
     		Parent root = FXMLLoader.load(getClass().getResource("/photo/view/Search.fxml"));
     		
@@ -598,10 +570,19 @@ public class UserController {
     @FXML
     void initialize() throws ClassNotFoundException, IOException {
     	
-    	// Read the dat file
-    	userManager = UserManagement.readApp();
-    	currentUser = userManager.currentUser;
+    	// Get the data shared by all windows
+    	session = Session.get();
+    	userManager = session.getUserManager();
+    	currentUser = session.currentUser;
     	
     	populateAlbumListview();
+    	
+    	// Suggest tag types and values that are already used while they are typed
+    	AutoComplete.attach(searchOneTagType, currentUser::suggestTagTypes);
+    	AutoComplete.attach(searchOneTagValue, text -> currentUser.suggestTagValues(searchOneTagType.getText(), text));
+    	AutoComplete.attach(searchTwoTagTypeFirst, currentUser::suggestTagTypes);
+    	AutoComplete.attach(searchTwoTagValueFirst, text -> currentUser.suggestTagValues(searchTwoTagTypeFirst.getText(), text));
+    	AutoComplete.attach(searchTwoTagTypeSecond, currentUser::suggestTagTypes);
+    	AutoComplete.attach(searchTwoTagValueSecond, text -> currentUser.suggestTagValues(searchTwoTagTypeSecond.getText(), text));
     }
 }
\ No newline at end of file
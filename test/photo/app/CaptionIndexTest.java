@@ -0,0 +1,133 @@
+package photo.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for CaptionIndex, covering how words are split and stemmed and how words, prefixes and phrases are found
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class CaptionIndexTest {
+
+	private CaptionIndex index;
+
+	@Before
+	public void setUp()
+	{
+		index = new CaptionIndex();
+		index.addPhoto(0, "Running on the beaches");
+		index.addPhoto(1, "The happiest puppies, at the beach!");
+		index.addPhoto(2, "Run, run, run");
+		index.addPhoto(3, "Stopped the bus");
+	}
+
+	@Test
+	public void stems()
+	{
+		assertEquals("beach", CaptionIndex.stem("beaches"));
+		assertEquals("puppy", CaptionIndex.stem("puppies"));
+		assertEquals("run", CaptionIndex.stem("running"));
+		assertEquals("stop", CaptionIndex.stem("stopped"));
+		assertEquals("fall", CaptionIndex.stem("falling"));
+		assertEquals("glass", CaptionIndex.stem("glasses"));
+		assertEquals("bus", CaptionIndex.stem("bus"));
+		assertEquals("sing", CaptionIndex.stem("sing"));
+		assertEquals("cactus", CaptionIndex.stem("cactus"));
+	}
+
+	@Test
+	public void tokenizeSplitsOnAnythingButLettersAndDigits()
+	{
+		assertEquals(Arrays.asList("the", "happiest", "puppy", "at", "the", "beach"),
+				CaptionIndex.tokenize("The happiest puppies, at the beach!"));
+		assertEquals(Arrays.asList("photo", "2020"), CaptionIndex.tokenize("photo#2020"));
+		assertEquals(Arrays.asList(), CaptionIndex.tokenize(null));
+		assertEquals(Arrays.asList(), CaptionIndex.tokenize(" ,.! "));
+	}
+
+	@Test
+	public void wordsMatchInAnyForm()
+	{
+		assertEquals(photoIds(0, 1), index.photosWithWord("Beach"));
+		assertEquals(photoIds(0, 2), index.photosWithWord("runs"));
+		assertEquals(photoIds(3), index.photosWithWord("stop"));
+		assertEquals(photoIds(), index.photosWithWord("dog"));
+	}
+
+	@Test
+	public void prefixesMatchTheWordsAsWritten()
+	{
+		// "runni" is not the start of the stem "run", only of "running" as it was written
+		assertEquals(photoIds(0), index.photosWithPrefix("runni"));
+		assertEquals(photoIds(1), index.photosWithPrefix("puppie"));
+		assertEquals(1, index.countPhotosWithPrefix("puppie"));
+	}
+
+	@Test
+	public void prefixesMatchTheStems()
+	{
+		assertEquals(photoIds(0, 2), index.photosWithPrefix("run"));
+		assertEquals(photoIds(1), index.photosWithPrefix("puppy"));
+		assertEquals(photoIds(0, 1), index.photosWithPrefix("beach"));
+		assertEquals(photoIds(), index.photosWithPrefix("dog"));
+	}
+
+	@Test
+	public void phrasesNeedTheWordsInOrder()
+	{
+		assertEquals(photoIds(1), index.photosWithPhrase("at the beach"));
+		assertEquals(photoIds(), index.photosWithPhrase("beach at the"));
+		assertEquals(photoIds(0), index.photosWithPhrase("run on the beach"));
+		assertEquals(1, index.countPhotosWithPhrase("at the beaches"));
+	}
+
+	@Test
+	public void removedAndChangedCaptionsAreNotFound()
+	{
+		index.removePhoto(0);
+
+		assertEquals(photoIds(), index.photosWithPrefix("runni"));
+		assertEquals(photoIds(2), index.photosWithWord("run"));
+		assertEquals(photoIds(1), index.photosWithWord("beach"));
+
+		index.addPhoto(2, "Walking");
+
+		assertEquals(photoIds(), index.photosWithWord("run"));
+		assertEquals(photoIds(2), index.photosWithPrefix("walki"));
+	}
+
+	@Test
+	public void rankPutsTheBestMatchFirst()
+	{
+		int[] ranked = index.rank(photoIds(0, 2), CaptionIndex.tokenize("run"));
+
+		assertArrayEquals(new int[] {2, 0}, ranked);
+	}
+
+	/**
+	 * Makes a BitSet with the given ids
+	 *
+	 * @param photoIds	The ids
+	 * @return	The BitSet
+	 */
+	private static BitSet photoIds(int... photoIds)
+	{
+		BitSet bits = new BitSet();
+
+		for (int photoId: photoIds)
+		{
+			bits.set(photoId);
+		}
+
+		return bits;
+	}
+}
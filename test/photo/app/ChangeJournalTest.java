@@ -0,0 +1,406 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for ChangeJournal, covering replaying changes on top of the snapshot, changes that were only partly written,
+ * and compacting the journal into the snapshot
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class ChangeJournalTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		directory = Files.createTempDirectory("journal").toFile();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for (File file: directory.listFiles())
+		{
+			file.delete();
+		}
+
+		directory.delete();
+	}
+
+	@Test
+	public void replaysChangesOnTopOfTheSnapshot() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips"), addAlbum("family")));
+		journal.append(Arrays.asList(new JournalEntry(JournalEntry.Type.RENAME_ALBUM, "tester", "family", "home")));
+
+		User user = newJournal().load();
+
+		assertEquals(Arrays.asList("trips", "home"), albumNames(user));
+	}
+
+	@Test
+	public void replaysWhatWasReadFromEachPhoto() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+
+		PhotoMetadata metadata = new PhotoMetadata(null, 6, 4000, 3000, 40.5, -74.25);
+		Photo photo = new Photo(new File(directory, "gone.jpg").getPath(), 1234567890000L, metadata);
+
+		journal.append(Arrays.asList(addAlbum("trips"), JournalEntry.addPhotos("tester", "trips", Arrays.asList(photo))));
+
+		// The photo file does not exist, so the date and metadata can only come from the journal
+		Photo replayed = newJournal().load().getAlbum("trips").getPhoto(0);
+
+		assertEquals(1234567890000L, replayed.getTimeTaken());
+		assertEquals(6, replayed.getMetadata().getOrientation());
+		assertEquals(4000, replayed.getMetadata().getWidth());
+		assertEquals(-74.25, replayed.getMetadata().getLongitude(), 0);
+	}
+
+	@Test
+	public void replaysPhotosAddedBeforeFileInformationWasWritten() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+
+		String first = new File(directory, "first.jpg").getPath();
+		String second = new File(directory, "second.jpg").getPath();
+		String third = new File(directory, "third.jpg").getPath();
+
+		journal.append(Arrays.asList(addAlbum("trips"),
+				new JournalEntry(JournalEntry.Type.ADD_PHOTOS, "tester", "trips", first, second),
+				new JournalEntry(JournalEntry.Type.ADD_PHOTO, "tester", "trips", third)));
+
+		Album album = newJournal().load().getAlbum("trips");
+
+		assertEquals(3, album.getAlbumSize());
+		assertEquals(third, album.getPhoto(2).getPhotoPath());
+	}
+
+	@Test
+	public void aChangeThatNoLongerFitsIsSkipped() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+
+		// Missing the path of the photo
+		journal.append(Arrays.asList(addAlbum("trips"), new JournalEntry(JournalEntry.Type.ADD_PHOTO, "tester", "trips"),
+				addAlbum("family")));
+
+		assertEquals(Arrays.asList("trips", "family"), albumNames(newJournal().load()));
+	}
+
+	@Test
+	public void dropsAChangeThatWasOnlyPartlyWritten() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips"), addAlbum("family")));
+
+		File journalFile = onlyJournalFile();
+		long wholeLength = journalFile.length();
+
+		// The program stopped while writing the second change
+		try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw"))
+		{
+			file.setLength(wholeLength - 3);
+		}
+
+		ChangeJournal reopened = newJournal();
+		assertEquals(Arrays.asList("trips"), albumNames(reopened.load()));
+		assertTrue(journalFile.length() < wholeLength - 3);
+
+		// Changes appended after the cut are read
+		reopened.append(Arrays.asList(addAlbum("pets")));
+
+		assertEquals(Arrays.asList("trips", "pets"), albumNames(newJournal().load()));
+	}
+
+	@Test
+	public void stopsAtAChangeWithAWrongChecksum() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips")));
+
+		File journalFile = onlyJournalFile();
+		long firstLength = journalFile.length();
+		journal.append(Arrays.asList(addAlbum("family")));
+
+		// One bit of the second change's name is flipped
+		try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw"))
+		{
+			long position = journalFile.length() - Integer.BYTES - 1;
+			file.seek(position);
+			int letter = file.read();
+			file.seek(position);
+			file.write(letter ^ 1);
+		}
+
+		assertEquals(Arrays.asList("trips"), albumNames(newJournal().load()));
+		assertEquals(firstLength, journalFile.length());
+	}
+
+	@Test
+	public void aWholeChangeThatCannotBeReadIsNeverCutOff() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips")));
+
+		// A change written by a newer version, with a kind this version does not know, followed by one it does know
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream change = new DataOutputStream(bytes);
+		change.writeUTF("FUTURE_CHANGE");
+		change.writeInt(1);
+		change.writeUTF("tester");
+		byte[] record = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+
+		File journalFile = onlyJournalFile();
+
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(journalFile, true)))
+		{
+			out.writeInt(record.length);
+			out.write(record);
+			out.writeInt((int) crc.getValue());
+		}
+
+		journal.append(Arrays.asList(addAlbum("family")));
+		long length = journalFile.length();
+
+		try
+		{
+			newJournal().load();
+			fail("The change that cannot be read should stop the load");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+
+		assertEquals(length, journalFile.length());
+	}
+
+	@Test
+	public void aFailedCompactionDoesNotFailTheSave() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+
+		// The new snapshot cannot be written while a folder is in the way of its temporary file
+		File blocker = new File(directory, "user.dat.tmp");
+		assertTrue(blocker.mkdir());
+
+		journal.append(addAlbums(largeAlbumNames()));
+
+		for (int wait = 0; journal.getCompactionFailure() == null && wait < 200; wait++)
+		{
+			Thread.sleep(50);
+		}
+
+		assertNotNull(journal.getCompactionFailure());
+
+		// The next save works and tries the compaction again
+		blocker.delete();
+		journal.append(Arrays.asList(addAlbum("after")));
+
+		for (int wait = 0; journal.getCompactionFailure() != null && wait < 200; wait++)
+		{
+			Thread.sleep(50);
+		}
+
+		assertNull(journal.getCompactionFailure());
+		assertEquals(largeAlbumNames().size() + 1, newJournal().load().getListOfAlbums().size());
+	}
+
+	@Test
+	public void stopsAtALengthLongerThanTheFile() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips")));
+
+		// A damaged length must not make the reader ask for a huge array
+		try (FileOutputStream out = new FileOutputStream(onlyJournalFile(), true))
+		{
+			out.write(new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 1, 2, 3});
+		}
+
+		assertEquals(Arrays.asList("trips"), albumNames(newJournal().load()));
+	}
+
+	@Test
+	public void compactsALargeJournalIntoTheSnapshot() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+
+		List<String> expected = largeAlbumNames();
+		journal.append(addAlbums(expected));
+		File compactedJournal = onlyJournalFile();
+
+		// The compaction runs in the background and deletes the journal once it is in the snapshot
+		for (int wait = 0; compactedJournal.exists() && wait < 200; wait++)
+		{
+			Thread.sleep(50);
+		}
+
+		assertFalse(compactedJournal.exists());
+
+		journal.append(Arrays.asList(addAlbum("after")));
+		expected.add("after");
+
+		assertEquals(expected, albumNames(newJournal().load()));
+	}
+
+	@Test
+	public void writingASnapshotStartsANewJournal() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips")));
+
+		User user = newJournal().load();
+		user.addAlbum(new Album("family"));
+		journal.writeSnapshot(user);
+		journal.append(Arrays.asList(addAlbum("pets")));
+
+		// The change to trips is in the snapshot and is not replayed again
+		assertEquals(Arrays.asList("trips", "family", "pets"), albumNames(newJournal().load()));
+	}
+
+	@Test
+	public void deleteRemovesEveryFile() throws Exception
+	{
+		ChangeJournal journal = newJournal();
+		journal.writeSnapshot(new User("tester"));
+		journal.append(Arrays.asList(addAlbum("trips")));
+		assertTrue(journal.snapshotExists());
+
+		journal.delete();
+
+		assertFalse(journal.snapshotExists());
+		assertEquals(0, directory.list().length);
+	}
+
+	/**
+	 * Opens the journal in the test's folder, the same way as after the program is started again
+	 *
+	 * @return	The journal
+	 */
+	private ChangeJournal newJournal()
+	{
+		return new ChangeJournal(directory.getPath(), "user.dat");
+	}
+
+	/**
+	 * Returns the one journal file in the test's folder
+	 *
+	 * @return	The journal file
+	 */
+	private File onlyJournalFile()
+	{
+		File[] journalFiles = directory.listFiles((dir, name) -> name.startsWith("user.dat.journal."));
+
+		assertNotNull(journalFiles);
+		assertEquals(1, journalFiles.length);
+
+		return journalFiles[0];
+	}
+
+	/**
+	 * Makes album names long enough that adding them grows the journal past the size that starts a compaction
+	 *
+	 * @return	The album names
+	 */
+	private static List<String> largeAlbumNames()
+	{
+		List<String> names = new ArrayList<String>();
+		char[] padding = new char[30000];
+		Arrays.fill(padding, 'x');
+
+		for (int i = 0; names.size() * padding.length <= ChangeJournal.compactionThreshold; i++)
+		{
+			names.add("album" + i + new String(padding));
+		}
+
+		return names;
+	}
+
+	/**
+	 * Makes the changes of albums being added
+	 *
+	 * @param albumNames	Names of the albums
+	 * @return	The changes
+	 */
+	private static List<JournalEntry> addAlbums(List<String> albumNames)
+	{
+		List<JournalEntry> changes = new ArrayList<JournalEntry>();
+
+		for (String albumName: albumNames)
+		{
+			changes.add(addAlbum(albumName));
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Makes the change of an album being added
+	 *
+	 * @param albumName	Name of the album
+	 * @return	The change
+	 */
+	private static JournalEntry addAlbum(String albumName)
+	{
+		return new JournalEntry(JournalEntry.Type.ADD_ALBUM, "tester", albumName);
+	}
+
+	/**
+	 * Returns the names of a user's albums, in order
+	 *
+	 * @param user	The user
+	 * @return	The album names
+	 */
+	private static List<String> albumNames(User user)
+	{
+		List<String> names = new ArrayList<String>();
+
+		for (Album album: user.getListOfAlbums())
+		{
+			names.add(album.getAlbumName());
+		}
+
+		return names;
+	}
+}
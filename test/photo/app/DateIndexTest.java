@@ -0,0 +1,108 @@
+package photo.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for DateIndex, mostly the ends of the date ranges found by its binary searches
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class DateIndexTest {
+
+	private DateIndex index;
+
+	@Before
+	public void setUp()
+	{
+		index = new DateIndex();
+		index.addPhoto(0, 100);
+		index.addPhoto(1, 102);
+		index.addPhoto(2, 100);
+		index.addPhoto(3, 105);
+		index.addPhoto(4, 102);
+	}
+
+	@Test
+	public void rangeIncludesBothEnds()
+	{
+		assertArrayEquals(new int[] {0, 2, 1, 4}, index.photosInRange(100, 102));
+		assertEquals(4, index.countPhotosInRange(100, 102));
+	}
+
+	@Test
+	public void singleDay()
+	{
+		assertArrayEquals(new int[] {1, 4}, index.photosInRange(102, 102));
+		assertArrayEquals(new int[0], index.photosInRange(101, 101));
+	}
+
+	@Test
+	public void rangesOutsideThePhotos()
+	{
+		assertArrayEquals(new int[0], index.photosInRange(0, 99));
+		assertArrayEquals(new int[0], index.photosInRange(106, 200));
+		assertArrayEquals(new int[0], index.photosInRange(105, 100));
+		assertEquals(0, index.countPhotosInRange(105, 100));
+	}
+
+	@Test
+	public void openEnds()
+	{
+		assertArrayEquals(new int[] {0, 2, 1, 4, 3}, index.photosInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+		assertArrayEquals(new int[] {3}, index.photosInRange(103, Integer.MAX_VALUE));
+		assertArrayEquals(new int[] {0, 2}, index.photosInRange(Integer.MIN_VALUE, 101));
+	}
+
+	@Test
+	public void photosAddedOrRemovedAfterASearchAreFound()
+	{
+		index.photosInRange(100, 105);
+		index.removePhoto(2);
+		index.addPhoto(7, 101);
+
+		assertArrayEquals(new int[] {0, 7, 1, 4, 3}, index.photosInRange(100, 105));
+		assertEquals(5, index.countPhotos());
+	}
+
+	@Test
+	public void movingAPhotoToAnotherDay()
+	{
+		index.addPhoto(3, 99);
+
+		assertArrayEquals(new int[] {3, 0, 2}, index.photosInRange(99, 100));
+		assertArrayEquals(new int[0], index.photosInRange(105, 105));
+	}
+
+	@Test
+	public void daysBefore1970()
+	{
+		index.addPhoto(5, -3650);
+		index.addPhoto(6, -1);
+
+		assertArrayEquals(new int[] {5, 6}, index.photosInRange(-4000, 0));
+		assertEquals(2, index.photosInRange(Integer.MIN_VALUE, 99).length);
+	}
+
+	@Test
+	public void toDayKeepsFarDatesInRange()
+	{
+		assertEquals(Integer.MAX_VALUE, DateIndex.toDay(LocalDate.MAX));
+		assertEquals(Integer.MIN_VALUE, DateIndex.toDay(LocalDate.MIN));
+		assertEquals(0, DateIndex.toDay(LocalDate.of(1970, 1, 1)));
+	}
+
+	@Test
+	public void photoSetInRangeMatchesPhotosInRange()
+	{
+		assertEquals(3, index.photoSetInRange(102, 105).cardinality());
+		assertEquals(index.allPhotos(), index.photoSetInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+	}
+}
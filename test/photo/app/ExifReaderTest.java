@@ -0,0 +1,255 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for ExifReader, reading a small JPEG header made by the test, whole and with damaged parts
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class ExifReaderTest {
+
+	/**
+	 * Where the entry of the date taken starts in the TIFF file made by the test
+	 */
+	private static final int dateTakenEntry = 52;
+
+	private Path photoFile;
+
+	private ByteBuffer tiff;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		photoFile = Files.createTempFile("exif", ".jpg");
+		tiff = makeTiff();
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists(photoFile);
+	}
+
+	@Test
+	public void readsTheWholeHeader() throws IOException
+	{
+		PhotoMetadata metadata = read(jpeg(tiff, true));
+
+		assertEquals(LocalDateTime.of(2021, 7, 4, 13, 45, 10), metadata.getDateTaken());
+		assertEquals(6, metadata.getOrientation());
+		assertEquals(4000, metadata.getWidth());
+		assertEquals(3000, metadata.getHeight());
+		assertTrue(metadata.hasLocation());
+		assertEquals(-40.5, metadata.getLatitude(), 1e-9);
+		assertEquals(-(74 + 15 / 60.0 + 36 / 3600.0), metadata.getLongitude(), 1e-9);
+	}
+
+	@Test
+	public void sizeComesFromTheExifTableWithoutAFrame() throws IOException
+	{
+		tiff.putShort(50, (short) 3);
+		putEntry(64, 0xA002, 4, 1, 1600);
+		putEntry(76, 0xA003, 3, 1, 1200 << 16);
+
+		PhotoMetadata metadata = read(jpeg(tiff, false));
+
+		assertEquals(1600, metadata.getWidth());
+		assertEquals(1200, metadata.getHeight());
+	}
+
+	@Test
+	public void aHugeTextCountIsIgnored() throws IOException
+	{
+		// A count this close to the largest int used to overflow past the bounds check and ask for a huge array
+		tiff.putInt(dateTakenEntry + 4, 0x7FFFFFF0);
+
+		PhotoMetadata metadata = read(jpeg(tiff, true));
+
+		assertNull(metadata.getDateTaken());
+		assertEquals(6, metadata.getOrientation());
+		assertEquals(-40.5, metadata.getLatitude(), 1e-9);
+	}
+
+	@Test
+	public void textPastTheEndIsIgnored() throws IOException
+	{
+		tiff.putInt(dateTakenEntry + 8, tiff.limit() - 10);
+
+		assertNull(read(jpeg(tiff, true)).getDateTaken());
+
+		tiff.putInt(dateTakenEntry + 8, -5);
+
+		assertNull(read(jpeg(tiff, true)).getDateTaken());
+	}
+
+	@Test
+	public void aTablePastTheEndKeepsWhatWasRead() throws IOException
+	{
+		// The pointer to the GPS table is the last entry of the first table
+		tiff.putInt(34 + 8, 0x7FFFFFF0);
+
+		PhotoMetadata metadata = read(jpeg(tiff, true));
+
+		assertEquals(6, metadata.getOrientation());
+		assertNotNull(metadata.getDateTaken());
+		assertFalse(metadata.hasLocation());
+	}
+
+	@Test
+	public void clockWithoutATimeIsNoDate() throws IOException
+	{
+		byte[] zeros = "0000:00:00 00:00:00\0".getBytes(StandardCharsets.US_ASCII);
+
+		for (int i = 0; i < zeros.length; i++)
+		{
+			tiff.put(200 + i, zeros[i]);
+		}
+
+		assertNull(read(jpeg(tiff, true)).getDateTaken());
+	}
+
+	@Test
+	public void filesThatAreNotJpegs() throws IOException
+	{
+		assertNull(read(new byte[0]));
+		assertNull(read("GIF89a".getBytes(StandardCharsets.US_ASCII)));
+		assertNull(ExifReader.read(photoFile.resolveSibling("missing-" + photoFile.getFileName())));
+	}
+
+	@Test
+	public void aFileCutOffInTheHeader() throws IOException
+	{
+		byte[] whole = jpeg(tiff, true);
+
+		for (int length: new int[] {5, 40, 200})
+		{
+			PhotoMetadata metadata = read(Arrays.copyOf(whole, length));
+
+			assertNotNull(metadata);
+			assertNull(metadata.getDateTaken());
+		}
+	}
+
+	/**
+	 * Writes the bytes to the test's file and reads its metadata
+	 *
+	 * @param bytes	The file
+	 * @return	The metadata
+	 * @throws IOException	If the file cannot be written
+	 */
+	private PhotoMetadata read(byte[] bytes) throws IOException
+	{
+		Files.write(photoFile, bytes);
+
+		return ExifReader.read(photoFile);
+	}
+
+	/**
+	 * Makes a big endian TIFF file with an orientation, a date taken and a location in the southern and western halves
+	 *
+	 * @return	The TIFF file
+	 */
+	private ByteBuffer makeTiff()
+	{
+		tiff = ByteBuffer.allocate(300);
+		tiff.put(0, (byte) 'M').put(1, (byte) 'M').putShort(2, (short) 42).putInt(4, 8);
+
+		// The first table, with the orientation and the pointers to the other tables
+		tiff.putShort(8, (short) 3);
+		putEntry(10, 0x0112, 3, 1, 6 << 16);
+		putEntry(22, 0x8769, 4, 1, 50);
+		putEntry(34, 0x8825, 4, 1, 100);
+
+		// The EXIF table, with the date taken
+		tiff.putShort(50, (short) 1);
+		putEntry(dateTakenEntry, 0x9003, 2, 20, 200);
+
+		// The GPS table
+		tiff.putShort(100, (short) 4);
+		putEntry(102, 1, 2, 2, 'S' << 24);
+		putEntry(114, 2, 5, 3, 240);
+		putEntry(126, 3, 2, 2, 'W' << 24);
+		putEntry(138, 4, 5, 3, 264);
+
+		byte[] date = "2021:07:04 13:45:10\0".getBytes(StandardCharsets.US_ASCII);
+
+		for (int i = 0; i < date.length; i++)
+		{
+			tiff.put(200 + i, date[i]);
+		}
+
+		tiff.putInt(240, 40).putInt(244, 1).putInt(248, 30).putInt(252, 1).putInt(256, 0).putInt(260, 1);
+		tiff.putInt(264, 74).putInt(268, 1).putInt(272, 15).putInt(276, 1).putInt(280, 36).putInt(284, 1);
+
+		return tiff;
+	}
+
+	/**
+	 * Writes one entry of a table
+	 *
+	 * @param entry	Where the entry starts
+	 * @param tag	Number of the value
+	 * @param type	Type of the value
+	 * @param count	Number of values
+	 * @param value	The value, or where it is kept
+	 */
+	private void putEntry(int entry, int tag, int type, int count, int value)
+	{
+		tiff.putShort(entry, (short) tag).putShort(entry + 2, (short) type).putInt(entry + 4, count).putInt(entry + 8, value);
+	}
+
+	/**
+	 * Makes a JPEG file holding the TIFF file in its APP1 segment, stopping where the pixels would start
+	 *
+	 * @param tiff	The TIFF file
+	 * @param withFrame	True to add a frame 4000 pixels wide and 3000 high
+	 * @return	The JPEG file
+	 */
+	private static byte[] jpeg(ByteBuffer tiff, boolean withFrame)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] exifName = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+		int app1Length = 2 + exifName.length + tiff.capacity();
+
+		bytes.write(0xFF);
+		bytes.write(0xD8);
+		bytes.write(0xFF);
+		bytes.write(0xE1);
+		bytes.write(app1Length >> 8);
+		bytes.write(app1Length);
+		bytes.write(exifName, 0, exifName.length);
+		bytes.write(tiff.array(), 0, tiff.capacity());
+
+		if (withFrame)
+		{
+			byte[] frame = {(byte) 0xFF, (byte) 0xC0, 0, 17, 8, 0x0B, (byte) 0xB8, 0x0F, (byte) 0xA0, 3,
+					1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1};
+			bytes.write(frame, 0, frame.length);
+		}
+
+		bytes.write(0xFF);
+		bytes.write(0xDA);
+
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,160 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for PhotoIdSet, mostly around the point where the ids move from the sorted array to a BitSet
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoIdSetTest {
+
+	@Test
+	public void keepsIdsAddedOutOfOrder()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+
+		for (int photoId: new int[] {40, 7, 19, 3, 7, 100})
+		{
+			set.add(photoId);
+		}
+
+		assertEquals(5, set.size());
+		assertTrue(set.contains(3));
+		assertTrue(set.contains(100));
+		assertFalse(set.contains(8));
+		assertEquals(bitSetOf(3, 7, 19, 40, 100), set.toBitSet());
+	}
+
+	@Test
+	public void addAndRemoveSayWhetherTheSetChanged()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+
+		assertTrue(set.add(5));
+		assertFalse(set.add(5));
+		assertTrue(set.remove(5));
+		assertFalse(set.remove(5));
+		assertEquals(0, set.size());
+		assertEquals(new BitSet(), set.toBitSet());
+	}
+
+	@Test
+	public void removesFromTheMiddleOfTheArray()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+
+		for (int photoId = 0; photoId < 10; photoId++)
+		{
+			set.add(photoId * 10);
+		}
+
+		set.remove(50);
+
+		assertEquals(9, set.size());
+		assertFalse(set.contains(50));
+		assertTrue(set.contains(40));
+		assertTrue(set.contains(60));
+		assertTrue(set.add(55));
+		assertTrue(set.contains(55));
+	}
+
+	@Test
+	public void movesToBitSetOnceDenseEnough()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+		BitSet expected = new BitSet();
+
+		// 64 ids close together take less memory as bits, so the set moves to a BitSet on the last add
+		for (int photoId = 0; photoId < 64; photoId++)
+		{
+			assertTrue(set.add(photoId * 2));
+			expected.set(photoId * 2);
+		}
+
+		assertEquals(64, set.size());
+		assertEquals(expected, set.toBitSet());
+
+		assertFalse(set.add(10));
+		assertTrue(set.add(11));
+		assertTrue(set.remove(10));
+		assertFalse(set.remove(10));
+		assertFalse(set.contains(10));
+		assertTrue(set.contains(11));
+		assertEquals(64, set.size());
+	}
+
+	@Test
+	public void staysAnArrayWhileSparse()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+		BitSet expected = new BitSet();
+
+		// Ids far apart would need more bits than the array needs ints
+		for (int photoId = 0; photoId < 200; photoId++)
+		{
+			set.add(photoId * 1000);
+			expected.set(photoId * 1000);
+		}
+
+		assertEquals(200, set.size());
+		assertTrue(set.contains(199000));
+		assertFalse(set.contains(199001));
+		assertEquals(expected, set.toBitSet());
+	}
+
+	@Test
+	public void toBitSetIsACopy()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+
+		for (int photoId = 0; photoId < 100; photoId++)
+		{
+			set.add(photoId);
+		}
+
+		BitSet copy = set.toBitSet();
+		copy.clear(5);
+
+		assertTrue(set.contains(5));
+	}
+
+	@Test
+	public void addToKeepsWhatWasAlreadyThere()
+	{
+		PhotoIdSet set = new PhotoIdSet();
+		set.add(2);
+		set.add(4);
+
+		BitSet photoIds = bitSetOf(1);
+		set.addTo(photoIds);
+
+		assertEquals(bitSetOf(1, 2, 4), photoIds);
+	}
+
+	/**
+	 * Makes a BitSet with the given ids
+	 *
+	 * @param photoIds	The ids
+	 * @return	The BitSet
+	 */
+	private static BitSet bitSetOf(int... photoIds)
+	{
+		BitSet bits = new BitSet();
+
+		for (int photoId: photoIds)
+		{
+			bits.set(photoId);
+		}
+
+		return bits;
+	}
+}
@@ -0,0 +1,203 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for PhotoQuery, parsing queries and running them against a user's photos
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoQueryTest {
+
+	private User user;
+
+	private List<Photo> photos;
+
+	@Before
+	public void setUp()
+	{
+		user = new User("tester");
+		Album album = new Album("trips");
+		user.addAlbum(album);
+
+		photos = new ArrayList<Photo>();
+		photos.add(photo("a.jpg", LocalDate.of(2020, 3, 1)));
+		photos.add(photo("b.jpg", LocalDate.of(2020, 6, 15)));
+		photos.add(photo("c.jpg", LocalDate.of(2021, 1, 1)));
+		photos.add(photo("d.jpg", LocalDate.of(2019, 12, 31)));
+		photos = user.addImportedPhotosToAlbum(album, photos);
+
+		photos.get(0).addTag("Person", "alice");
+		photos.get(0).addTag("Location", "paris");
+		photos.get(1).addTag("Person", "alice");
+		photos.get(1).addTag("Location", "rome");
+		photos.get(2).addTag("Person", "bob");
+		photos.get(2).addTag("Location", "paris");
+		photos.get(3).addTag("Location", "london");
+
+		photos.get(0).changePhotoCaption("Sunset at the beach");
+		photos.get(1).changePhotoCaption("Running by the river");
+		photos.get(2).changePhotoCaption("A blurry sunset");
+	}
+
+	@Test
+	public void andBindsTighterThanOr()
+	{
+		assertEquals("(Person:alice OR (Location:paris AND Person:bob))",
+				PhotoQuery.parse("Person:alice OR Location:paris AND Person:bob").toString());
+		assertEquals("(Person:alice AND (NOT Location:rome))", PhotoQuery.parse("Person:alice NOT Location:rome").toString());
+	}
+
+	@Test
+	public void bracketsAndQuotes()
+	{
+		assertEquals("((Person:alice OR Person:bob) AND Location:new york)",
+				PhotoQuery.parse("(Person:alice OR Person:bob) AND Location:\"new york\"").toString());
+		assertEquals("caption:\"at the beach\"", PhotoQuery.parse("caption:\"at the beach\"").toString());
+	}
+
+	@Test
+	public void dateRanges()
+	{
+		assertEquals("date:2020-01-01..2020-12-31", PhotoQuery.parse("date:2020-01-01..2020-12-31").toString());
+		assertEquals("date:2020-01-01..", PhotoQuery.parse("date:2020-01-01..").toString());
+		assertEquals("date:..2020-12-31", PhotoQuery.parse("date:..2020-12-31").toString());
+		assertEquals("date:2020-06-15..2020-06-15", PhotoQuery.parse("date:2020-06-15").toString());
+	}
+
+	@Test
+	public void fuzzyTagValues()
+	{
+		assertEquals("Location:pari~1", PhotoQuery.parse("Location:pari~").toString());
+		assertEquals("Location:pariss~2", PhotoQuery.parse("Location:pariss~").toString());
+		assertEquals("Location:pariss~1", PhotoQuery.parse("Location:pariss~1").toString());
+	}
+
+	@Test
+	public void badQueries()
+	{
+		String[] badQueries = {
+				"", "   ", "(Person:alice", "Person:alice)", "\"Person:alice", "AND Person:alice", "Person:alice OR",
+				"Person:", ":alice", "date:2020-13-01", "date:yesterday", "Location:paris~3", "Location:paris~9"
+		};
+
+		for (String query: badQueries)
+		{
+			try
+			{
+				PhotoQuery.parse(query);
+				fail("\"" + query + "\" should not parse");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void tagTerms()
+	{
+		assertEquals(photoIds(0, 1), run("Person:alice"));
+		assertEquals(photoIds(0), run("Person:alice AND Location:paris"));
+		assertEquals(photoIds(0, 1, 2), run("Person:alice OR Location:paris"));
+		assertEquals(photoIds(1), run("Person:alice NOT Location:paris"));
+		assertEquals(photoIds(3), run("NOT (Person:alice OR Person:bob)"));
+		assertEquals(photoIds(), run("Person:carol"));
+	}
+
+	@Test
+	public void dateTerms()
+	{
+		assertEquals(photoIds(0, 1), run("date:2020-01-01..2020-12-31"));
+		assertEquals(photoIds(2), run("date:2021-01-01"));
+		assertEquals(photoIds(3), run("date:..2019-12-31"));
+		assertEquals(photoIds(2), run("date:2020-12-31.. AND Location:paris"));
+	}
+
+	@Test
+	public void captionTerms()
+	{
+		assertEquals(photoIds(0, 2), run("sunset"));
+		assertEquals(photoIds(0), run("caption:\"at the beach\""));
+		assertEquals(photoIds(1), run("caption:run"));
+		assertEquals(photoIds(1), run("runni*"));
+		assertEquals(photoIds(2), run("sunset NOT beach"));
+		assertEquals(Arrays.asList("sunset"), PhotoQuery.parse("sunset NOT beach").getCaptionWords());
+	}
+
+	@Test
+	public void fuzzyTermsFindTypos()
+	{
+		assertEquals(photoIds(0, 2), run("Location:pariss~1"));
+		assertEquals(photoIds(0, 2), run("Location:pari~"));
+		assertEquals(photoIds(), run("Location:pari"));
+		assertEquals(photoIds(0), run("Location:pariss~ AND Person:alice"));
+	}
+
+	@Test
+	public void aQueryCanBeRunAgainAfterThePhotosChange()
+	{
+		PhotoQuery query = PhotoQuery.parse("Location:pariss~1 AND Person:alice");
+
+		assertEquals(photoIds(0), query.evaluate(user));
+
+		photos.get(2).addTag("Person", "alice");
+
+		assertEquals(photoIds(0, 2), query.evaluate(user));
+	}
+
+	/**
+	 * Makes a photo without reading a file
+	 *
+	 * @param photoPath	Path of the photo
+	 * @param day	Day the photo was taken
+	 * @return	The photo
+	 */
+	private static Photo photo(String photoPath, LocalDate day)
+	{
+		return new Photo(photoPath, day.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli(), null);
+	}
+
+	/**
+	 * Runs a query against the user's photos
+	 *
+	 * @param query	The query
+	 * @return	Ids of the matching photos
+	 */
+	private BitSet run(String query)
+	{
+		return PhotoQuery.parse(query).evaluate(user);
+	}
+
+	/**
+	 * Returns the ids of the photos at the given positions of the album
+	 *
+	 * @param positions	Positions of the photos
+	 * @return	Ids of the photos
+	 */
+	private BitSet photoIds(int... positions)
+	{
+		BitSet photoIds = new BitSet();
+
+		for (int position: positions)
+		{
+			photoIds.set(photos.get(position).getPhotoId());
+		}
+
+		return photoIds;
+	}
+}
@@ -0,0 +1,109 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for Photo, keeping its tags in the order they were added while matching them by id
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class PhotoTest {
+
+	@Test
+	public void tagsAreShownInTheOrderTheyWereAdded()
+	{
+		User user = new User("tester");
+		Photo other = user.getOrCreatePhoto("other.jpg");
+		other.addTag("Person", "zoe");
+		other.addTag("Location", "rome");
+
+		Photo photo = user.getOrCreatePhoto("a.jpg");
+		photo.addTag("Location", "rome");
+		photo.addTag("Event", "wedding");
+		photo.addTag("Person", "zoe");
+
+		assertEquals("[Location=rome, Event=wedding, Person=zoe]", tagNames(photo));
+		assertTrue(photo.checkIfTagExists("Person", "zoe"));
+
+		photo.removeTag("Event", "wedding");
+		photo.addTag("Event", "party");
+
+		assertEquals("[Location=rome, Person=zoe, Event=party]", tagNames(photo));
+		assertFalse(photo.checkIfTagExists("Event", "wedding"));
+	}
+
+	@Test
+	public void theOrderIsKeptWhenThePhotoGetsAnOwner()
+	{
+		User user = new User("tester");
+		Photo other = user.getOrCreatePhoto("other.jpg");
+		other.addTag("Event", "party");
+
+		Photo photo = new Photo("a.jpg", 0, null);
+		photo.addTag("Person", "zoe");
+		photo.addTag("Event", "party");
+		Album album = new Album("trips");
+		user.addAlbum(album);
+		user.addImportedPhotosToAlbum(album, Arrays.asList(photo));
+
+		assertEquals("[Person=zoe, Event=party]", tagNames(photo));
+		assertEquals(1, user.searchTag("Event", "party", false).size());
+	}
+
+	@Test
+	public void theOrderIsKeptInTheSaveData() throws IOException, ClassNotFoundException
+	{
+		Photo photo = new Photo("a.jpg", 0, null);
+		photo.addTag("Person", "zoe");
+		photo.addTag("Location", "rome");
+		photo.addTag("Event", "party");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes))
+		{
+			out.writeObject(photo);
+		}
+
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			Photo readPhoto = (Photo) in.readObject();
+
+			assertEquals("[Person=zoe, Location=rome, Event=party]", tagNames(readPhoto));
+			assertTrue(readPhoto.checkIfTagExists("Location", "rome"));
+		}
+	}
+
+	/**
+	 * Lists the photo's tags as type=value in the order getTagList returns them
+	 *
+	 * @param photo	The photo
+	 * @return	The tags
+	 */
+	private static String tagNames(Photo photo)
+	{
+		List<String> names = new ArrayList<String>();
+
+		for (Tag tag: photo.getTagList())
+		{
+			names.add(tag.getTagType() + "=" + tag.getTagValue());
+		}
+
+		return names.toString();
+	}
+}
@@ -0,0 +1,118 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for SuggestionTrie, covering suggestions by prefix and finding words a few typos away
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class SuggestionTrieTest {
+
+	private SuggestionTrie trie;
+
+	@Before
+	public void setUp()
+	{
+		trie = new SuggestionTrie();
+
+		for (String word: new String[] {"Paris", "paris", "Paris", "Parma", "Rome", "Prague", "Parma", "Par"})
+		{
+			trie.add(word);
+		}
+	}
+
+	@Test
+	public void mostUsedFirstThenAlphabetical()
+	{
+		assertEquals(Arrays.asList("Paris", "Parma", "Par"), trie.suggest("par", 10));
+		assertEquals(Arrays.asList("Paris", "Parma", "Par", "Prague"), trie.suggest("P", 10));
+		assertEquals(Arrays.asList("Paris"), trie.suggest("p", 1));
+		assertEquals(Arrays.asList(), trie.suggest("x", 10));
+	}
+
+	@Test
+	public void ignoresCaseAndKeepsTheLastWayWritten()
+	{
+		assertEquals(3, trie.getUses("PARIS"));
+		assertEquals(Arrays.asList("Rome"), trie.suggest("ROM", 10));
+	}
+
+	@Test
+	public void removedWordsAreNoLongerSuggested()
+	{
+		trie.remove("Prague");
+		trie.remove("Parma");
+
+		assertEquals(0, trie.getUses("prague"));
+		assertEquals(1, trie.getUses("parma"));
+		assertEquals(Arrays.asList("Paris", "Par", "Parma"), trie.suggest("p", 10));
+
+		// Removing a word that is not there changes nothing
+		trie.remove("Pragu");
+		trie.remove("Prague");
+
+		assertEquals(Arrays.asList("Paris", "Par", "Parma"), trie.suggest("p", 10));
+	}
+
+	@Test
+	public void suggestionsAreCappedAtMaxSuggestions()
+	{
+		for (int i = 0; i < 30; i++)
+		{
+			trie.add("word" + i);
+		}
+
+		assertEquals(SuggestionTrie.maxSuggestions, trie.suggest("word", 100).size());
+	}
+
+	@Test
+	public void findSimilarByEdits()
+	{
+		assertEquals(Arrays.asList("Paris"), similar("paris", 0));
+		assertEquals(Arrays.asList("Par", "Paris"), similar("pari", 1));
+		assertEquals(Arrays.asList("Par", "Paris", "Parma"), similar("pari", 2));
+		assertEquals(Arrays.asList("Paris"), similar("pariss", 1));
+		assertEquals(Arrays.asList("Paris"), similar("baris", 1));
+		assertEquals(Arrays.asList(), similar("londn", 1));
+	}
+
+	@Test
+	public void swappedLettersAreTwoEdits()
+	{
+		assertEquals(Arrays.asList(), similar("rmoe", 1));
+		assertEquals(Arrays.asList("Rome"), similar("rmoe", 2));
+	}
+
+	@Test
+	public void shortWordsMatchEveryWordWithinTheEdits()
+	{
+		assertEquals(Arrays.asList("Par"), similar("", 3));
+		assertEquals(Arrays.asList(), similar("", 2));
+	}
+
+	/**
+	 * Finds the similar words, sorted so the order they were found in does not matter
+	 *
+	 * @param word	The word
+	 * @param maxEdits	Most edits a word can be away
+	 * @return	The similar words in alphabetical order
+	 */
+	private List<String> similar(String word, int maxEdits)
+	{
+		List<String> words = new ArrayList<String>(trie.findSimilar(word, maxEdits));
+		Collections.sort(words);
+
+		return words;
+	}
+}
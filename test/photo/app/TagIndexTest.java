@@ -0,0 +1,99 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for TagIndex, finding the photos that have a tag pair as tags are added and removed
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class TagIndexTest {
+
+	private TagIndex index;
+
+	@Before
+	public void setUp()
+	{
+		index = new TagIndex();
+		index.addTag(0, "Person", "Alice");
+		index.addTag(1, "Person", "Bob");
+		index.addTag(2, "person", "alice");
+		index.addTag(2, "Location", "Paris");
+	}
+
+	@Test
+	public void findsTagsWithoutCase()
+	{
+		assertEquals(photoIds(0, 2), index.photosWithTag("PERSON", "ALICE"));
+		assertEquals(2, index.countPhotosWithTag("Person", "alice"));
+		assertEquals(photoIds(), index.photosWithTag("Person", "Carol"));
+		assertEquals(0, index.countPhotosWithTag("Person", "Carol"));
+	}
+
+	@Test
+	public void theTypeAndValueAreKeptApart()
+	{
+		index.addTag(3, "a b", "c");
+		index.addTag(4, "a", "b c");
+
+		assertEquals(photoIds(3), index.photosWithTag("a b", "c"));
+		assertEquals(photoIds(4), index.photosWithTag("a", "b c"));
+	}
+
+	@Test
+	public void aPhotoIsCountedOnceForEachTagPair()
+	{
+		index.addTag(0, "Person", "alice");
+		index.removeTag(0, "Person", "Alice");
+
+		assertEquals(photoIds(2), index.photosWithTag("Person", "Alice"));
+
+		// Removing a tag the photo does not have changes nothing
+		index.removeTag(0, "Person", "Alice");
+		index.removeTag(1, "Person", "Alice");
+
+		assertEquals(1, index.countPhotosWithTag("Person", "Alice"));
+	}
+
+	@Test
+	public void removingATagKeepsThePhotosOtherTags()
+	{
+		index.removeTag(2, "Person", "Alice");
+
+		assertEquals(photoIds(0), index.photosWithTag("Person", "Alice"));
+		assertEquals(photoIds(2), index.photosWithTag("Location", "Paris"));
+	}
+
+	@Test
+	public void theSetReturnedIsACopy()
+	{
+		index.photosWithTag("Person", "Alice").set(7);
+
+		assertEquals(photoIds(0, 2), index.photosWithTag("Person", "Alice"));
+	}
+
+	/**
+	 * Makes a set of photo ids
+	 *
+	 * @param ids	The ids
+	 * @return	The set
+	 */
+	private static BitSet photoIds(int... ids)
+	{
+		BitSet photoIds = new BitSet();
+
+		for (int id: ids)
+		{
+			photoIds.set(id);
+		}
+
+		return photoIds;
+	}
+}
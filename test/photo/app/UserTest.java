@@ -0,0 +1,70 @@
+package photo.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for User, giving photos ids as they are added to and removed from albums
+ *
+ * @author Amit Patel, Hideyo Sakamoto
+ *
+ */
+
+public class UserTest {
+
+	private User user;
+
+	private Album album;
+
+	@Before
+	public void setUp()
+	{
+		user = new User("tester");
+		album = new Album("trips");
+		user.addAlbum(album);
+	}
+
+	@Test
+	public void aPhotoAddedAgainTakesItsOldId()
+	{
+		Photo first = user.getOrCreatePhoto("a.jpg");
+		album.addPhoto(first);
+		album.addPhoto(user.getOrCreatePhoto("b.jpg"));
+
+		album.removePhoto("a.jpg");
+		Photo second = user.getOrCreatePhoto("a.jpg");
+		album.addPhoto(second);
+		second.addTag("Person", "alice");
+
+		assertNotSame(first, second);
+		assertEquals(first.getPhotoId(), second.getPhotoId());
+		assertEquals(1, user.searchTag("Person", "alice", false).size());
+		assertTrue(user.searchTag("Person", "alice", false).contains(second));
+	}
+
+	@Test
+	public void savingKeepsTheIdsOfRemovedPhotos() throws IOException
+	{
+		Photo first = user.getOrCreatePhoto("a.jpg");
+		album.addPhoto(first);
+		album.removePhoto("a.jpg");
+
+		try (ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream()))
+		{
+			out.writeObject(user);
+		}
+
+		Photo second = user.getOrCreatePhoto("a.jpg");
+		album.addPhoto(second);
+
+		assertEquals(first.getPhotoId(), second.getPhotoId());
+	}
+}